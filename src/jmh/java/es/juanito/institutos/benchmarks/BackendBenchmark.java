@@ -0,0 +1,155 @@
+package es.juanito.institutos.benchmarks;
+
+import com.zaxxer.hikari.HikariDataSource;
+import es.juanito.institutos.institutos.dto.InstitutoCriteriaDto;
+import es.juanito.institutos.institutos.models.Instituto;
+import es.juanito.institutos.institutos.models.InstitutoTotales;
+import es.juanito.institutos.institutos.repositories.InstitutosJdbcRepositoryImpl;
+import es.juanito.institutos.institutos.repositories.InstitutosOffHeapRepositoryImpl;
+import es.juanito.institutos.institutos.repositories.InstitutosRepository;
+import es.juanito.institutos.institutos.repositories.InstitutosRepositoryImpl;
+import es.juanito.institutos.institutos.repositories.persistence.InstitutosPersistence;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Mismas cargas contra cada almacenamiento de institutos.repository.backend, para elegir uno con datos:
+ * memory, file (memoria más log con fsync e instantáneas en un directorio temporal), jdbc (H2 embebida en memoria, con pool)
+ * y offheap (filas en memoria nativa; el heap y las pausas del GC se comparan aparte con HuellaMemoria).
+ * saveAll_lote reescribe 100 institutos de una vez (un lote JDBC, una sección crítica y un fsync) frente a 100 save sueltos.
+ * El número de hilos se elige al lanzar JMH con -t.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class BackendBenchmark {
+    private static final int LOTE = 100;
+
+    @Param({"memory", "file", "jdbc", "offheap"})
+    private String backend;
+
+    @Param({"10000", "100000"})
+    private int size;
+
+    private InstitutosRepository repositorio;
+    private HikariDataSource dataSource;
+    private InstitutosPersistence persistencia;
+    private Path directorio;
+    private List<Instituto> institutos;
+
+    @Setup(Level.Trial)
+    public void preparar() throws IOException {
+        institutos = Datos.institutos(size);
+        repositorio = switch (backend) {
+            case "memory" -> new InstitutosRepositoryImpl();
+            case "file" -> {
+                directorio = Files.createTempDirectory("institutos-backend");
+                persistencia = new InstitutosPersistence(directorio, true, 64, false);
+                var persistente = new InstitutosRepositoryImpl();
+                persistente.setPersistencia(persistencia);
+                yield persistente;
+            }
+            case "jdbc" -> {
+                dataSource = new HikariDataSource();
+                dataSource.setJdbcUrl("jdbc:h2:mem:benchmark;QUERY_CACHE_SIZE=64");
+                var jdbc = new InstitutosJdbcRepositoryImpl(new JdbcTemplate(dataSource), new DataSourceTransactionManager(dataSource), 500);
+                jdbc.iniciar();
+                yield jdbc;
+            }
+            case "offheap" -> new InstitutosOffHeapRepositoryImpl();
+            default -> throw new IllegalArgumentException("Almacenamiento desconocido: " + backend);
+        };
+        Datos.cargar(repositorio, institutos);
+    }
+
+    @TearDown(Level.Trial)
+    public void cerrar() throws IOException {
+        if (repositorio instanceof InstitutosOffHeapRepositoryImpl offHeap) {
+            offHeap.close();
+        }
+        if (dataSource != null) {
+            dataSource.close();
+        }
+        if (persistencia != null) {
+            persistencia.close();
+            try (Stream<Path> ficheros = Files.walk(directorio)) {
+                for (Path fichero : ficheros.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(fichero);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public Optional<Instituto> findById() {
+        return repositorio.findById(Datos.aleatorio(institutos).getId());
+    }
+
+    @Benchmark
+    public Optional<Instituto> findByUuid() {
+        return repositorio.findByUuid(Datos.aleatorio(institutos).getUuid());
+    }
+
+    @Benchmark
+    public List<Instituto> findAllAfter_pagina() {
+        return repositorio.findAllAfter(Datos.aleatorio(institutos).getId(), 20, false);
+    }
+
+    @Benchmark
+    public List<Instituto> findAllByNombre() {
+        return repositorio.findAllByNombre(Datos.aleatorio(institutos).getNombre());
+    }
+
+    @Benchmark
+    public List<Instituto> findAllByCriteria_tipoCiudad() {
+        return repositorio.findAll(InstitutoCriteriaDto.builder().tipo("privado").ciudad("sevilla").build());
+    }
+
+    @Benchmark
+    public Map<String, InstitutoTotales> totalesPorCiudad() {
+        return repositorio.totalesPorCiudad();
+    }
+
+    @Benchmark
+    public long count() {
+        return repositorio.count();
+    }
+
+    @Benchmark
+    public Instituto save() {
+        return repositorio.save(Datos.aleatorio(institutos));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOTE)
+    public List<Instituto> saveAll_lote() {
+        int desde = ThreadLocalRandom.current().nextInt(size - LOTE);
+        return repositorio.saveAll(institutos.subList(desde, desde + LOTE));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOTE)
+    public Instituto save_uno_a_uno() {
+        int desde = ThreadLocalRandom.current().nextInt(size - LOTE);
+        Instituto ultimo = null;
+        for (Instituto instituto : institutos.subList(desde, desde + LOTE)) {
+            ultimo = repositorio.save(instituto);
+        }
+        return ultimo;
+    }
+}
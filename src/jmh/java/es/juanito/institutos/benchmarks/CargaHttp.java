@@ -0,0 +1,119 @@
+package es.juanito.institutos.benchmarks;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Prueba de carga con conexiones concurrentes contra la aplicación ya arrancada.
+ * Cada conexión es un hilo virtual que repite GET sin pausa; tras el calentamiento se guardan
+ * todas las latencias y al final se imprimen los percentiles.
+ * Para comparar los dos modos se arranca la aplicación con VIRTUAL_THREADS=false y con true y se lanza igual:
+ * <pre>
+ * ulimit -n 65536
+ * mvn -P jmh test-compile exec:exec -Djmh.main=es.juanito.institutos.benchmarks.CargaHttp \
+ *     -Djmh.args="http://localhost:3000/api/v1/institutos/1 10000 60 15"
+ * </pre>
+ * Argumentos: url, conexiones (10000), segundos de medida (60) y segundos de calentamiento (15).
+ */
+public final class CargaHttp {
+
+    private CargaHttp() {
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        URI url = URI.create(args.length > 0 ? args[0] : "http://localhost:3000/api/v1/institutos/1");
+        int conexiones = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        long medida = Duration.ofSeconds(args.length > 2 ? Long.parseLong(args[2]) : 60).toNanos();
+        long calentamiento = Duration.ofSeconds(args.length > 3 ? Long.parseLong(args[3]) : 15).toNanos();
+
+        HttpClient cliente = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(30))
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+        HttpRequest peticion = HttpRequest.newBuilder(url).GET().build();
+
+        long inicio = System.nanoTime();
+        long inicioMedida = inicio + calentamiento;
+        long fin = inicioMedida + medida;
+        List<long[]> latencias = new ArrayList<>(conexiones);
+        AtomicLong errores = new AtomicLong();
+        CountDownLatch terminadas = new CountDownLatch(conexiones);
+        System.out.printf("%s: %d conexiones, %d s de calentamiento y %d s de medida%n",
+                url, conexiones, Duration.ofNanos(calentamiento).toSeconds(), Duration.ofNanos(medida).toSeconds());
+
+        try (var hilos = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < conexiones; i++) {
+                Latencias propias = new Latencias();
+                hilos.submit(() -> {
+                    try {
+                        long ahora = System.nanoTime();
+                        while (ahora < fin) {
+                            try {
+                                HttpResponse<Void> respuesta = cliente.send(peticion, HttpResponse.BodyHandlers.discarding());
+                                long despues = System.nanoTime();
+                                if (respuesta.statusCode() >= 400) {
+                                    errores.incrementAndGet();
+                                } else if (ahora >= inicioMedida) {
+                                    propias.add(despues - ahora);
+                                }
+                                ahora = despues;
+                            } catch (Exception e) {
+                                errores.incrementAndGet();
+                                ahora = System.nanoTime();
+                            }
+                        }
+                    } finally {
+                        synchronized (latencias) {
+                            latencias.add(propias.toArray());
+                        }
+                        terminadas.countDown();
+                    }
+                });
+            }
+            terminadas.await();
+        }
+
+        long[] todas = latencias.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+        double segundos = Duration.ofNanos(medida).toMillis() / 1000.0;
+        System.out.printf("peticiones=%d errores=%d rps=%.0f%n", todas.length, errores.get(), todas.length / segundos);
+        for (String percentil : new String[]{"50", "90", "99", "99.9"}) {
+            System.out.printf("p%s=%.2f ms%n", percentil, percentil(todas, Double.parseDouble(percentil)));
+        }
+        System.out.printf("max=%.2f ms%n", todas.length == 0 ? 0 : todas[todas.length - 1] / 1e6);
+    }
+
+    private static double percentil(long[] ordenadas, double percentil) {
+        if (ordenadas.length == 0) {
+            return 0;
+        }
+        int posicion = (int) Math.ceil(percentil / 100 * ordenadas.length) - 1;
+        return ordenadas[Math.max(0, posicion)] / 1e6;
+    }
+
+    // Latencias de una conexión, sin sincronizar porque solo las escribe su hilo
+    private static final class Latencias {
+        private long[] valores = new long[1024];
+        private int tamano;
+
+        void add(long valor) {
+            if (tamano == valores.length) {
+                valores = Arrays.copyOf(valores, tamano * 2);
+            }
+            valores[tamano++] = valor;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(valores, tamano);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package es.juanito.institutos.benchmarks;
+
+import es.juanito.institutos.institutos.mappers.InstitutoMapper;
+import es.juanito.institutos.institutos.models.Instituto;
+import es.juanito.institutos.institutos.repositories.InstitutosRepository;
+import es.juanito.institutos.institutos.repositories.InstitutosRepositoryImpl;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Catálogos sintéticos para los benchmarks, siempre los mismos para una semilla dada
+final class Datos {
+    static final String[] CIUDADES = {"Madrid", "Sevilla", "Málaga", "Valencia", "Bilbao", "Toledo", "Cádiz", "Zaragoza", "León", "Ávila"};
+    static final String[] TIPOS = {"publico", "privado", "concertado"};
+    static final String[] PALABRAS = {"Cervantes", "Quevedo", "Góngora", "Machado", "Lorca", "Unamuno", "Clarín", "Bécquer", "Zorrilla", "Galdós"};
+    static final long SEMILLA = 42;
+    // Los datos de partida del repositorio ocupan los ids 1 y 2
+    static final long PRIMER_ID = 3;
+
+    private static final int LOTE = 10_000;
+
+    private Datos() {
+    }
+
+    static List<Instituto> institutos(int cantidad) {
+        Random random = new Random(SEMILLA);
+        InstitutoMapper mapper = new InstitutoMapper();
+        List<Instituto> institutos = new ArrayList<>(cantidad);
+        for (long id = PRIMER_ID; id < PRIMER_ID + cantidad; id++) {
+            institutos.add(mapper.conClavesBusqueda(Instituto.builder()
+                    .id(id)
+                    .nombre("IES " + PALABRAS[random.nextInt(PALABRAS.length)] + " " + id)
+                    .ciudad(CIUDADES[random.nextInt(CIUDADES.length)])
+                    .direccion("Calle " + PALABRAS[random.nextInt(PALABRAS.length)] + " " + random.nextInt(200))
+                    .telefono(String.format("%03d-%02d-%02d-%02d", random.nextInt(1000), random.nextInt(100), random.nextInt(100), random.nextInt(100)))
+                    .email("centro" + id + "@Email.com")
+                    .numeroEstudiantes(100 + random.nextInt(2400))
+                    .numeroProfesores(10 + random.nextInt(140))
+                    .tipo(TIPOS[random.nextInt(TIPOS.length)])
+                    .anioFundacion(LocalDate.of(1850 + random.nextInt(170), 1 + random.nextInt(12), 1 + random.nextInt(28)))
+                    .codigoInstituto(String.format("%04d-%s", id % 10_000, "ABC"))
+                    .createdAt(LocalDateTime.now())
+                    .updateAt(LocalDateTime.now())
+                    .uuid(new UUID(random.nextLong(), random.nextLong()))
+                    .build()));
+        }
+        return institutos;
+    }
+
+    // Uno cualquiera del catálogo, distinto en cada llamada y en cada hilo
+    static Instituto aleatorio(List<Instituto> institutos) {
+        return institutos.get(ThreadLocalRandom.current().nextInt(institutos.size()));
+    }
+
+    static InstitutosRepositoryImpl repositorio(List<Instituto> institutos) {
+        InstitutosRepositoryImpl repositorio = new InstitutosRepositoryImpl();
+        cargar(repositorio, institutos);
+        return repositorio;
+    }
+
+    // Por lotes para no tener el lock de escritura cogido durante toda la carga
+    static void cargar(InstitutosRepository repositorio, List<Instituto> institutos) {
+        for (int desde = 0; desde < institutos.size(); desde += LOTE) {
+            repositorio.saveAll(institutos.subList(desde, Math.min(desde + LOTE, institutos.size())));
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package es.juanito.institutos.benchmarks;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import es.juanito.institutos.institutos.models.Instituto;
+import es.juanito.institutos.institutos.repositories.InstitutosOffHeapRepositoryImpl;
+import es.juanito.institutos.institutos.repositories.InstitutosRepository;
+import es.juanito.institutos.institutos.repositories.InstitutosRepositoryImpl;
+
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Heap que ocupa el catálogo y pausas del GC con carga, para comparar el repositorio en memoria con el de fuera del heap.
+ * Carga el catálogo, fuerza un GC y mide el heap usado y la memoria nativa (pool "direct", donde se cuentan los
+ * segmentos de Arena); después varios hilos mezclan findById, reescrituras y páginas de findAllAfter durante unos
+ * segundos mientras se anota cada pausa del GC y la latencia de cada findById.
+ * Cada almacenamiento en su propia JVM, para que uno no herede el heap del otro:
+ * <pre>
+ * export JAVA_TOOL_OPTIONS="-Xmx4g -XX:+UseG1GC"
+ * mvn -P jmh test-compile exec:exec -Djmh.main=es.juanito.institutos.benchmarks.HuellaMemoria -Djmh.args="memory 1000000 60 4"
+ * mvn -P jmh test-compile exec:exec -Djmh.main=es.juanito.institutos.benchmarks.HuellaMemoria -Djmh.args="offheap 1000000 60 4"
+ * </pre>
+ * Argumentos: memory u offheap, institutos (1000000), segundos de carga (60) e hilos (4).
+ * El heap y el GC de esta JVM se eligen con JAVA_TOOL_OPTIONS, mejor los mismos que en producción.
+ */
+public final class HuellaMemoria {
+
+    private HuellaMemoria() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        String backend = args.length > 0 ? args[0] : "memory";
+        int cantidad = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        long medida = Duration.ofSeconds(args.length > 2 ? Long.parseLong(args[2]) : 60).toNanos();
+        int hilos = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+
+        InstitutosRepository repositorio = switch (backend) {
+            case "memory" -> new InstitutosRepositoryImpl();
+            case "offheap" -> new InstitutosOffHeapRepositoryImpl();
+            default -> throw new IllegalArgumentException("Almacenamiento desconocido: " + backend);
+        };
+        List<Instituto> institutos = Datos.institutos(cantidad);
+        long ultimoId = institutos.getLast().getId();
+        Datos.cargar(repositorio, institutos);
+        institutos = null;
+
+        long heapVacio = heapTrasGc();
+        System.out.printf("%s con %d institutos: heap usado %d MB, memoria nativa %d MB%n", backend, repositorio.count(),
+                heapVacio >> 20, nativa() >> 20);
+
+        Pausas pausas = new Pausas();
+        long inicio = System.nanoTime();
+        long fin = inicio + medida;
+        List<long[]> latencias = Collections.synchronizedList(new ArrayList<>());
+        AtomicLong operaciones = new AtomicLong();
+        List<Thread> trabajadores = new ArrayList<>();
+        for (int i = 0; i < hilos; i++) {
+            trabajadores.add(Thread.ofPlatform().name("carga-" + i).start(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long[] propias = new long[1 << 20];
+                int anotadas = 0;
+                long hechas = 0;
+                while (System.nanoTime() < fin) {
+                    long id = random.nextLong(Datos.PRIMER_ID, ultimoId + 1);
+                    int tipo = random.nextInt(100);
+                    if (tipo < 90) {
+                        long antes = System.nanoTime();
+                        repositorio.findById(id);
+                        if (anotadas < propias.length) {
+                            propias[anotadas++] = System.nanoTime() - antes;
+                        }
+                    } else if (tipo < 99) {
+                        // Reescritura: en memory el instituto anterior se queda como basura en la generación vieja
+                        repositorio.findById(id).ifPresent(instituto ->
+                                repositorio.save(conEstudiantes(instituto, random.nextInt(100, 2500))));
+                    } else {
+                        repositorio.findAllAfter(id, 100, false);
+                    }
+                    hechas++;
+                }
+                latencias.add(Arrays.copyOf(propias, anotadas));
+                operaciones.addAndGet(hechas);
+            }));
+        }
+        for (Thread trabajador : trabajadores) {
+            trabajador.join();
+        }
+        pausas.parar();
+
+        double segundos = Duration.ofNanos(System.nanoTime() - inicio).toMillis() / 1000.0;
+        System.out.printf("operaciones=%d (%.0f/s) con %d hilos%n", operaciones.get(), operaciones.get() / segundos, hilos);
+        pausas.imprimir();
+        long[] todas = latencias.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+        for (String percentil : new String[]{"50", "99", "99.9", "99.99"}) {
+            System.out.printf("findById p%s=%.1f us%n", percentil, percentil(todas, Double.parseDouble(percentil)));
+        }
+        System.out.printf("findById max=%.1f us%n", todas.length == 0 ? 0 : todas[todas.length - 1] / 1e3);
+        System.out.printf("heap usado al terminar, tras un GC: %d MB%n", heapTrasGc() >> 20);
+        if (repositorio instanceof AutoCloseable cerrable) {
+            cerrable.close();
+        }
+    }
+
+    // Copia con otro número de estudiantes: el repositorio en memoria devuelve sus propias instancias y no se tocan
+    private static Instituto conEstudiantes(Instituto instituto, int estudiantes) {
+        return Instituto.builder()
+                .id(instituto.getId())
+                .nombre(instituto.getNombre())
+                .ciudad(instituto.getCiudad())
+                .direccion(instituto.getDireccion())
+                .telefono(instituto.getTelefono())
+                .email(instituto.getEmail())
+                .numeroEstudiantes(estudiantes)
+                .numeroProfesores(instituto.getNumeroProfesores())
+                .tipo(instituto.getTipo())
+                .anioFundacion(instituto.getAnioFundacion())
+                .codigoInstituto(instituto.getCodigoInstituto())
+                .createdAt(instituto.getCreatedAt())
+                .updateAt(instituto.getUpdateAt())
+                .uuid(instituto.getUuid())
+                .isDeleted(instituto.getIsDeleted())
+                .nombreBusqueda(instituto.getNombreBusqueda())
+                .ciudadBusqueda(instituto.getCiudadBusqueda())
+                .build();
+    }
+
+    // Varios System.gc() seguidos para que lo que queda sea lo que el repositorio mantiene vivo
+    private static long heapTrasGc() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(200);
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long nativa() {
+        return ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class).stream()
+                .filter(pool -> pool.getName().equals("direct"))
+                .mapToLong(BufferPoolMXBean::getMemoryUsed)
+                .sum();
+    }
+
+    private static double percentil(long[] ordenadas, double percentil) {
+        if (ordenadas.length == 0) {
+            return 0;
+        }
+        int posicion = (int) Math.ceil(percentil / 100 * ordenadas.length) - 1;
+        return ordenadas[Math.max(0, posicion)] / 1e3;
+    }
+
+    // Duración de cada GC por colector, a partir de las notificaciones de la JVM
+    private static final class Pausas {
+        private final Map<String, List<Long>> duraciones = new TreeMap<>();
+        private final List<Runnable> bajas = new ArrayList<>();
+
+        Pausas() {
+            for (GarbageCollectorMXBean colector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                NotificationEmitter emisor = (NotificationEmitter) colector;
+                NotificationListener oyente = (notificacion, contexto) -> {
+                    if (notificacion.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+                        var info = GarbageCollectionNotificationInfo.from((CompositeData) notificacion.getUserData());
+                        synchronized (duraciones) {
+                            duraciones.computeIfAbsent(info.getGcName() + " (" + info.getGcAction() + ")", k -> new ArrayList<>())
+                                    .add(info.getGcInfo().getDuration());
+                        }
+                    }
+                };
+                emisor.addNotificationListener(oyente, null, null);
+                bajas.add(() -> {
+                    try {
+                        emisor.removeNotificationListener(oyente);
+                    } catch (Exception e) {
+                        // Ya no estaba
+                    }
+                });
+            }
+        }
+
+        void parar() {
+            bajas.forEach(Runnable::run);
+        }
+
+        void imprimir() {
+            synchronized (duraciones) {
+                if (duraciones.isEmpty()) {
+                    System.out.println("sin GC durante la carga");
+                }
+                duraciones.forEach((colector, ms) -> System.out.printf("%s: %d GC, %d ms en total, máximo %d ms%n", colector,
+                        ms.size(), ms.stream().mapToLong(Long::longValue).sum(), ms.stream().mapToLong(Long::longValue).max().orElse(0)));
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package es.juanito.institutos.benchmarks;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import es.juanito.institutos.institutos.dto.InstitutoResponseDto;
+import es.juanito.institutos.institutos.mappers.InstitutoMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialización de listas de InstitutoResponseDto con el ObjectMapper que configura Spring:
+ * el array JSON de GET /institutos y las líneas NDJSON de /export, escritas como lo hace el controlador.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JacksonBenchmark {
+
+    @Param({"20", "1000", "100000"})
+    private int size;
+
+    private ObjectMapper objectMapper;
+    private ObjectWriter writer;
+    private List<InstitutoResponseDto> institutos;
+
+    @Setup(Level.Trial)
+    public void preparar() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        institutos = new InstitutoMapper().toResponseDtoList(Datos.institutos(size));
+    }
+
+    @Benchmark
+    public byte[] jsonArray() throws IOException {
+        return objectMapper.writeValueAsBytes(institutos);
+    }
+
+    @Benchmark
+    public void ndjson(Blackhole blackhole) throws IOException {
+        try (JsonGenerator generador = objectMapper.getFactory().createGenerator(new Sumidero(blackhole))) {
+            generador.setRootValueSeparator(null);
+            for (InstitutoResponseDto instituto : institutos) {
+                writer.writeValue(generador, instituto);
+                generador.writeRaw('\n');
+            }
+        }
+    }
+
+    // Salida que descarta los bytes sin que el JIT pueda eliminar la escritura
+    private static final class Sumidero extends OutputStream {
+        private final Blackhole blackhole;
+
+        private Sumidero(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void write(int b) {
+            blackhole.consume(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            blackhole.consume(b);
+            blackhole.consume(len);
+        }
+    }
+}
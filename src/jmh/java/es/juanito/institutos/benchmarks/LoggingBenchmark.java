@@ -0,0 +1,101 @@
+package es.juanito.institutos.benchmarks;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.FileAppender;
+import es.juanito.institutos.institutos.cache.InstitutosCache;
+import es.juanito.institutos.institutos.dto.InstitutoResponseDto;
+import es.juanito.institutos.institutos.mappers.InstitutoMapper;
+import es.juanito.institutos.institutos.models.Instituto;
+import es.juanito.institutos.institutos.services.InstitutosServiceImpl;
+import jakarta.validation.Validation;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.support.NoOpCacheManager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coste del log en las lecturas del servicio (sin caché, para que también pase por el repositorio).
+ * nivel=TRACE escribe todos los mensajes por petición, como cuando estaban en INFO;
+ * nivel=INFO es el perfil prod, donde no se escribe ninguno. asincrono=true usa el AsyncAppender de prod.
+ * Se escribe a un fichero temporal para incluir el coste real de E/S.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoggingBenchmark {
+
+    @Param({"TRACE", "INFO"})
+    private String nivel;
+
+    @Param({"false", "true"})
+    private boolean asincrono;
+
+    private InstitutosServiceImpl servicio;
+    private List<Instituto> institutos;
+    private Logger logger;
+    private Path fichero;
+
+    @Setup(Level.Trial)
+    public void preparar() throws IOException {
+        institutos = Datos.institutos(10_000);
+        servicio = new InstitutosServiceImpl(Datos.repositorio(institutos), new InstitutoMapper(),
+                new InstitutosCache(new NoOpCacheManager()), Validation.buildDefaultValidatorFactory().getValidator());
+
+        LoggerContext contexto = (LoggerContext) LoggerFactory.getILoggerFactory();
+        fichero = Files.createTempFile("institutos-benchmark", ".log");
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(contexto);
+        encoder.setPattern("%d{yyyy-MM-dd'T'HH:mm:ss.SSSXXX} %5p --- [%t] %-40.40logger{39} : %m%n");
+        encoder.start();
+        FileAppender<ILoggingEvent> salida = new FileAppender<>();
+        salida.setContext(contexto);
+        salida.setFile(fichero.toString());
+        salida.setEncoder(encoder);
+        salida.start();
+        Appender<ILoggingEvent> appender = salida;
+        if (asincrono) {
+            // Igual que en logback-spring.xml para el perfil prod
+            AsyncAppender cola = new AsyncAppender();
+            cola.setContext(contexto);
+            cola.setQueueSize(8192);
+            cola.setDiscardingThreshold(0);
+            cola.setNeverBlock(true);
+            cola.addAppender(salida);
+            cola.start();
+            appender = cola;
+        }
+        logger = contexto.getLogger("es.juanito.institutos");
+        logger.setAdditive(false);
+        logger.setLevel(ch.qos.logback.classic.Level.toLevel(nivel));
+        logger.addAppender(appender);
+    }
+
+    @TearDown(Level.Trial)
+    public void cerrar() throws IOException {
+        logger.detachAndStopAllAppenders();
+        Files.deleteIfExists(fichero);
+    }
+
+    @Benchmark
+    public InstitutoResponseDto findById() {
+        return servicio.findById(Datos.aleatorio(institutos).getId());
+    }
+
+    @Benchmark
+    public List<InstitutoResponseDto> findAllByNombre() {
+        return servicio.findAll(null, Datos.aleatorio(institutos).getNombre());
+    }
+}
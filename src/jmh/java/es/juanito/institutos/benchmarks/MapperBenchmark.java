@@ -0,0 +1,55 @@
+package es.juanito.institutos.benchmarks;
+
+import es.juanito.institutos.institutos.dto.InstitutoCreateDto;
+import es.juanito.institutos.institutos.dto.InstitutoResponseDto;
+import es.juanito.institutos.institutos.mappers.InstitutoMapper;
+import es.juanito.institutos.institutos.models.Instituto;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Conversiones del mapper: un alta (con sus claves de búsqueda) y listas de distintos tamaños
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MapperBenchmark {
+
+    @Param({"20", "1000", "100000"})
+    private int size;
+
+    private final InstitutoMapper mapper = new InstitutoMapper();
+    private List<Instituto> institutos;
+    private InstitutoCreateDto alta;
+
+    @Setup(Level.Trial)
+    public void preparar() {
+        institutos = Datos.institutos(size);
+        Instituto instituto = institutos.getFirst();
+        alta = InstitutoCreateDto.builder()
+                .nombre("IES Innovación")
+                .ciudad(instituto.getCiudad())
+                .direccion(instituto.getDireccion())
+                .telefono(instituto.getTelefono())
+                .email(instituto.getEmail())
+                .numeroEstudiantes(instituto.getNumeroEstudiantes())
+                .numeroProfesores(instituto.getNumeroProfesores())
+                .tipo(instituto.getTipo())
+                .anioFundacion(instituto.getAnioFundacion())
+                .codigoInstituto(instituto.getCodigoInstituto())
+                .build();
+    }
+
+    @Benchmark
+    public Instituto toInstituto() {
+        return mapper.toInstituto(1L, alta);
+    }
+
+    @Benchmark
+    public List<InstitutoResponseDto> toResponseDtoList() {
+        return mapper.toResponseDtoList(institutos);
+    }
+}
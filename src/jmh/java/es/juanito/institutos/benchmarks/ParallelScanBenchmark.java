@@ -0,0 +1,70 @@
+package es.juanito.institutos.benchmarks;
+
+import es.juanito.institutos.institutos.dto.InstitutoCriteriaDto;
+import es.juanito.institutos.institutos.dto.InstitutoResponseDto;
+import es.juanito.institutos.institutos.mappers.InstitutoMapper;
+import es.juanito.institutos.institutos.models.Instituto;
+import es.juanito.institutos.institutos.repositories.InstitutosRepositoryImpl;
+import es.juanito.institutos.institutos.utils.EscaneoParalelo;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recorrido secuencial frente a fork-join para las búsquedas que no pueden usar índices
+ * y para el mapeo de listas grandes. hilos=0 es el recorrido en un hilo; el resto usa un pool
+ * propio con ese número de hilos, para ver cómo escala con los núcleos disponibles.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class ParallelScanBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    private int size;
+
+    @Param({"0", "2", "4", "8"})
+    private int hilos;
+
+    private InstitutosRepositoryImpl repositorio;
+    private InstitutoMapper mapper;
+    private List<Instituto> institutos;
+    private EscaneoParalelo escaneoParalelo;
+
+    @Setup(Level.Trial)
+    public void preparar() {
+        institutos = Datos.institutos(size);
+        repositorio = Datos.repositorio(institutos);
+        mapper = new InstitutoMapper();
+        // Umbral 1: en paralelo siempre que haya hilos, para medir el coste real en cada tamaño
+        escaneoParalelo = hilos == 0 ? EscaneoParalelo.DESACTIVADO : new EscaneoParalelo(1, hilos);
+        repositorio.setEscaneoParalelo(escaneoParalelo);
+        mapper.setEscaneoParalelo(escaneoParalelo);
+    }
+
+    @TearDown(Level.Trial)
+    public void cerrar() {
+        escaneoParalelo.cerrar();
+    }
+
+    // Menos de tres letras: sin trigramas, recorre todo el catálogo
+    @Benchmark
+    public List<Instituto> findAllByCiudad_sinIndice() {
+        return repositorio.findAll(InstitutoCriteriaDto.builder().ciudad("ma").build());
+    }
+
+    // Rango que cubre casi todo: el índice no compensa y se recorre el catálogo
+    @Benchmark
+    public List<Instituto> findAllByCriteria_rangoAmplio() {
+        return repositorio.findAll(InstitutoCriteriaDto.builder().minEstudiantes(150).build());
+    }
+
+    @Benchmark
+    public List<InstitutoResponseDto> toResponseDtoList() {
+        return mapper.toResponseDtoList(institutos);
+    }
+}
@@ -0,0 +1,161 @@
+package es.juanito.institutos.benchmarks;
+
+import es.juanito.institutos.institutos.models.Instituto;
+import es.juanito.institutos.institutos.repositories.InstitutosRepositoryImpl;
+import es.juanito.institutos.institutos.repositories.persistence.InstitutosPersistence;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Persistencia del repositorio: tiempo de arranque recuperando el catálogo y escrituras por segundo con el log.
+ * recuperar parte de una instantánea o de un log con todo el catálogo (el peor caso, sin compactar).
+ * Con instantánea, recuperar solo la mapea y lee un instituto; recuperarYCargar la carga además entera
+ * (findAll), que es lo que costaba cualquier arranque antes de mapearla.
+ * save se lanza con distintos hilos (-t 1, -t 16...): con fsync, cuantos más escritores a la vez más
+ * escrituras entran en cada fsync (group commit).
+ */
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class PersistenceBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Guardado {
+        @Param({"100000", "1000000"})
+        private int size;
+
+        @Param({"snapshot", "log"})
+        private String origen;
+
+        private Path datos;
+        private Set<Path> iniciales;
+        private InstitutosPersistence abierta;
+
+        @Setup(Level.Trial)
+        public void preparar() throws IOException {
+            datos = Files.createTempDirectory("institutos-recuperacion");
+            // Umbral enorme para que el log no se compacte solo
+            var persistencia = new InstitutosPersistence(datos, false, Long.MAX_VALUE / (1 << 20), false);
+            var repositorio = new InstitutosRepositoryImpl();
+            repositorio.setPersistencia(persistencia);
+            Datos.cargar(repositorio, Datos.institutos(size));
+            if (origen.equals("snapshot")) {
+                persistencia.compactar();
+            }
+            persistencia.close();
+            iniciales = ficheros();
+        }
+
+        // Cada arranque abre un segmento nuevo: se borra para que todos partan de lo mismo
+        @TearDown(Level.Invocation)
+        public void cerrar() throws IOException {
+            abierta.close();
+            for (Path fichero : ficheros()) {
+                if (!iniciales.contains(fichero)) {
+                    Files.delete(fichero);
+                }
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void borrar() throws IOException {
+            borrarDirectorio(datos);
+        }
+
+        private Set<Path> ficheros() throws IOException {
+            try (Stream<Path> ficheros = Files.list(datos)) {
+                return Set.copyOf(ficheros.toList());
+            }
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Escritura {
+        @Param({"true", "false"})
+        private boolean fsync;
+
+        private Path datos;
+        private InstitutosPersistence persistencia;
+        private InstitutosRepositoryImpl repositorio;
+        private Instituto modelo;
+
+        @Setup(Level.Trial)
+        public void preparar() throws IOException {
+            datos = Files.createTempDirectory("institutos-escritura");
+            persistencia = new InstitutosPersistence(datos, fsync, 64, false);
+            repositorio = new InstitutosRepositoryImpl();
+            repositorio.setPersistencia(persistencia);
+            modelo = Datos.institutos(1).getFirst();
+        }
+
+        @TearDown(Level.Trial)
+        public void cerrar() throws IOException {
+            persistencia.close();
+            borrarDirectorio(datos);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public Instituto recuperar(Guardado guardado) throws IOException {
+        return arrancar(guardado).findById((long) guardado.size / 2).orElseThrow();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public int recuperarYCargar(Guardado guardado) throws IOException {
+        return arrancar(guardado).findAll().size();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Warmup(iterations = 2, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    public Instituto save(Escritura escritura) {
+        Instituto modelo = escritura.modelo;
+        return escritura.repositorio.save(Instituto.builder()
+                .id(escritura.repositorio.nextId())
+                .nombre(modelo.getNombre())
+                .ciudad(modelo.getCiudad())
+                .direccion(modelo.getDireccion())
+                .telefono(modelo.getTelefono())
+                .email(modelo.getEmail())
+                .numeroEstudiantes(modelo.getNumeroEstudiantes())
+                .numeroProfesores(modelo.getNumeroProfesores())
+                .tipo(modelo.getTipo())
+                .anioFundacion(modelo.getAnioFundacion())
+                .codigoInstituto(modelo.getCodigoInstituto())
+                .createdAt(modelo.getCreatedAt())
+                .updateAt(modelo.getUpdateAt())
+                .uuid(UUID.randomUUID())
+                .build());
+    }
+
+    private static InstitutosRepositoryImpl arrancar(Guardado guardado) throws IOException {
+        guardado.abierta = new InstitutosPersistence(guardado.datos, false, 64, false);
+        var repositorio = new InstitutosRepositoryImpl();
+        repositorio.setPersistencia(guardado.abierta);
+        return repositorio;
+    }
+
+    private static void borrarDirectorio(Path directorio) throws IOException {
+        try (Stream<Path> ficheros = Files.walk(directorio)) {
+            for (Path fichero : ficheros.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(fichero);
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package es.juanito.institutos.benchmarks;
+
+import es.juanito.institutos.institutos.dto.InstitutoCriteriaDto;
+import es.juanito.institutos.institutos.models.Instituto;
+import es.juanito.institutos.institutos.repositories.InstitutosRepositoryImpl;
+import es.juanito.institutos.institutos.utils.ClaveBusqueda;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Búsquedas del repositorio en memoria según el tamaño del catálogo.
+ * findByUuid debería costar lo mismo con mil que con un millón de institutos, y la búsqueda por
+ * nombre con trigramas se compara con el recorrido completo que había antes de los índices.
+ * El número de hilos se elige al lanzar JMH con -t.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class RepositoryBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    private int size;
+
+    private InstitutosRepositoryImpl repositorio;
+    private List<Instituto> institutos;
+    private UUID[] uuids;
+
+    @Setup(Level.Trial)
+    public void preparar() {
+        institutos = Datos.institutos(size);
+        repositorio = Datos.repositorio(institutos);
+        uuids = institutos.stream().map(Instituto::getUuid).toArray(UUID[]::new);
+    }
+
+    @Benchmark
+    public Optional<Instituto> findById() {
+        return repositorio.findById(Datos.aleatorio(institutos).getId());
+    }
+
+    @Benchmark
+    public Optional<Instituto> findByUuid() {
+        return repositorio.findByUuid(uuids[ThreadLocalRandom.current().nextInt(size)]);
+    }
+
+    @Benchmark
+    public List<Instituto> findAllAfter_pagina() {
+        return repositorio.findAllAfter(Datos.aleatorio(institutos).getId(), 20, false);
+    }
+
+    // Un nombre concreto: el índice de trigramas deja muy pocos candidatos
+    @Benchmark
+    public List<Instituto> findAllByNombre_trigramas() {
+        return repositorio.findAllByNombre(Datos.aleatorio(institutos).getNombre());
+    }
+
+    // Lo mismo recorriendo todo el catálogo, como se hacía antes de los índices
+    @Benchmark
+    public List<Instituto> findAllByNombre_recorrido() {
+        String buscado = ClaveBusqueda.normalizar(Datos.aleatorio(institutos).getNombre());
+        return repositorio.findAll().stream()
+                .filter(instituto -> instituto.getNombreBusqueda() != null && instituto.getNombreBusqueda().contains(buscado))
+                .toList();
+    }
+
+    @Benchmark
+    public List<Instituto> findAllByCriteria_tipoCiudad() {
+        return repositorio.findAll(InstitutoCriteriaDto.builder().tipo("privado").ciudad("sevilla").build());
+    }
+
+    // Rango estrecho: el índice ordenado solo recorre los que caen dentro
+    @Benchmark
+    public List<Instituto> findAllByCriteria_rangoEstudiantes() {
+        int desde = 100 + ThreadLocalRandom.current().nextInt(2300);
+        return repositorio.findAll(InstitutoCriteriaDto.builder().minEstudiantes(desde).maxEstudiantes(desde + 5).build());
+    }
+
+    // Reescribe un instituto existente para que el tamaño del catálogo no cambie entre iteraciones
+    // Con -t varios hilos guardan a la vez: ids distintos van por franjas distintas y solo comparten las claves de los índices
+    @Benchmark
+    public Instituto save() {
+        return repositorio.save(Datos.aleatorio(institutos));
+    }
+}
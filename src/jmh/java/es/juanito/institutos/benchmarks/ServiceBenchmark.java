@@ -0,0 +1,80 @@
+package es.juanito.institutos.benchmarks;
+
+import es.juanito.institutos.institutos.cache.InstitutosCache;
+import es.juanito.institutos.institutos.dto.InstitutoResponseDto;
+import es.juanito.institutos.institutos.dto.InstitutoUpdateDto;
+import es.juanito.institutos.institutos.mappers.InstitutoMapper;
+import es.juanito.institutos.institutos.models.Instituto;
+import es.juanito.institutos.institutos.services.InstitutosServiceImpl;
+import jakarta.validation.Validation;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.cache.support.NoOpCacheManager;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Servicio completo (repositorio, mapper y caché) con la caché Caffeine de application.properties
+ * o sin caché. Las lecturas por id y uuid se reparten al azar por todo el catálogo, así que con
+ * catálogos mayores que la caché también se ven los fallos.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class ServiceBenchmark {
+
+    @Param({"1000", "100000"})
+    private int size;
+
+    @Param({"true", "false"})
+    private boolean cache;
+
+    private InstitutosServiceImpl servicio;
+    private List<Instituto> institutos;
+
+    @Setup(Level.Trial)
+    public void preparar() {
+        institutos = Datos.institutos(size);
+        var cacheManager = cache ? new CaffeineCacheManager(InstitutosCache.INSTITUTOS, InstitutosCache.UUIDS) : new NoOpCacheManager();
+        if (cacheManager instanceof CaffeineCacheManager caffeine) {
+            caffeine.setCacheSpecification("maximumSize=10000,expireAfterWrite=10m");
+        }
+        servicio = new InstitutosServiceImpl(Datos.repositorio(institutos), new InstitutoMapper(),
+                new InstitutosCache(cacheManager), Validation.buildDefaultValidatorFactory().getValidator());
+        // El listado ya construido, como tras el primer GET sin filtros: cada escritura lo mantiene
+        servicio.findAll(null, null);
+    }
+
+    @Benchmark
+    public InstitutoResponseDto findById() {
+        return servicio.findById(Datos.aleatorio(institutos).getId());
+    }
+
+    @Benchmark
+    public InstitutoResponseDto findByUuid() {
+        return servicio.findByUuid(Datos.aleatorio(institutos).getUuid().toString());
+    }
+
+    // Sin filtros: sale del listado ya mapeado
+    @Benchmark
+    public List<InstitutoResponseDto> findAll() {
+        return servicio.findAll(null, null);
+    }
+
+    @Benchmark
+    public List<InstitutoResponseDto> findAllByNombre() {
+        return servicio.findAll(null, Datos.aleatorio(institutos).getNombre());
+    }
+
+    // Repositorio, caché y listado: en el listado solo se copia el trozo del instituto y el índice de trozos
+    @Benchmark
+    public InstitutoResponseDto update() {
+        return servicio.update(Datos.aleatorio(institutos).getId(),
+                InstitutoUpdateDto.builder().numeroEstudiantes(ThreadLocalRandom.current().nextInt(100, 2500)).build());
+    }
+}
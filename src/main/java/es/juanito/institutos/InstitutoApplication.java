@@ -2,8 +2,10 @@ package es.juanito.institutos;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.cache.annotation.EnableCaching;
 
 @SpringBootApplication
+@EnableCaching // Sin esto Spring Boot no crea el CacheManager de Caffeine que usa InstitutosCache
 public class InstitutoApplication {
 
     public static void main(String[] args) {
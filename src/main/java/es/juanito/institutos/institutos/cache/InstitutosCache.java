@@ -0,0 +1,95 @@
+package es.juanito.institutos.institutos.cache;
+
+import es.juanito.institutos.institutos.dto.InstitutoResponseDto;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caché de institutos con una única entrada canónica por instituto.
+ * El DTO se guarda solo bajo su id en la caché "institutos"; la caché "institutos-uuid" guarda
+ * el alias uuid -> id. Así, al actualizar o borrar basta con escribir o invalidar la entrada
+ * del id y las búsquedas por uuid nunca devuelven una copia antigua.
+ * Cada escritura o invalidación cambia la versión; lo que se ha leído del repositorio solo se queda
+ * en la caché si la versión no ha cambiado mientras se leía.
+ */
+@Component
+public class InstitutosCache {
+    public static final String INSTITUTOS = "institutos";
+    public static final String UUIDS = "institutos-uuid";
+
+    private final Cache institutos;
+    private final Cache uuids;
+    private final AtomicLong version = new AtomicLong();
+
+    public InstitutosCache(CacheManager cacheManager) {
+        this.institutos = getCache(cacheManager, INSTITUTOS);
+        this.uuids = getCache(cacheManager, UUIDS);
+    }
+
+    public InstitutoResponseDto get(Long id) {
+        return institutos.get(id, InstitutoResponseDto.class);
+    }
+
+    public InstitutoResponseDto get(UUID uuid) {
+        Long id = uuids.get(uuid, Long.class);
+        if (id == null) {
+            return null;
+        }
+        InstitutoResponseDto instituto = get(id);
+        // El alias puede sobrevivir a la entrada canónica (desalojada o borrada)
+        return instituto != null && uuid.equals(instituto.getUuid()) ? instituto : null;
+    }
+
+    // Se toma antes de leer del repositorio y se pasa a putIfAbsent
+    public long version() {
+        return version.get();
+    }
+
+    // Escritura directa: guarda la entrada canónica y su alias
+    public InstitutoResponseDto put(InstitutoResponseDto instituto) {
+        version.incrementAndGet();
+        institutos.put(instituto.getId(), instituto);
+        if (instituto.getUuid() != null) {
+            uuids.put(instituto.getUuid(), instituto.getId());
+        }
+        return instituto;
+    }
+
+    // Para lecturas que han ido al repositorio: si una escritura ha llegado antes, gana la escritura.
+    // Si alguna ha llegado mientras se leía, lo leído puede estar ya cambiado o borrado y se quita otra vez;
+    // como las escrituras cambian la versión antes de tocar la caché, o se ve aquí o se aplican después
+    public InstitutoResponseDto putIfAbsent(InstitutoResponseDto instituto, long leidoEnVersion) {
+        Cache.ValueWrapper existente = institutos.putIfAbsent(instituto.getId(), instituto);
+        if (existente != null && existente.get() != null) {
+            return (InstitutoResponseDto) existente.get();
+        }
+        if (instituto.getUuid() != null) {
+            uuids.putIfAbsent(instituto.getUuid(), instituto.getId());
+        }
+        if (version.get() != leidoEnVersion) {
+            institutos.evict(instituto.getId());
+        }
+        return instituto;
+    }
+
+    // Invalida las dos claves por las que se puede llegar al instituto
+    public void evict(Long id, UUID uuid) {
+        version.incrementAndGet();
+        institutos.evict(id);
+        if (uuid != null) {
+            uuids.evict(uuid);
+        }
+    }
+
+    private static Cache getCache(CacheManager cacheManager, String nombre) {
+        Cache cache = cacheManager.getCache(nombre);
+        if (cache == null) {
+            throw new IllegalStateException("No está configurada la caché " + nombre + " (spring.cache.cache-names)");
+        }
+        return cache;
+    }
+}
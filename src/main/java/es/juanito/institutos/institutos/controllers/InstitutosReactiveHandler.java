@@ -0,0 +1,211 @@
+package es.juanito.institutos.institutos.controllers;
+
+import es.juanito.institutos.institutos.dto.InstitutoCreateDto;
+import es.juanito.institutos.institutos.dto.InstitutoCriteriaDto;
+import es.juanito.institutos.institutos.dto.InstitutoPageRequestDto;
+import es.juanito.institutos.institutos.dto.InstitutoResponseDto;
+import es.juanito.institutos.institutos.dto.InstitutoUpdateDto;
+import es.juanito.institutos.institutos.exceptions.InstitutoBadRequestException;
+import es.juanito.institutos.institutos.services.InstitutosReactiveService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import jakarta.servlet.ServletException;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ProblemDetail;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.function.ServerRequest;
+import org.springframework.web.servlet.function.ServerResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * Manejadores de las rutas reactivas (InstitutosReactiveRouter), equivalentes a InstitutosRestController
+ * Las respuestas de un elemento se escriben cuando se completa el Mono y las listas se envían en NDJSON
+ * según las va emitiendo el Flux, sin juntarlas antes en una lista.
+ */
+@Slf4j
+@Component
+public class InstitutosReactiveHandler {
+    // Cada cuántas líneas se vacía el buffer hacia el cliente, como en la exportación del controlador
+    private static final int LINEAS_POR_FLUSH = 500;
+    private static final byte[] FIN_LINEA = {'\n'};
+
+    private final InstitutosReactiveService institutosReactiveService;
+    private final Validator validator;
+    private final ObjectWriter writer;
+
+    public InstitutosReactiveHandler(InstitutosReactiveService institutosReactiveService, Validator validator,
+                                     ObjectMapper objectMapper) {
+        this.institutosReactiveService = institutosReactiveService;
+        this.validator = validator;
+        this.writer = objectMapper.writerFor(InstitutoResponseDto.class);
+    }
+
+    /**
+     * Institutos que cumplen los filtros, con los mismos parámetros que GET /institutos
+     * Sin page, size, sort ni after se envían todos en NDJSON; con ellos se devuelve la página en JSON
+     * con las cabeceras X-Total-Count, X-Page, X-Page-Size y X-Next-Cursor
+     */
+    public ServerResponse getAll(ServerRequest request) {
+        var criteria = InstitutoCriteriaDto.builder()
+                .ciudad(texto(request, "ciudad"))
+                .nombre(texto(request, "nombre"))
+                .tipo(texto(request, "tipo"))
+                .codigoInstituto(texto(request, "codigoInstituto"))
+                .minEstudiantes(numero(request, "minEstudiantes", Integer::valueOf))
+                .maxEstudiantes(numero(request, "maxEstudiantes", Integer::valueOf))
+                .minProfesores(numero(request, "minProfesores", Integer::valueOf))
+                .maxProfesores(numero(request, "maxProfesores", Integer::valueOf))
+                .fundadoDesde(fecha(request, "fundadoDesde"))
+                .fundadoHasta(fecha(request, "fundadoHasta"))
+                .build();
+        var pageRequest = InstitutoPageRequestDto.builder()
+                .page(numero(request, "page", Integer::valueOf))
+                .size(numero(request, "size", Integer::valueOf))
+                .sort(texto(request, "sort"))
+                .after(numero(request, "after", Long::valueOf))
+                .build();
+        log.debug("Buscando institutos (reactivo) por {}", criteria);
+        if (pageRequest.getPage() == null && pageRequest.getSize() == null
+                && pageRequest.getSort() == null && pageRequest.getAfter() == null) {
+            return ndjson(institutosReactiveService.findAll(criteria));
+        }
+        return ServerResponse.async(institutosReactiveService.findPage(criteria, pageRequest).map(pagina -> {
+            var respuesta = ServerResponse.ok()
+                    .header("X-Total-Count", String.valueOf(pagina.getTotalElements()))
+                    .header("X-Page-Size", String.valueOf(pagina.getSize()));
+            if (pagina.getPage() != null) {
+                respuesta.header("X-Page", String.valueOf(pagina.getPage()));
+            }
+            if (pagina.getNextCursor() != null) {
+                respuesta.header("X-Next-Cursor", String.valueOf(pagina.getNextCursor()));
+            }
+            return respuesta.body(pagina.getContent());
+        }));
+    }
+
+    // Todo el catálogo en NDJSON, leído por lotes
+    public ServerResponse export(ServerRequest request) {
+        log.debug("Exportando institutos (reactivo) en NDJSON");
+        return ndjson(institutosReactiveService.streamAll());
+    }
+
+    public ServerResponse getStats(ServerRequest request) {
+        log.debug("Obteniendo estadísticas de institutos (reactivo)");
+        return ServerResponse.async(institutosReactiveService.stats().map(stats -> ServerResponse.ok().body(stats)));
+    }
+
+    public ServerResponse getById(ServerRequest request) {
+        Long id = id(request);
+        log.debug("Buscando Instituto (reactivo) por id {}", id);
+        return ServerResponse.async(institutosReactiveService.findById(id).map(dto -> ServerResponse.ok().body(dto)));
+    }
+
+    public ServerResponse create(ServerRequest request) throws ServletException, IOException {
+        var dto = request.body(InstitutoCreateDto.class);
+        var errores = validar(dto);
+        if (errores != null) {
+            return errores;
+        }
+        return ServerResponse.async(institutosReactiveService.save(dto)
+                .map(instituto -> ServerResponse.status(HttpStatus.CREATED).body(instituto)));
+    }
+
+    // PUT y PATCH, igual que en el controlador
+    public ServerResponse update(ServerRequest request) throws ServletException, IOException {
+        Long id = id(request);
+        var dto = request.body(InstitutoUpdateDto.class);
+        var errores = validar(dto);
+        if (errores != null) {
+            return errores;
+        }
+        log.debug("Actualizando instituto (reactivo) id={} con instituto={}", id, dto);
+        return ServerResponse.async(institutosReactiveService.update(id, dto).map(instituto -> ServerResponse.ok().body(instituto)));
+    }
+
+    public ServerResponse delete(ServerRequest request) {
+        Long id = id(request);
+        log.debug("Borrando instituto (reactivo) por id: {}", id);
+        return ServerResponse.async(institutosReactiveService.deleteById(id)
+                .then(Mono.fromSupplier(() -> ServerResponse.noContent().build())));
+    }
+
+    // Una línea por instituto según los emite el Flux, vaciando el buffer por bloques
+    private ServerResponse ndjson(Flux<InstitutoResponseDto> institutos) {
+        return ServerResponse.ok().contentType(MediaType.APPLICATION_NDJSON).stream(salida -> {
+            int[] lineas = {0};
+            institutos.subscribe(instituto -> {
+                try {
+                    // Como bytes para que no pase por los conversores, que vacían el buffer en cada escritura
+                    salida.write(writer.writeValueAsBytes(instituto)).write(FIN_LINEA);
+                    if (++lineas[0] % LINEAS_POR_FLUSH == 0) {
+                        salida.flush();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, salida::error, salida::complete);
+        });
+    }
+
+    // Mismo cuerpo de error que el manejador de validación del controlador
+    private <T> ServerResponse validar(T dto) {
+        Set<ConstraintViolation<T>> violaciones = validator.validate(dto);
+        if (violaciones.isEmpty()) {
+            return null;
+        }
+        ProblemDetail problemDetail = ProblemDetail.forStatus(HttpStatus.BAD_REQUEST);
+        problemDetail.setDetail("Falló la validación para el objeto='" + dto.getClass().getSimpleName()
+                + "'. Núm. errores: " + violaciones.size());
+        Map<String, String> errores = new TreeMap<>();
+        for (ConstraintViolation<T> violacion : violaciones) {
+            errores.put(violacion.getPropertyPath().toString(), violacion.getMessage());
+        }
+        problemDetail.setProperty("errores", errores);
+        return ServerResponse.badRequest().body(problemDetail);
+    }
+
+    private static Long id(ServerRequest request) {
+        String id = request.pathVariable("id");
+        try {
+            return Long.valueOf(id);
+        } catch (NumberFormatException e) {
+            throw new InstitutoBadRequestException("Id no válido: " + id);
+        }
+    }
+
+    private static String texto(ServerRequest request, String nombre) {
+        return request.param(nombre).orElse(null);
+    }
+
+    private static <N extends Number> N numero(ServerRequest request, String nombre, Function<String, N> conversor) {
+        String valor = texto(request, nombre);
+        try {
+            return valor == null ? null : conversor.apply(valor);
+        } catch (NumberFormatException e) {
+            throw new InstitutoBadRequestException("El parámetro " + nombre + " no es un número: " + valor);
+        }
+    }
+
+    private static LocalDate fecha(ServerRequest request, String nombre) {
+        String valor = texto(request, nombre);
+        try {
+            return valor == null ? null : LocalDate.parse(valor);
+        } catch (DateTimeParseException e) {
+            throw new InstitutoBadRequestException("El parámetro " + nombre + " no es una fecha yyyy-MM-dd: " + valor);
+        }
+    }
+}
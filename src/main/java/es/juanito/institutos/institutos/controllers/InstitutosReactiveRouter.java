@@ -0,0 +1,49 @@
+package es.juanito.institutos.institutos.controllers;
+
+import es.juanito.institutos.institutos.exceptions.InstitutoException;
+import es.juanito.institutos.institutos.exceptions.InstitutoNotFoundException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ProblemDetail;
+import org.springframework.web.servlet.function.RouterFunction;
+import org.springframework.web.servlet.function.RouterFunctions;
+import org.springframework.web.servlet.function.ServerResponse;
+
+import static org.springframework.web.servlet.function.RequestPredicates.contentType;
+
+/**
+ * API reactiva en api/{version}/reactive/institutos, con las mismas rutas que InstitutosRestController
+ * Son rutas funcionales de Spring MVC: comparten servidor, filtros, métricas, repositorio y caché con la API normal.
+ */
+@Configuration
+public class InstitutosReactiveRouter {
+
+    @Bean
+    public RouterFunction<ServerResponse> institutosReactiveRoutes(InstitutosReactiveHandler handler,
+                                                                   @Value("${API_VERSION:v1}") String version) {
+        return RouterFunctions.route()
+                .path("/api/" + version + "/reactive/institutos", rutas -> rutas
+                        // Antes que /{id} para que no se tomen como ids
+                        .GET("/export", handler::export)
+                        .GET("/stats", handler::getStats)
+                        .GET("/{id}", handler::getById)
+                        .GET("", handler::getAll)
+                        .POST("", contentType(MediaType.APPLICATION_JSON), handler::create)
+                        .PUT("/{id}", contentType(MediaType.APPLICATION_JSON), handler::update)
+                        .PATCH("/{id}", contentType(MediaType.APPLICATION_JSON), handler::update)
+                        .DELETE("/{id}", handler::delete))
+                // No encontrado (404) antes que el resto de errores del dominio (400)
+                .onError(InstitutoNotFoundException.class, (e, request) -> problema(HttpStatus.NOT_FOUND, e))
+                .onError(InstitutoException.class, (e, request) -> problema(HttpStatus.BAD_REQUEST, e))
+                .build();
+    }
+
+    private static ServerResponse problema(HttpStatus status, Throwable e) {
+        ProblemDetail problemDetail = ProblemDetail.forStatus(status);
+        problemDetail.setDetail(e.getMessage());
+        return ServerResponse.status(status).body(problemDetail);
+    }
+}
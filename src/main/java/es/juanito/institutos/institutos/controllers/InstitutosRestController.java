@@ -1,26 +1,48 @@
 package es.juanito.institutos.institutos.controllers;
 
+import es.juanito.institutos.institutos.dto.InstitutoBulkItemDto;
+import es.juanito.institutos.institutos.dto.InstitutoBulkResultDto;
 import es.juanito.institutos.institutos.dto.InstitutoCreateDto;
+import es.juanito.institutos.institutos.dto.InstitutoCriteriaDto;
+import es.juanito.institutos.institutos.dto.InstitutoPageRequestDto;
 import es.juanito.institutos.institutos.dto.InstitutoResponseDto;
+import es.juanito.institutos.institutos.dto.InstitutoStatsDto;
 import es.juanito.institutos.institutos.dto.InstitutoUpdateDto;
+import es.juanito.institutos.institutos.exceptions.InstitutoBadRequestException;
 import es.juanito.institutos.institutos.exceptions.InstitutoNotFoundException;
 import es.juanito.institutos.institutos.models.Instituto;
 import es.juanito.institutos.institutos.services.InstitutosService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ProblemDetail;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
 import org.springframework.validation.FieldError;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 
 @Slf4j
 @RequiredArgsConstructor
@@ -28,8 +50,12 @@ import java.util.Map;
 @RequestMapping("api/${API_VERSION:v1}/institutos")
 
 public class InstitutosRestController {
+    // Cada cuántas líneas se vacía el buffer hacia el cliente durante la exportación
+    private static final int LINEAS_POR_FLUSH = 500;
+
     // Servicio de institutos
     private final InstitutosService institutosService;
+    private final ObjectMapper objectMapper;
 
 
 
@@ -38,13 +64,144 @@ public class InstitutosRestController {
      - @param numero    Número de la tarjeta
      - @param titular   Titular de la tarjeta
      - @return Lista de tarjetas
+     - También se puede filtrar por tipo, codigoInstituto y por rangos con minEstudiantes/maxEstudiantes,
+     - minProfesores/maxProfesores y fundadoDesde/fundadoHasta (yyyy-MM-dd), que se resuelven con índices ordenados
+     - Si se indica page, size, sort o after se devuelve solo esa página y los datos de paginación
+     - van en las cabeceras X-Total-Count, X-Page, X-Page-Size y X-Next-Cursor
      */
 
     @GetMapping
     public ResponseEntity<List<InstitutoResponseDto>> getAll(@RequestParam(required = false) String ciudad,
-                                                            @RequestParam(required = false) String nombre) {
-        log.info("Buscando institutos por ciudad={}, nombre={}", ciudad, nombre);
-        return ResponseEntity.ok(institutosService.findAll(ciudad, nombre));
+                                                            @RequestParam(required = false) String nombre,
+                                                            @RequestParam(required = false) String tipo,
+                                                            @RequestParam(required = false) String codigoInstituto,
+                                                            @RequestParam(required = false) Integer minEstudiantes,
+                                                            @RequestParam(required = false) Integer maxEstudiantes,
+                                                            @RequestParam(required = false) Integer minProfesores,
+                                                            @RequestParam(required = false) Integer maxProfesores,
+                                                            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fundadoDesde,
+                                                            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fundadoHasta,
+                                                            @RequestParam(required = false) Integer page,
+                                                            @RequestParam(required = false) Integer size,
+                                                            @RequestParam(required = false) String sort,
+                                                            @RequestParam(required = false) Long after) {
+        var criteria = InstitutoCriteriaDto.builder()
+                .ciudad(ciudad)
+                .nombre(nombre)
+                .tipo(tipo)
+                .codigoInstituto(codigoInstituto)
+                .minEstudiantes(minEstudiantes)
+                .maxEstudiantes(maxEstudiantes)
+                .minProfesores(minProfesores)
+                .maxProfesores(maxProfesores)
+                .fundadoDesde(fundadoDesde)
+                .fundadoHasta(fundadoHasta)
+                .build();
+        log.debug("Buscando institutos por {}", criteria);
+        if (page == null && size == null && sort == null && after == null) {
+            return ResponseEntity.ok(institutosService.findAll(criteria));
+        }
+        var pagina = institutosService.findPage(criteria, InstitutoPageRequestDto.builder()
+                .page(page)
+                .size(size)
+                .sort(sort)
+                .after(after)
+                .build());
+        var respuesta = ResponseEntity.ok()
+                .header("X-Total-Count", String.valueOf(pagina.getTotalElements()))
+                .header("X-Page-Size", String.valueOf(pagina.getSize()));
+        if (pagina.getPage() != null) {
+            respuesta.header("X-Page", String.valueOf(pagina.getPage()));
+        }
+        if (pagina.getNextCursor() != null) {
+            respuesta.header("X-Next-Cursor", String.valueOf(pagina.getNextCursor()));
+        }
+        return respuesta.body(pagina.getContent());
+    }
+
+    /**
+     * Exporta todo el catálogo en NDJSON (un instituto por línea)
+     * Se escribe según se lee del repositorio, con memoria constante; si el cliente
+     * acepta gzip (con q mayor que 0) la respuesta va comprimida.
+     * param acceptEncoding cabecera Accept-Encoding del cliente
+     * return StreamingResponseBody con los institutos
+     */
+
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> export(
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        log.debug("Exportando institutos en NDJSON");
+        boolean gzip = aceptaGzip(acceptEncoding);
+        StreamingResponseBody cuerpo = salida -> {
+            OutputStream destino = gzip ? new GZIPOutputStream(salida, 8192) : salida;
+            // Sin flush tras cada valor ni separador entre valores raíz: las líneas las separamos nosotros
+            var writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+            try (var institutos = institutosService.streamAll();
+                 JsonGenerator generador = objectMapper.getFactory()
+                         .createGenerator(new BufferedOutputStream(destino, 64 * 1024))) {
+                generador.setRootValueSeparator(null);
+                int lineas = 0;
+                for (var iterador = institutos.iterator(); iterador.hasNext(); ) {
+                    writer.writeValue(generador, iterador.next());
+                    generador.writeRaw('\n');
+                    // Se vacía por bloques: el cliente recibe datos de forma continua sin un flush por línea
+                    if (++lineas % LINEAS_POR_FLUSH == 0) {
+                        generador.flush();
+                    }
+                }
+            }
+        };
+        // La respuesta depende de Accept-Encoding: las cachés intermedias tienen que distinguirlas
+        var respuesta = ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            respuesta.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return respuesta.body(cuerpo);
+    }
+
+    // gzip (o *, si gzip no aparece) con q mayor que 0; "gzip;q=0" es rechazarlo y un q mal escrito cuenta como 0
+    private static boolean aceptaGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Double gzip = null;
+        Double comodin = null;
+        for (String codificacion : acceptEncoding.split(",")) {
+            String[] partes = codificacion.split(";");
+            String nombre = partes[0].trim().toLowerCase(Locale.ROOT);
+            double q = 1;
+            for (int i = 1; i < partes.length; i++) {
+                String parametro = partes[i].trim();
+                if (parametro.regionMatches(true, 0, "q=", 0, 2)) {
+                    try {
+                        q = Double.parseDouble(parametro.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        q = 0;
+                    }
+                }
+            }
+            if (nombre.equals("gzip") || nombre.equals("x-gzip")) {
+                gzip = q;
+            } else if (nombre.equals("*")) {
+                comodin = q;
+            }
+        }
+        double elegido = gzip != null ? gzip : comodin != null ? comodin : 0;
+        return elegido > 0;
+    }
+
+    /**
+     * Estadísticas por ciudad y por tipo: número de institutos, total y media de estudiantes
+     * y profesores y estudiantes por profesor
+     * Se sirven de totales que se actualizan en cada escritura, así que se puede consultar a menudo
+     * return InstitutoStatsDto con el total y los grupos
+     */
+
+    @GetMapping("/stats")
+    public ResponseEntity<InstitutoStatsDto> getStats() {
+        log.debug("Obteniendo estadísticas de institutos");
+        return ResponseEntity.ok(institutosService.stats());
     }
 
     /**
@@ -57,7 +214,7 @@ public class InstitutosRestController {
 
     @GetMapping("/{id}")
     public ResponseEntity<InstitutoResponseDto> getById(@PathVariable Long id) {
-        log.info("Buscando Instituto por id {}", id);
+        log.debug("Buscando Instituto por id {}", id);
         return ResponseEntity.ok(institutosService.findById(id));
 
     }
@@ -76,6 +233,35 @@ public class InstitutosRestController {
         return ResponseEntity.status(HttpStatus.CREATED).body(instituto);
     }
 
+    /**
+     * Altas, modificaciones y borrados en lote
+     * Cada operación es {"op": "create|update|delete", "id": ..., "instituto": {...}}
+     * param operaciones lista de operaciones en un array JSON
+     * return Resultado de cada operación, en el mismo orden, con su código HTTP equivalente
+     */
+
+    @PostMapping(value = "/bulk", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<InstitutoBulkResultDto>> bulk(@RequestBody List<InstitutoBulkItemDto> operaciones) {
+        log.debug("Procesando lote de {} operaciones", operaciones.size());
+        return ResponseEntity.ok(institutosService.bulk(operaciones));
+    }
+
+    /**
+     * Igual que el anterior pero con una operación por línea (NDJSON)
+     */
+
+    @PostMapping(value = "/bulk", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<List<InstitutoBulkResultDto>> bulkNdjson(InputStream cuerpo) throws IOException {
+        List<InstitutoBulkItemDto> operaciones = new ArrayList<>();
+        try (var lineas = objectMapper.readerFor(InstitutoBulkItemDto.class).<InstitutoBulkItemDto>readValues(cuerpo)) {
+            lineas.forEachRemaining(operaciones::add);
+        } catch (JsonProcessingException | RuntimeException e) {
+            // MappingIterator envuelve los errores de formato en RuntimeJsonMappingException
+            throw new InstitutoBadRequestException("NDJSON no válido: " + e.getMessage());
+        }
+        return bulk(operaciones);
+    }
+
     /**
      * Actualiza un instituto
 
@@ -89,7 +275,7 @@ public class InstitutosRestController {
 
     @PutMapping("/{id}")
     public ResponseEntity<InstitutoResponseDto> update(@PathVariable Long id,@Valid @RequestBody InstitutoUpdateDto institutoUpdateDto) {
-        log.info("Actualizando instituto id={} con instituto={}", id, institutoUpdateDto);
+        log.debug("Actualizando instituto id={} con instituto={}", id, institutoUpdateDto);
         return ResponseEntity.ok(institutosService.update(id, institutoUpdateDto));
     }
     /**
@@ -104,7 +290,7 @@ public class InstitutosRestController {
 
     @PatchMapping("/{id}")
     public ResponseEntity<InstitutoResponseDto> updatePartial(@PathVariable Long id,@Valid @RequestBody InstitutoUpdateDto institutoUpdateDto) {
-        log.info("Actualizando parcialmente instituto con id={} con instituto={}",id, institutoUpdateDto);
+        log.debug("Actualizando parcialmente instituto con id={} con instituto={}",id, institutoUpdateDto);
         return ResponseEntity.ok(institutosService.update(id, institutoUpdateDto));
     }
     /**
@@ -117,7 +303,7 @@ public class InstitutosRestController {
 
     @DeleteMapping("/{id}")
     public ResponseEntity<Void> delete(@PathVariable Long id) {
-        log.info("Borrando instituto por id: {}", id);
+        log.debug("Borrando instituto por id: {}", id);
         institutosService.deleteById(id);
         return ResponseEntity.status(HttpStatus.NO_CONTENT).build();
     }
@@ -0,0 +1,20 @@
+package es.juanito.institutos.institutos.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Builder
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class InstitutoBulkItemDto {
+    public static final String CREATE = "create";
+    public static final String UPDATE = "update";
+    public static final String DELETE = "delete";
+
+    private  String op;                       // create, update o delete
+    private  Long id;                         // obligatorio en update y delete
+    private  InstitutoCreateDto instituto;    // datos en create y update
+}
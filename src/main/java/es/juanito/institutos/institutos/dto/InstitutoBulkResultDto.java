@@ -0,0 +1,19 @@
+package es.juanito.institutos.institutos.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Builder
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class InstitutoBulkResultDto {
+    private  Integer index;                   // posición de la operación en la petición
+    private  String op;
+    private  Long id;
+    private  Integer status;                  // código HTTP equivalente a la operación individual
+    private  String error;
+    private  InstitutoResponseDto instituto;
+}
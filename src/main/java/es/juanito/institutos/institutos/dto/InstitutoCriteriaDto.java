@@ -0,0 +1,28 @@
+package es.juanito.institutos.institutos.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.util.stream.Stream;
+
+// Filtros de búsqueda de institutos, los que vienen a null (o vacíos) no se aplican
+@Builder
+@Data
+public class InstitutoCriteriaDto {
+    private  String ciudad;             // Contiene, sin distinguir mayúsculas ni tildes
+    private  String nombre;             // Contiene, sin distinguir mayúsculas ni tildes
+    private  String tipo;               // Igual, sin distinguir mayúsculas
+    private  String codigoInstituto;    // Igual, sin distinguir mayúsculas
+    private  Integer minEstudiantes;    // Rango de numeroEstudiantes, ambos incluidos
+    private  Integer maxEstudiantes;
+    private  Integer minProfesores;     // Rango de numeroProfesores, ambos incluidos
+    private  Integer maxProfesores;
+    private  LocalDate fundadoDesde;    // Rango de anioFundacion, ambos incluidos
+    private  LocalDate fundadoHasta;
+
+    public boolean sinFiltros() {
+        return Stream.of(ciudad, nombre, tipo, codigoInstituto).allMatch(texto -> texto == null || texto.isBlank())
+                && Stream.of(minEstudiantes, maxEstudiantes, minProfesores, maxProfesores, fundadoDesde, fundadoHasta).allMatch(valor -> valor == null);
+    }
+}
@@ -0,0 +1,16 @@
+package es.juanito.institutos.institutos.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Builder
+@Data
+public class InstitutoPageRequestDto {
+    public static final int SIZE_POR_DEFECTO = 20;
+    public static final int SIZE_MAXIMO = 1000;
+
+    private  Integer page;      // Número de página, empieza en 0
+    private  Integer size;      // Elementos por página
+    private  String sort;       // campo o campo,asc|desc; por defecto id,asc
+    private  Long after;        // Cursor: id del último elemento de la página anterior (solo con orden por id)
+}
@@ -0,0 +1,20 @@
+package es.juanito.institutos.institutos.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Builder
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class InstitutoPageResponseDto {
+    private  List<InstitutoResponseDto> content;
+    private  Integer page;
+    private  Integer size;
+    private  Long totalElements;
+    private  Long nextCursor;   // null si no hay más páginas o el orden no es por id
+}
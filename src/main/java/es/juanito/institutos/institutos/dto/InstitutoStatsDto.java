@@ -0,0 +1,14 @@
+package es.juanito.institutos.institutos.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.Map;
+
+@Builder
+@Data
+public class InstitutoStatsDto {
+    private  InstitutoStatsGrupoDto total;                   // Todo el catálogo
+    private  Map<String, InstitutoStatsGrupoDto> porCiudad;  // Clave: ciudad tal cual se guardó
+    private  Map<String, InstitutoStatsGrupoDto> porTipo;    // Clave: tipo tal cual se guardó
+}
@@ -0,0 +1,15 @@
+package es.juanito.institutos.institutos.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Builder
+@Data
+public class InstitutoStatsGrupoDto {
+    private  long institutos;
+    private  long totalEstudiantes;
+    private  long totalProfesores;
+    private  Double mediaEstudiantes;           // null si ningún instituto del grupo informa estudiantes
+    private  Double mediaProfesores;            // null si ningún instituto del grupo informa profesores
+    private  Double estudiantesPorProfesor;     // null si el grupo no tiene profesores
+}
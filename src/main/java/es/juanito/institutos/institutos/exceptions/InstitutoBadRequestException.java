@@ -1,5 +1,9 @@
 package es.juanito.institutos.institutos.exceptions;
 
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
 public class InstitutoBadRequestException extends InstitutoException {
     public InstitutoBadRequestException(String message) {
         super(message);
@@ -0,0 +1,47 @@
+package es.juanito.institutos.institutos.filters;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Log de acceso muestreado: una de cada N peticiones se registra en INFO con método, ruta, estado y duración.
+ * Sustituye a los mensajes por petición del controlador, que ahora van en DEBUG.
+ * Con institutos.logging.request-sample-rate=0 (por defecto) no registra ninguna.
+ */
+@Slf4j
+@Component
+public class PeticionesMuestreoFilter extends OncePerRequestFilter {
+    private final int cadaCuantas;
+    private final AtomicLong peticiones = new AtomicLong();
+
+    public PeticionesMuestreoFilter(@Value("${institutos.logging.request-sample-rate:0}") int cadaCuantas) {
+        this.cadaCuantas = cadaCuantas;
+    }
+
+    // Las peticiones que no entran en la muestra pasan sin medir nada
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return cadaCuantas <= 0 || !log.isInfoEnabled() || peticiones.incrementAndGet() % cadaCuantas != 0;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        long inicio = System.nanoTime();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            log.info("{} {} -> {} en {} ms (1 de cada {})", request.getMethod(), request.getRequestURI(),
+                    response.getStatus(), (System.nanoTime() - inicio) / 1_000_000, cadaCuantas);
+        }
+    }
+}
@@ -2,18 +2,34 @@ package es.juanito.institutos.institutos.mappers;
 
 import es.juanito.institutos.institutos.dto.InstitutoCreateDto;
 import es.juanito.institutos.institutos.dto.InstitutoResponseDto;
+import es.juanito.institutos.institutos.dto.InstitutoStatsDto;
+import es.juanito.institutos.institutos.dto.InstitutoStatsGrupoDto;
 import es.juanito.institutos.institutos.dto.InstitutoUpdateDto;
 import es.juanito.institutos.institutos.models.Instituto;
+import es.juanito.institutos.institutos.models.InstitutoTotales;
+import es.juanito.institutos.institutos.utils.ClaveBusqueda;
+import es.juanito.institutos.institutos.utils.EscaneoParalelo;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.UUID;
 
 @Component
 public class InstitutoMapper {
+    // Mapeo de listas en paralelo, desactivado salvo que se configure el bean
+    private EscaneoParalelo escaneoParalelo = EscaneoParalelo.DESACTIVADO;
+
+    @Autowired(required = false)
+    public void setEscaneoParalelo(EscaneoParalelo escaneoParalelo) {
+        this.escaneoParalelo = escaneoParalelo;
+    }
+
     public Instituto toInstituto( Long id,InstitutoCreateDto institutoCreateDto ) {
-        return Instituto.builder()
+        return conClavesBusqueda(Instituto.builder()
                 .id(id)
                 .nombre(institutoCreateDto.getNombre())
                 .ciudad(institutoCreateDto.getCiudad())
@@ -28,14 +44,14 @@ public class InstitutoMapper {
                 .createdAt(LocalDateTime.now())
                 .updateAt(LocalDateTime.now())
                 .uuid(UUID.randomUUID())
-                .build();
+                .build());
 
 
     }
 
 
     public Instituto toInstituto(InstitutoUpdateDto institutoUpdateDto, Instituto instituto) {
-        return Instituto.builder()
+        return conClavesBusqueda(Instituto.builder()
                 .id(instituto.getId())
                 .nombre(institutoUpdateDto.getNombre() != null ? institutoUpdateDto.getNombre() : instituto.getNombre())
                 .ciudad(institutoUpdateDto.getCiudad() != null ? institutoUpdateDto.getCiudad() : instituto.getCiudad())
@@ -50,6 +66,30 @@ public class InstitutoMapper {
                 .createdAt(instituto.getCreatedAt())
                 .updateAt(LocalDateTime.now())
                 .uuid(instituto.getUuid())
+                .build());
+    }
+
+    // Precalcula las claves normalizadas de nombre y ciudad para que las búsquedas no tengan que hacerlo
+    public Instituto conClavesBusqueda(Instituto instituto) {
+        instituto.setNombreBusqueda(ClaveBusqueda.normalizar(instituto.getNombre()));
+        instituto.setCiudadBusqueda(ClaveBusqueda.normalizar(instituto.getCiudad()));
+        return instituto;
+    }
+
+
+    // Los datos de una operación update de la carga masiva llegan con el formato de alta
+    public InstitutoUpdateDto toInstitutoUpdateDto(InstitutoCreateDto institutoCreateDto) {
+        return InstitutoUpdateDto.builder()
+                .nombre(institutoCreateDto.getNombre())
+                .ciudad(institutoCreateDto.getCiudad())
+                .direccion(institutoCreateDto.getDireccion())
+                .telefono(institutoCreateDto.getTelefono())
+                .email(institutoCreateDto.getEmail())
+                .numeroEstudiantes(institutoCreateDto.getNumeroEstudiantes())
+                .numeroProfesores(institutoCreateDto.getNumeroProfesores())
+                .tipo(institutoCreateDto.getTipo())
+                .anioFundacion(institutoCreateDto.getAnioFundacion())
+                .codigoInstituto(institutoCreateDto.getCodigoInstituto())
                 .build();
     }
 
@@ -73,10 +113,39 @@ public class InstitutoMapper {
                 .build();
     }
 
-    // Mappeamos de modelo a DTO (lista)
+    // Estadísticas de todo el catálogo a partir de los totales por ciudad y por tipo
+    public InstitutoStatsDto toStatsDto(Map<String, InstitutoTotales> porCiudad, Map<String, InstitutoTotales> porTipo) {
+        // Cada instituto está en un único tipo, así que sumando los tipos sale el total
+        var total = porTipo.values().stream().reduce(InstitutoTotales.VACIO, InstitutoTotales::sumar);
+        return InstitutoStatsDto.builder()
+                .total(toStatsGrupoDto(total))
+                .porCiudad(toStatsGrupoDtoMap(porCiudad))
+                .porTipo(toStatsGrupoDtoMap(porTipo))
+                .build();
+    }
+
+    public InstitutoStatsGrupoDto toStatsGrupoDto(InstitutoTotales totales) {
+        return InstitutoStatsGrupoDto.builder()
+                .institutos(totales.institutos())
+                .totalEstudiantes(totales.estudiantes())
+                .totalProfesores(totales.profesores())
+                .mediaEstudiantes(totales.conEstudiantes() == 0 ? null : (double) totales.estudiantes() / totales.conEstudiantes())
+                .mediaProfesores(totales.conProfesores() == 0 ? null : (double) totales.profesores() / totales.conProfesores())
+                .estudiantesPorProfesor(totales.profesores() == 0 ? null : (double) totales.estudiantes() / totales.profesores())
+                .build();
+    }
+
+    // Ordenado por nombre del grupo para que el JSON salga siempre igual
+    private Map<String, InstitutoStatsGrupoDto> toStatsGrupoDtoMap(Map<String, InstitutoTotales> grupos) {
+        Map<String, InstitutoStatsGrupoDto> resultado = new TreeMap<>();
+        grupos.forEach((grupo, totales) -> resultado.put(grupo, toStatsGrupoDto(totales)));
+        return resultado;
+    }
+
+    // Mappeamos de modelo a DTO (lista), en paralelo si la lista es muy grande y está activado
     public List<InstitutoResponseDto> toResponseDtoList(List<Instituto> institutos) {
-        return institutos.stream()
-                .map(this::toinstitutoResponseDto)
-                .toList();
+        var dtos = institutos.stream()
+                .map(this::toinstitutoResponseDto);
+        return escaneoParalelo.compensa(institutos.size()) ? escaneoParalelo.toList(dtos) : dtos.toList();
     }
 }
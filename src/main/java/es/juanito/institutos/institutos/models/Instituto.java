@@ -57,6 +57,15 @@ public class Instituto {
 
     //@Column(columnDefinition = "boolean default false")
     private Boolean isDeleted;
+
+    // Claves de búsqueda normalizadas (ver ClaveBusqueda), se calculan al guardar y no forman parte de la identidad
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private String nombreBusqueda;
+
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private String ciudadBusqueda;
 }
 
 
@@ -0,0 +1,38 @@
+package es.juanito.institutos.institutos.models;
+
+/**
+ * Totales acumulados de un grupo de institutos (por ciudad, por tipo o de todo el catálogo).
+ * Es inmutable: cada alta o baja crea uno nuevo, así quien lo lee nunca ve una suma a medias.
+ * Los estudiantes y profesores se cuentan aparte porque son opcionales y las medias
+ * solo tienen en cuenta los institutos que los informan.
+ */
+public record InstitutoTotales(long institutos,
+                               long conEstudiantes, long estudiantes,
+                               long conProfesores, long profesores) {
+
+    public static final InstitutoTotales VACIO = new InstitutoTotales(0, 0, 0, 0, 0);
+
+    public InstitutoTotales sumar(Instituto instituto) {
+        return acumular(instituto, 1);
+    }
+
+    public InstitutoTotales restar(Instituto instituto) {
+        return acumular(instituto, -1);
+    }
+
+    public InstitutoTotales sumar(InstitutoTotales otros) {
+        return new InstitutoTotales(institutos + otros.institutos,
+                conEstudiantes + otros.conEstudiantes, estudiantes + otros.estudiantes,
+                conProfesores + otros.conProfesores, profesores + otros.profesores);
+    }
+
+    private InstitutoTotales acumular(Instituto instituto, int signo) {
+        Integer numeroEstudiantes = instituto.getNumeroEstudiantes();
+        Integer numeroProfesores = instituto.getNumeroProfesores();
+        return new InstitutoTotales(institutos + signo,
+                conEstudiantes + (numeroEstudiantes == null ? 0 : signo),
+                estudiantes + (numeroEstudiantes == null ? 0 : (long) signo * numeroEstudiantes),
+                conProfesores + (numeroProfesores == null ? 0 : signo),
+                profesores + (numeroProfesores == null ? 0 : (long) signo * numeroProfesores));
+    }
+}
@@ -0,0 +1,49 @@
+package es.juanito.institutos.institutos.repositories;
+
+import es.juanito.institutos.institutos.models.Instituto;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+// Institutos con los que arranca un repositorio vacío, sea cual sea el almacenamiento
+final class DatosDePartida {
+
+    private DatosDePartida() {
+    }
+
+    static List<Instituto> institutos() {
+        return List.of(
+                Instituto.builder()
+                        .id(1L)
+                        .nombre("Gomez Moreno")
+                        .direccion("Calle albaida")
+                        .telefono("777-88-99-00")
+                        .email("Pepitolopez@Email.com")
+                        .numeroEstudiantes(555)
+                        .numeroProfesores(20)
+                        .tipo("publico")
+                        .anioFundacion(LocalDate.of(1983,12,19))
+                        .codigoInstituto("4567-XXX")
+                        .createdAt(LocalDateTime.now())
+                        .updateAt(LocalDateTime.now())
+                        .uuid(UUID.randomUUID())
+                        .build(),
+                Instituto.builder()
+                        .id(2L)
+                        .nombre("IES Francisco de Quevedo")
+                        .direccion("Avenida de los poblados")
+                        .telefono("888-99-00-11")
+                        .email("ManolitaGomez@Email.com")
+                        .numeroEstudiantes(1250)
+                        .numeroProfesores(60)
+                        .tipo("privado")
+                        .anioFundacion(LocalDate.of(1956,6,9))
+                        .codigoInstituto("6789-ZZZ")
+                        .createdAt(LocalDateTime.now())
+                        .updateAt(LocalDateTime.now())
+                        .uuid(UUID.randomUUID())
+                        .build());
+    }
+}
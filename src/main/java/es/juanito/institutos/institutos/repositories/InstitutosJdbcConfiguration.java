@@ -0,0 +1,40 @@
+package es.juanito.institutos.institutos.repositories;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import javax.sql.DataSource;
+
+/**
+ * DataSource, JdbcTemplate y gestor de transacciones solo con institutos.repository.backend=jdbc.
+ * Sus autoconfiguraciones están excluidas en application.properties: con el resto de almacenamientos no se crea
+ * el pool ni se arranca la base de datos H2. Se leen las mismas propiedades spring.datasource.*.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "institutos.repository.backend", havingValue = "jdbc")
+@EnableConfigurationProperties(DataSourceProperties.class)
+public class InstitutosJdbcConfiguration {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource dataSource(DataSourceProperties propiedades) {
+        return propiedades.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    public JdbcTemplate jdbcTemplate(DataSource dataSource) {
+        return new JdbcTemplate(dataSource);
+    }
+
+    @Bean
+    public DataSourceTransactionManager transactionManager(DataSource dataSource) {
+        return new DataSourceTransactionManager(dataSource);
+    }
+}
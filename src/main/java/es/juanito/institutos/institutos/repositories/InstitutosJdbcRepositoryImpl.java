@@ -0,0 +1,443 @@
+package es.juanito.institutos.institutos.repositories;
+
+import es.juanito.institutos.institutos.dto.InstitutoCriteriaDto;
+import es.juanito.institutos.institutos.models.Instituto;
+import es.juanito.institutos.institutos.models.InstitutoTotales;
+import es.juanito.institutos.institutos.repositories.indexes.AggregateIndex;
+import es.juanito.institutos.institutos.utils.ClaveBusqueda;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Repositorio de institutos sobre una tabla de la base de datos H2 de spring.datasource.
+ * Solo existe como bean si institutos.repository.backend=jdbc; el esquema (db/institutos-h2.sql) se crea al arrancar,
+ * en iniciar(), que quien cree el repositorio fuera de Spring tiene que llamar antes de usarlo.
+ * Las consultas son siempre las mismas cadenas con parámetros, así que H2 reutiliza los comandos ya preparados
+ * de cada conexión (QUERY_CACHE_SIZE en la url) y el pool mantiene las conexiones abiertas.
+ * saveAll, deleteAllById y saveAllAndDeleteAllById van en lotes JDBC dentro de una transacción. Los ids salen de la secuencia institutos_seq.
+ * El número de institutos y los totales por ciudad y tipo se leen una vez al arrancar y después se ajustan en cada
+ * escritura, como en memory, así que count, las métricas y las estadísticas no consultan la tabla.
+ */
+@Slf4j
+@Repository
+@ConditionalOnProperty(name = "institutos.repository.backend", havingValue = "jdbc")
+@Timed("institutos.repository")
+public class InstitutosJdbcRepositoryImpl implements InstitutosRepository, MeterBinder {
+    private static final String COLUMNAS = "id, nombre, nombre_busqueda, ciudad, ciudad_busqueda, direccion, telefono, email, "
+            + "numero_estudiantes, numero_profesores, tipo, anio_fundacion, codigo_instituto, created_at, update_at, uuid, is_deleted";
+    private static final String SELECT = "SELECT " + COLUMNAS + " FROM institutos";
+    // Alta o modificación en una sola sentencia
+    private static final String GUARDAR = "MERGE INTO institutos (" + COLUMNAS + ") KEY (id) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String POR_ID = SELECT + " WHERE id = ?";
+    private static final String POR_UUID = SELECT + " WHERE uuid = ?";
+    private static final String TODOS = SELECT + " ORDER BY id";
+    private static final String DESPUES = SELECT + " WHERE id > ? ORDER BY id LIMIT ?";
+    private static final String ANTES = SELECT + " WHERE id < ? ORDER BY id DESC LIMIT ?";
+    private static final String PRIMEROS = SELECT + " ORDER BY id LIMIT ?";
+    private static final String ULTIMOS = SELECT + " ORDER BY id DESC LIMIT ?";
+    // Páginas ordenadas por una columna numérica, que recorren su índice en lugar de ordenar la tabla
+    private static final String ORDENADOS = SELECT + " ORDER BY %s %s, id LIMIT ? OFFSET ?";
+    private static final String EXISTE = "SELECT COUNT(*) FROM institutos WHERE id = ?";
+    private static final String BORRAR = "DELETE FROM institutos WHERE id = ?";
+    private static final String RESERVAR = "SELECT NEXT VALUE FOR institutos_seq FROM SYSTEM_RANGE(1, ?)";
+    private static final String SIGUIENTE = "SELECT BASE_VALUE FROM INFORMATION_SCHEMA.SEQUENCES WHERE SEQUENCE_NAME = 'INSTITUTOS_SEQ'";
+    private static final String MAYOR = "SELECT COALESCE(MAX(id), 0) FROM institutos";
+    // Solo las columnas que necesitan el contador y los totales
+    private static final String RESUMEN = "SELECT id, ciudad, tipo, numero_estudiantes, numero_profesores FROM institutos";
+    private static final String RESUMEN_POR_IDS = RESUMEN + " WHERE id = ANY(?)";
+    private static final String RESUMEN_POR_UUID = RESUMEN + " WHERE uuid = ?";
+
+    private static final RowMapper<Instituto> INSTITUTO = InstitutosJdbcRepositoryImpl::leer;
+    private static final RowMapper<Instituto> RESUMIDO = InstitutosJdbcRepositoryImpl::resumen;
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate transaccion;
+    private final int lote;
+
+    // Último id que ha dado la secuencia; solo esta aplicación usa la base de datos embebida
+    private long reservado;
+    // Los ids reservados de una vez tienen que salir seguidos
+    private final Lock secuencia = new ReentrantLock();
+    // Mayor id guardado, que puede ir por delante de la secuencia si se guarda con un id asignado fuera de ella
+    private final AtomicLong mayorGuardado = new AtomicLong();
+
+    // Número de institutos y totales por ciudad y por tipo, ajustados en cada escritura
+    private final AtomicLong total = new AtomicLong();
+    private final AggregateIndex porCiudad = new AggregateIndex(Instituto::getCiudad);
+    private final AggregateIndex porTipo = new AggregateIndex(Instituto::getTipo);
+    // Las escrituras van de una en una: cada una lee las filas que sustituye o borra para ajustar el contador
+    // y los totales, y otra escritura de los mismos ids entre medias los descuadraría
+    private final Lock escritura = new ReentrantLock();
+
+    public InstitutosJdbcRepositoryImpl(JdbcTemplate jdbc, PlatformTransactionManager transacciones,
+                                        @Value("${institutos.repository.jdbc.batch-size:500}") int lote) {
+        this.jdbc = jdbc;
+        this.transaccion = new TransactionTemplate(transacciones);
+        this.lote = lote;
+    }
+
+    // Esquema, contador y totales de lo que ya hubiera, datos de partida si la base de datos está recién creada
+    // y secuencia por delante de los ids guardados
+    @PostConstruct
+    public void iniciar() {
+        new ResourceDatabasePopulator(new ClassPathResource("db/institutos-h2.sql")).execute(Objects.requireNonNull(jdbc.getDataSource()));
+        jdbc.query(RESUMEN, fila -> {
+            sumar(resumen(fila, 0));
+        });
+        long siguiente = jdbc.queryForObject(SIGUIENTE, Long.class);
+        if (siguiente == 1 && count() == 0) {
+            // Los mismos datos de partida que el repositorio en memoria
+            guardarTodos(DatosDePartida.institutos());
+        }
+        mayorGuardado.accumulateAndGet(jdbc.queryForObject(MAYOR, Long.class), Math::max);
+        secuencia.lock();
+        try {
+            reservado = siguiente - 1;
+            adelantar();
+        } finally {
+            secuencia.unlock();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("institutos.repository.size", this, InstitutosJdbcRepositoryImpl::count)
+                .description("Número de institutos guardados")
+                .register(registry);
+    }
+
+    @Override
+    public List<Instituto> findAll() {
+        log.trace("Buscando institutos");
+        return jdbc.query(TODOS, INSTITUTO);
+    }
+
+    @Override
+    public List<Instituto> findAll(InstitutoCriteriaDto criteria) {
+        log.trace("Buscando institutos por: {}", criteria);
+        List<String> condiciones = new ArrayList<>();
+        List<Object> parametros = new ArrayList<>();
+        String codigo = sinVacio(criteria.getCodigoInstituto());
+        if (codigo != null) {
+            condiciones.add("LOWER(codigo_instituto) = ?");
+            parametros.add(codigo.toLowerCase(Locale.ROOT));
+        }
+        String tipo = sinVacio(criteria.getTipo());
+        if (tipo != null) {
+            condiciones.add("LOWER(tipo) = ?");
+            parametros.add(tipo.toLowerCase(Locale.ROOT));
+        }
+        rango(condiciones, parametros, "numero_estudiantes", criteria.getMinEstudiantes(), criteria.getMaxEstudiantes());
+        rango(condiciones, parametros, "numero_profesores", criteria.getMinProfesores(), criteria.getMaxProfesores());
+        rango(condiciones, parametros, "anio_fundacion", criteria.getFundadoDesde(), criteria.getFundadoHasta());
+        contiene(condiciones, parametros, "ciudad_busqueda", criteria.getCiudad());
+        contiene(condiciones, parametros, "nombre_busqueda", criteria.getNombre());
+        String sql = condiciones.isEmpty() ? TODOS : SELECT + " WHERE " + String.join(" AND ", condiciones) + " ORDER BY id";
+        return jdbc.query(sql, INSTITUTO, parametros.toArray());
+    }
+
+    @Override
+    public List<Instituto> findAllByCiudad(String ciudad) {
+        return findAll(InstitutoCriteriaDto.builder().ciudad(ciudad).build());
+    }
+
+    @Override
+    public List<Instituto> findAllByNombre(String nombre) {
+        return findAll(InstitutoCriteriaDto.builder().nombre(nombre).build());
+    }
+
+    @Override
+    public List<Instituto> findAllByCiudadAndNombre(String ciudad, String nombre) {
+        return findAll(InstitutoCriteriaDto.builder().ciudad(ciudad).nombre(nombre).build());
+    }
+
+    @Override
+    public List<Instituto> findAllAfter(Long after, int limit, boolean descendente) {
+        log.trace("Buscando {} institutos después del id: {}", limit, after);
+        // Keyset sobre la clave primaria: se sitúa en el cursor con el índice y lee solo limit filas
+        if (after == null) {
+            return jdbc.query(descendente ? ULTIMOS : PRIMEROS, INSTITUTO, limit);
+        }
+        return jdbc.query(descendente ? ANTES : DESPUES, INSTITUTO, after, limit);
+    }
+
+    @Override
+    public List<Instituto> findAllOrderedBy(String campo, boolean descendente, long desde, int limite) {
+        log.trace("Buscando {} institutos ordenados por {} desde {}", limite, campo, desde);
+        String columna = switch (campo) {
+            case "numeroEstudiantes" -> "numero_estudiantes";
+            case "numeroProfesores" -> "numero_profesores";
+            case "anioFundacion" -> "anio_fundacion";
+            default -> throw new IllegalArgumentException("No se puede ordenar por " + campo);
+        };
+        String sql = ORDENADOS.formatted(columna, descendente ? "DESC NULLS FIRST" : "ASC NULLS LAST");
+        return jdbc.query(sql, INSTITUTO, limite, desde);
+    }
+
+    @Override
+    public long count() {
+        return total.get();
+    }
+
+    @Override
+    public Map<String, InstitutoTotales> totalesPorCiudad() {
+        return porCiudad.totales();
+    }
+
+    @Override
+    public Map<String, InstitutoTotales> totalesPorTipo() {
+        return porTipo.totales();
+    }
+
+    @Override
+    public Optional<Instituto> findById(Long id) {
+        log.trace("Buscando institutos por id: {}" , id);
+        return jdbc.query(POR_ID, INSTITUTO, id).stream().findFirst();
+    }
+
+    @Override
+    public Optional<Instituto> findByUuid(UUID uuid) {
+        log.trace("Buscando instituto por uuid: {}" , uuid);
+        return uuid == null ? Optional.empty() : jdbc.query(POR_UUID, INSTITUTO, uuid).stream().findFirst();
+    }
+
+    @Override
+    public boolean existsById(Long id) {
+        log.trace("Comprobando si existe instituto por id: {}" , id);
+        return jdbc.queryForObject(EXISTE, Long.class, id) > 0;
+    }
+
+    @Override
+    public boolean existsByUuid(UUID uuid) {
+        log.trace("Comprobando si existe instituto por uuid: {}" , uuid);
+        return findByUuid(uuid).isPresent();
+    }
+
+    @Override
+    public Instituto save(Instituto instituto) {
+        log.trace("Guardando instituto con id: {}", instituto.getId());
+        escribir(List.of(instituto), List.of());
+        return instituto;
+    }
+
+    @Override
+    public List<Instituto> saveAll(List<Instituto> institutos) {
+        log.trace("Guardando {} institutos", institutos.size());
+        return guardarTodos(institutos);
+    }
+
+    @Override
+    public void deleteById(Long id) {
+        log.trace("Borrando instituto por id: {}", id);
+        escribir(List.of(), List.of(id));
+    }
+
+    @Override
+    public void deleteByUuid(UUID uuid) {
+        log.trace("Borrando instituto por uuid: {}" , uuid);
+        if (uuid == null) {
+            return;
+        }
+        escritura.lock();
+        try {
+            jdbc.query(RESUMEN_POR_UUID, RESUMIDO, uuid).stream().findFirst()
+                    .ifPresent(borrado -> escribir(List.of(), List.of(borrado.getId())));
+        } finally {
+            escritura.unlock();
+        }
+    }
+
+    @Override
+    public void deleteAllById(Collection<Long> ids) {
+        log.trace("Borrando {} institutos", ids.size());
+        escribir(List.of(), ids);
+    }
+
+    @Override
+    public void saveAllAndDeleteAllById(List<Instituto> guardar, Collection<Long> borrar) {
+        log.trace("Guardando {} y borrando {} institutos", guardar.size(), borrar.size());
+        escribir(guardar, borrar);
+    }
+
+    @Override
+    public Long nextId() {
+        log.debug("Obteniendo siguiente id de instituto");
+        return nextIds(1);
+    }
+
+    @Override
+    public Long nextIds(int cantidad) {
+        log.debug("Reservando {} ids de instituto", cantidad);
+        secuencia.lock();
+        try {
+            adelantar();
+            List<Long> ids = jdbc.queryForList(RESERVAR, Long.class, cantidad);
+            reservado = ids.getLast();
+            return ids.getFirst();
+        } finally {
+            secuencia.unlock();
+        }
+    }
+
+    private List<Instituto> guardarTodos(List<Instituto> institutos) {
+        escribir(institutos, List.of());
+        return institutos;
+    }
+
+    // Guarda y después borra en una transacción, con lotes JDBC, y ajusta el contador y los totales con las filas
+    // que había antes; si la transacción falla no se toca nada
+    private void escribir(List<Instituto> guardar, Collection<Long> borrar) {
+        escritura.lock();
+        try {
+            List<Long> ids = new ArrayList<>(guardar.size() + borrar.size());
+            guardar.forEach(instituto -> ids.add(instituto.getId()));
+            ids.addAll(borrar);
+            Map<Long, Instituto> actuales = new HashMap<>();
+            jdbc.query(RESUMEN_POR_IDS, RESUMIDO, (Object) ids.toArray(Long[]::new))
+                    .forEach(fila -> actuales.put(fila.getId(), fila));
+            transaccion.executeWithoutResult(estado -> {
+                if (!guardar.isEmpty()) {
+                    jdbc.batchUpdate(GUARDAR, guardar, lote, InstitutosJdbcRepositoryImpl::parametros);
+                }
+                if (!borrar.isEmpty()) {
+                    jdbc.batchUpdate(BORRAR, borrar, lote, (ps, id) -> ps.setLong(1, id));
+                }
+            });
+            for (Instituto instituto : guardar) {
+                restar(actuales.put(instituto.getId(), instituto));
+                sumar(instituto);
+            }
+            for (Long id : borrar) {
+                restar(actuales.remove(id));
+            }
+        } finally {
+            escritura.unlock();
+        }
+        guardar.stream().mapToLong(Instituto::getId).max().ifPresent(id -> mayorGuardado.accumulateAndGet(id, Math::max));
+    }
+
+    private void sumar(Instituto instituto) {
+        total.incrementAndGet();
+        porCiudad.add(instituto);
+        porTipo.add(instituto);
+    }
+
+    private void restar(Instituto instituto) {
+        if (instituto != null) {
+            total.decrementAndGet();
+            porCiudad.remove(instituto);
+            porTipo.remove(instituto);
+        }
+    }
+
+    // Con el lock de la secuencia cogido: si se ha guardado algún id por delante de ella, la adelantamos para no repetirlo.
+    // Es DDL (hace commit), así que se hace al arrancar y al reservar ids cuando hace falta, nunca al guardar
+    private void adelantar() {
+        long mayor = mayorGuardado.get();
+        if (mayor > reservado) {
+            jdbc.execute("ALTER SEQUENCE institutos_seq RESTART WITH " + (mayor + 1));
+            reservado = mayor;
+        }
+    }
+
+    private static void rango(List<String> condiciones, List<Object> parametros, String columna, Object desde, Object hasta) {
+        if (desde != null) {
+            condiciones.add(columna + " >= ?");
+            parametros.add(desde);
+        }
+        if (hasta != null) {
+            condiciones.add(columna + " <= ?");
+            parametros.add(hasta);
+        }
+    }
+
+    // "Contiene" sobre la clave normalizada; los comodines de LIKE que traiga la consulta se escapan
+    private static void contiene(List<String> condiciones, List<Object> parametros, String columna, String texto) {
+        String buscado = ClaveBusqueda.normalizar(sinVacio(texto));
+        if (buscado != null) {
+            condiciones.add(columna + " LIKE ? ESCAPE '\\'");
+            parametros.add("%" + buscado.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%");
+        }
+    }
+
+    private static String sinVacio(String texto) {
+        return texto == null || texto.isBlank() ? null : texto;
+    }
+
+    // Las claves de búsqueda se calculan siempre a partir del nombre y la ciudad que se guardan
+    private static void parametros(PreparedStatement ps, Instituto instituto) throws SQLException {
+        ps.setLong(1, instituto.getId());
+        ps.setString(2, instituto.getNombre());
+        ps.setString(3, ClaveBusqueda.normalizar(instituto.getNombre()));
+        ps.setString(4, instituto.getCiudad());
+        ps.setString(5, ClaveBusqueda.normalizar(instituto.getCiudad()));
+        ps.setString(6, instituto.getDireccion());
+        ps.setString(7, instituto.getTelefono());
+        ps.setString(8, instituto.getEmail());
+        ps.setObject(9, instituto.getNumeroEstudiantes());
+        ps.setObject(10, instituto.getNumeroProfesores());
+        ps.setString(11, instituto.getTipo());
+        ps.setObject(12, instituto.getAnioFundacion());
+        ps.setString(13, instituto.getCodigoInstituto());
+        ps.setObject(14, instituto.getCreatedAt());
+        ps.setObject(15, instituto.getUpdateAt());
+        ps.setObject(16, instituto.getUuid());
+        ps.setObject(17, instituto.getIsDeleted());
+    }
+
+    private static Instituto resumen(ResultSet fila, int numero) throws SQLException {
+        return Instituto.builder()
+                .id(fila.getLong("id"))
+                .ciudad(fila.getString("ciudad"))
+                .tipo(fila.getString("tipo"))
+                .numeroEstudiantes(fila.getObject("numero_estudiantes", Integer.class))
+                .numeroProfesores(fila.getObject("numero_profesores", Integer.class))
+                .build();
+    }
+
+    private static Instituto leer(ResultSet fila, int numero) throws SQLException {
+        return Instituto.builder()
+                .id(fila.getLong("id"))
+                .nombre(fila.getString("nombre"))
+                .nombreBusqueda(fila.getString("nombre_busqueda"))
+                .ciudad(fila.getString("ciudad"))
+                .ciudadBusqueda(fila.getString("ciudad_busqueda"))
+                .direccion(fila.getString("direccion"))
+                .telefono(fila.getString("telefono"))
+                .email(fila.getString("email"))
+                .numeroEstudiantes(fila.getObject("numero_estudiantes", Integer.class))
+                .numeroProfesores(fila.getObject("numero_profesores", Integer.class))
+                .tipo(fila.getString("tipo"))
+                .anioFundacion(fila.getObject("anio_fundacion", LocalDate.class))
+                .codigoInstituto(fila.getString("codigo_instituto"))
+                .createdAt(fila.getObject("created_at", LocalDateTime.class))
+                .updateAt(fila.getObject("update_at", LocalDateTime.class))
+                .uuid(fila.getObject("uuid", UUID.class))
+                .isDeleted(fila.getObject("is_deleted", Boolean.class))
+                .build();
+    }
+}
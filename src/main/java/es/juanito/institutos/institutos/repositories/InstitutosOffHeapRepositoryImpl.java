@@ -0,0 +1,455 @@
+package es.juanito.institutos.institutos.repositories;
+
+import es.juanito.institutos.institutos.dto.InstitutoCriteriaDto;
+import es.juanito.institutos.institutos.models.Instituto;
+import es.juanito.institutos.institutos.models.InstitutoTotales;
+import es.juanito.institutos.institutos.repositories.indexes.AggregateIndex;
+import es.juanito.institutos.institutos.repositories.offheap.InstitutoSlabs;
+import es.juanito.institutos.institutos.repositories.offheap.InstitutoView;
+import es.juanito.institutos.institutos.utils.ClaveBusqueda;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * Repositorio de institutos guardados fuera del heap (InstitutoSlabs), para catálogos de millones de institutos
+ * en los que recorrer sus objetos hace que las pausas del GC dominen la latencia.
+ * Solo existe como bean si institutos.repository.backend=offheap y, como memory, vuelve a los datos de partida
+ * en cada arranque. Se busca por id y uuid con los índices nativos; el resto de búsquedas recorren las filas con
+ * una vista reutilizable (InstitutoView) que compara números, fechas y textos sin crear objetos, y solo los
+ * institutos que se devuelven pasan al heap. Los totales por ciudad y tipo se mantienen como en memory.
+ * La memoria nativa se libera al compactar o al cerrar, así que las lecturas van con un lock de lectura
+ * y las escrituras con el de escritura.
+ */
+@Slf4j
+@Repository
+@ConditionalOnProperty(name = "institutos.repository.backend", havingValue = "offheap")
+@Timed("institutos.repository")
+public class InstitutosOffHeapRepositoryImpl implements InstitutosRepository, MeterBinder, AutoCloseable {
+    private final InstitutoSlabs slabs = new InstitutoSlabs();
+
+    // Las lecturas van directamente a la memoria nativa, y una escritura puede compactar los textos o el orden por id
+    // (close libera todo) y dejar a un recorrido leyendo memoria ya liberada: las lecturas se excluyen con las
+    // escrituras pero no entre sí
+    private final ReadWriteLock bloqueo = new ReentrantReadWriteLock();
+    private final Lock lectura = bloqueo.readLock();
+    private final Lock escritura = bloqueo.writeLock();
+
+    // Secuencia de ids, se adelanta al mayor id guardado
+    private final AtomicLong secuencia = new AtomicLong();
+
+    // Totales por ciudad y por tipo para las estadísticas, en el heap pero uno por grupo
+    private final AggregateIndex porCiudad = new AggregateIndex(Instituto::getCiudad);
+    private final AggregateIndex porTipo = new AggregateIndex(Instituto::getTipo);
+
+    public InstitutosOffHeapRepositoryImpl() {
+        // Directamente y no con saveAll, que se puede sobrescribir y vería el objeto a medio construir
+        for (Instituto instituto : DatosDePartida.institutos()) {
+            guardar(instituto);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("institutos.repository.size", this, InstitutosOffHeapRepositoryImpl::count)
+                .description("Número de institutos guardados")
+                .register(registry);
+        Gauge.builder("institutos.repository.offheap.bytes", this, InstitutosOffHeapRepositoryImpl::memoriaNativa)
+                .description("Memoria nativa reservada para filas, textos e índices")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    @Override
+    public List<Instituto> findAll() {
+        log.trace("Buscando institutos");
+        return buscar(null, false, Integer.MAX_VALUE, vista -> true);
+    }
+
+    @Override
+    public List<Instituto> findAll(InstitutoCriteriaDto criteria) {
+        log.trace("Buscando institutos por: {}", criteria);
+        return buscar(null, false, Integer.MAX_VALUE, filtro(criteria));
+    }
+
+    @Override
+    public List<Instituto> findAllByCiudad(String ciudad) {
+        return findAll(InstitutoCriteriaDto.builder().ciudad(ciudad).build());
+    }
+
+    @Override
+    public List<Instituto> findAllByNombre(String nombre) {
+        return findAll(InstitutoCriteriaDto.builder().nombre(nombre).build());
+    }
+
+    @Override
+    public List<Instituto> findAllByCiudadAndNombre(String ciudad, String nombre) {
+        return findAll(InstitutoCriteriaDto.builder().ciudad(ciudad).nombre(nombre).build());
+    }
+
+    @Override
+    public List<Instituto> findAllAfter(Long after, int limit, boolean descendente) {
+        log.trace("Buscando {} institutos después del id: {}", limit, after);
+        // Búsqueda binaria en el orden por id para situarse en el cursor y después solo limit filas
+        return buscar(after, descendente, limit, vista -> true);
+    }
+
+    @Override
+    public List<Instituto> findAllOrderedBy(String campo, boolean descendente, long desde, int limite) {
+        log.trace("Buscando {} institutos ordenados por {} desde {}", limite, campo, desde);
+        // Sin valor, Long.MAX_VALUE: al final en ascendente y al principio en descendente
+        ToLongFunction<InstitutoView> clave = switch (campo) {
+            case "numeroEstudiantes" -> vista -> vista.tieneEstudiantes() ? vista.numeroEstudiantes() : Long.MAX_VALUE;
+            case "numeroProfesores" -> vista -> vista.tieneProfesores() ? vista.numeroProfesores() : Long.MAX_VALUE;
+            case "anioFundacion" -> vista -> vista.tieneFundacion() ? vista.fundacionEpochDay() : Long.MAX_VALUE;
+            default -> throw new IllegalArgumentException("No se puede ordenar por " + campo);
+        };
+        Comparator<long[]> porClave = Comparator.comparingLong(par -> par[0]);
+        Comparator<long[]> orden = (descendente ? porClave.reversed() : porClave).thenComparingLong(par -> par[1]);
+        lectura.lock();
+        try {
+            long hasta = Math.min(desde + limite, slabs.size());
+            if (desde >= hasta) {
+                return List.of();
+            }
+            // Sin índices ordenados: un recorrido con un montículo de los hasta primeros (clave, id), sin ordenar todo
+            PriorityQueue<long[]> primeros = new PriorityQueue<>((int) hasta + 1, orden.reversed());
+            slabs.recorrer(null, false, slabs.vista(), vista -> {
+                long[] par = {clave.applyAsLong(vista), vista.id()};
+                if (primeros.size() < hasta) {
+                    primeros.add(par);
+                } else if (orden.compare(par, primeros.peek()) < 0) {
+                    primeros.poll();
+                    primeros.add(par);
+                }
+                return true;
+            });
+            List<long[]> ordenados = new ArrayList<>(primeros);
+            ordenados.sort(orden);
+            List<Instituto> pagina = new ArrayList<>((int) (hasta - desde));
+            for (long[] par : ordenados.subList((int) desde, ordenados.size())) {
+                pagina.add(leer(slabs.fila(par[1])));
+            }
+            return pagina;
+        } finally {
+            lectura.unlock();
+        }
+    }
+
+    @Override
+    public long count() {
+        lectura.lock();
+        try {
+            return slabs.size();
+        } finally {
+            lectura.unlock();
+        }
+    }
+
+    @Override
+    public Map<String, InstitutoTotales> totalesPorCiudad() {
+        return porCiudad.totales();
+    }
+
+    @Override
+    public Map<String, InstitutoTotales> totalesPorTipo() {
+        return porTipo.totales();
+    }
+
+    @Override
+    public Optional<Instituto> findById(Long id) {
+        log.trace("Buscando institutos por id: {}" , id);
+        lectura.lock();
+        try {
+            return Optional.ofNullable(leer(slabs.fila(id)));
+        } finally {
+            lectura.unlock();
+        }
+    }
+
+    @Override
+    public Optional<Instituto> findByUuid(UUID uuid) {
+        log.trace("Buscando instituto por uuid: {}" , uuid);
+        if (uuid == null) {
+            return Optional.empty();
+        }
+        lectura.lock();
+        try {
+            return Optional.ofNullable(leer(slabs.fila(uuid)));
+        } finally {
+            lectura.unlock();
+        }
+    }
+
+    @Override
+    public boolean existsById(Long id) {
+        log.trace("Comprobando si existe instituto por id: {}" , id);
+        lectura.lock();
+        try {
+            return slabs.fila(id) >= 0;
+        } finally {
+            lectura.unlock();
+        }
+    }
+
+    @Override
+    public boolean existsByUuid(UUID uuid) {
+        log.trace("Comprobando si existe instituto por uuid: {}" , uuid);
+        if (uuid == null) {
+            return false;
+        }
+        lectura.lock();
+        try {
+            return slabs.fila(uuid) >= 0;
+        } finally {
+            lectura.unlock();
+        }
+    }
+
+    @Override
+    public Instituto save(Instituto instituto) {
+        log.trace("Guardando instituto con id: {}", instituto.getId());
+        escritura.lock();
+        try {
+            guardar(instituto);
+        } finally {
+            escritura.unlock();
+        }
+        return instituto;
+    }
+
+    @Override
+    public List<Instituto> saveAll(List<Instituto> lote) {
+        log.trace("Guardando {} institutos", lote.size());
+        escritura.lock();
+        try {
+            lote.forEach(this::guardar);
+        } finally {
+            escritura.unlock();
+        }
+        return lote;
+    }
+
+    @Override
+    public void deleteById(Long id) {
+        log.trace("Borrando instituto por id: {}", id);
+        escritura.lock();
+        try {
+            borrar(slabs.fila(id));
+        } finally {
+            escritura.unlock();
+        }
+    }
+
+    @Override
+    public void deleteByUuid(UUID uuid) {
+        log.trace("Borrando instituto por uuid: {}" , uuid);
+        if (uuid == null) {
+            return;
+        }
+        escritura.lock();
+        try {
+            borrar(slabs.fila(uuid));
+        } finally {
+            escritura.unlock();
+        }
+    }
+
+    @Override
+    public void deleteAllById(Collection<Long> ids) {
+        log.trace("Borrando {} institutos", ids.size());
+        escritura.lock();
+        try {
+            ids.forEach(id -> borrar(slabs.fila(id)));
+        } finally {
+            escritura.unlock();
+        }
+    }
+
+    @Override
+    public void saveAllAndDeleteAllById(List<Instituto> guardar, Collection<Long> borrar) {
+        log.trace("Guardando {} y borrando {} institutos", guardar.size(), borrar.size());
+        escritura.lock();
+        try {
+            guardar.forEach(this::guardar);
+            borrar.forEach(id -> borrar(slabs.fila(id)));
+        } finally {
+            escritura.unlock();
+        }
+    }
+
+    @Override
+    public Long nextId() {
+        log.debug("Obteniendo siguiente id de instituto");
+        return secuencia.incrementAndGet();
+    }
+
+    @Override
+    public Long nextIds(int cantidad) {
+        log.debug("Reservando {} ids de instituto", cantidad);
+        return secuencia.getAndAdd(cantidad) + 1;
+    }
+
+    // Devuelve la memoria nativa; el repositorio ya no se puede usar
+    @PreDestroy
+    @Override
+    public void close() {
+        escritura.lock();
+        try {
+            slabs.close();
+        } finally {
+            escritura.unlock();
+        }
+    }
+
+    private long memoriaNativa() {
+        lectura.lock();
+        try {
+            return slabs.reservedBytes();
+        } finally {
+            lectura.unlock();
+        }
+    }
+
+    // Hasta limite institutos que cumplen el filtro, en orden de id a partir del cursor
+    private List<Instituto> buscar(Long desde, boolean descendente, int limite, Predicate<InstitutoView> filtro) {
+        List<Instituto> encontrados = new ArrayList<>();
+        if (limite <= 0) {
+            return encontrados;
+        }
+        lectura.lock();
+        try {
+            slabs.recorrer(desde, descendente, slabs.vista(), vista -> {
+                if (filtro.test(vista)) {
+                    encontrados.add(vista.toInstituto());
+                }
+                return encontrados.size() < limite;
+            });
+        } finally {
+            lectura.unlock();
+        }
+        return encontrados;
+    }
+
+    private Instituto leer(int fila) {
+        return fila < 0 ? null : slabs.vista().mover(fila).toInstituto();
+    }
+
+    // Solo las columnas que necesitan los totales, sin pasar la fila entera al heap
+    private Instituto totales(int fila) {
+        if (fila < 0) {
+            return null;
+        }
+        InstitutoView vista = slabs.vista().mover(fila);
+        return Instituto.builder()
+                .id(vista.id())
+                .ciudad(vista.texto(InstitutoView.CIUDAD))
+                .tipo(vista.texto(InstitutoView.TIPO))
+                .numeroEstudiantes(vista.tieneEstudiantes() ? vista.numeroEstudiantes() : null)
+                .numeroProfesores(vista.tieneProfesores() ? vista.numeroProfesores() : null)
+                .build();
+    }
+
+    // Escrituras, siempre con el lock de escritura cogido
+    private void guardar(Instituto instituto) {
+        clavesBusqueda(instituto);
+        Instituto anterior = totales(slabs.fila(instituto.getId()));
+        slabs.put(instituto);
+        if (anterior != null) {
+            porCiudad.remove(anterior);
+            porTipo.remove(anterior);
+        }
+        porCiudad.add(instituto);
+        porTipo.add(instituto);
+        // Si se guarda con un id asignado fuera de la secuencia, la adelantamos para no repetirlo
+        secuencia.accumulateAndGet(instituto.getId(), Math::max);
+    }
+
+    private void borrar(int fila) {
+        Instituto borrado = totales(fila);
+        if (borrado != null) {
+            slabs.remove(borrado.getId());
+            porCiudad.remove(borrado);
+            porTipo.remove(borrado);
+        }
+    }
+
+    // Los filtros leen las columnas de la fila; los más baratos primero y el primero que falla corta la evaluación
+    private static Predicate<InstitutoView> filtro(InstitutoCriteriaDto criteria) {
+        String codigo = sinVacio(criteria.getCodigoInstituto());
+        String tipo = sinVacio(criteria.getTipo());
+        Integer minEstudiantes = criteria.getMinEstudiantes();
+        Integer maxEstudiantes = criteria.getMaxEstudiantes();
+        Integer minProfesores = criteria.getMinProfesores();
+        Integer maxProfesores = criteria.getMaxProfesores();
+        LocalDate desde = criteria.getFundadoDesde();
+        LocalDate hasta = criteria.getFundadoHasta();
+        byte[] ciudad = utf8(ClaveBusqueda.normalizar(sinVacio(criteria.getCiudad())));
+        byte[] nombre = utf8(ClaveBusqueda.normalizar(sinVacio(criteria.getNombre())));
+
+        List<Predicate<InstitutoView>> filtros = new ArrayList<>();
+        if (minEstudiantes != null) {
+            filtros.add(vista -> vista.tieneEstudiantes() && vista.numeroEstudiantes() >= minEstudiantes);
+        }
+        if (maxEstudiantes != null) {
+            filtros.add(vista -> vista.tieneEstudiantes() && vista.numeroEstudiantes() <= maxEstudiantes);
+        }
+        if (minProfesores != null) {
+            filtros.add(vista -> vista.tieneProfesores() && vista.numeroProfesores() >= minProfesores);
+        }
+        if (maxProfesores != null) {
+            filtros.add(vista -> vista.tieneProfesores() && vista.numeroProfesores() <= maxProfesores);
+        }
+        if (desde != null) {
+            long dia = desde.toEpochDay();
+            filtros.add(vista -> vista.tieneFundacion() && vista.fundacionEpochDay() >= dia);
+        }
+        if (hasta != null) {
+            long dia = hasta.toEpochDay();
+            filtros.add(vista -> vista.tieneFundacion() && vista.fundacionEpochDay() <= dia);
+        }
+        if (ciudad != null) {
+            filtros.add(vista -> vista.contiene(InstitutoView.CIUDAD_BUSQUEDA, ciudad));
+        }
+        if (nombre != null) {
+            filtros.add(vista -> vista.contiene(InstitutoView.NOMBRE_BUSQUEDA, nombre));
+        }
+        // Sin distinguir mayúsculas hace falta el texto, así que van los últimos
+        if (tipo != null) {
+            filtros.add(vista -> tipo.equalsIgnoreCase(vista.texto(InstitutoView.TIPO)));
+        }
+        if (codigo != null) {
+            filtros.add(vista -> codigo.equalsIgnoreCase(vista.texto(InstitutoView.CODIGO)));
+        }
+        return filtros.stream().reduce(Predicate::and).orElse(vista -> true);
+    }
+
+    private static String sinVacio(String texto) {
+        return texto == null || texto.isBlank() ? null : texto;
+    }
+
+    private static byte[] utf8(String texto) {
+        return texto == null ? null : texto.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Siempre se recalculan: las que traiga el instituto pueden ser de un nombre o una ciudad que ya ha cambiado
+    private static void clavesBusqueda(Instituto instituto) {
+        instituto.setNombreBusqueda(ClaveBusqueda.normalizar(instituto.getNombre()));
+        instituto.setCiudadBusqueda(ClaveBusqueda.normalizar(instituto.getCiudad()));
+    }
+}
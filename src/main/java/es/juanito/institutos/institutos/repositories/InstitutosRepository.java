@@ -1,21 +1,42 @@
 package es.juanito.institutos.institutos.repositories;
 
+import es.juanito.institutos.institutos.dto.InstitutoCriteriaDto;
 import es.juanito.institutos.institutos.dto.InstitutoResponseDto;
 import es.juanito.institutos.institutos.models.Instituto;
+import es.juanito.institutos.institutos.models.InstitutoTotales;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 
 public interface InstitutosRepository {
     List<Instituto> findAll();
 
+    // Institutos que cumplen todos los filtros indicados, ordenados por id
+    List<Instituto> findAll(InstitutoCriteriaDto criteria);
+
     List<Instituto> findAllByCiudad(String ciudad);
 
     List<Instituto> findAllByNombre(String nombre);
 
     List<Instituto> findAllByCiudadAndNombre(String ciudad, String nombre);
 
+    // Keyset: hasta limit institutos con id posterior (o anterior si es descendente) a after, null para empezar
+    List<Instituto> findAllAfter(Long after, int limit, boolean descendente);
+
+    // Página de todo el catálogo ordenada por numeroEstudiantes, numeroProfesores o anioFundacion y después por id,
+    // sin valor al final (al principio si es descendente); hasta limite institutos a partir de la posición desde
+    List<Instituto> findAllOrderedBy(String campo, boolean descendente, long desde, int limite);
+
+    long count();
+
+    // Totales por ciudad y por tipo, se mantienen en cada escritura y no recorren el catálogo
+    Map<String, InstitutoTotales> totalesPorCiudad();
+
+    Map<String, InstitutoTotales> totalesPorTipo();
+
     Optional<Instituto> findById(Long id);
 
     Optional<Instituto> findByUuid(UUID uuid);
@@ -26,10 +47,21 @@ public interface InstitutosRepository {
 
     Instituto save(Instituto instituto);
 
+    // Guarda todos los institutos en una sola sección crítica
+    List<Instituto> saveAll(List<Instituto> institutos);
+
     void deleteById(Long id);
 
     void deleteByUuid(UUID uuid);
 
+    void deleteAllById(Collection<Long> ids);
+
+    // Guarda y después borra en una sola sección crítica y, con persistencia, en un solo registro del log
+    void saveAllAndDeleteAllById(List<Instituto> guardar, Collection<Long> borrar);
+
     Long nextId();
 
+    // Reserva cantidad ids consecutivos y devuelve el primero
+    Long nextIds(int cantidad);
+
 }
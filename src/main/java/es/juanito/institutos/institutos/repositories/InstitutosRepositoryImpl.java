@@ -1,139 +1,816 @@
 package es.juanito.institutos.institutos.repositories;
 
+import es.juanito.institutos.institutos.dto.InstitutoCriteriaDto;
 import es.juanito.institutos.institutos.models.Instituto;
+import es.juanito.institutos.institutos.models.InstitutoTotales;
+import es.juanito.institutos.institutos.repositories.indexes.AggregateIndex;
+import es.juanito.institutos.institutos.repositories.indexes.HashIndex;
+import es.juanito.institutos.institutos.repositories.indexes.RangeIndex;
+import es.juanito.institutos.institutos.repositories.indexes.TrigramIndex;
+import es.juanito.institutos.institutos.repositories.persistence.InstitutosPersistence;
+import es.juanito.institutos.institutos.repositories.persistence.MappedSnapshot;
+import es.juanito.institutos.institutos.utils.ClaveBusqueda;
+import es.juanito.institutos.institutos.utils.EscaneoParalelo;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.stereotype.Repository;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalDate;
-import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Stream;
 
 
+/**
+ * Repositorio en memoria de institutos.
+ * Usa un ConcurrentSkipListMap ordenado por id: las lecturas no bloquean y recorren una vista
+ * débilmente consistente, por lo que nunca lanzan ConcurrentModificationException. Como los ids
+ * son crecientes, el orden por id coincide con el orden de inserción que devuelve findAll.
+ * Las escrituras se reparten por id entre franjas de locks: dos escrituras del mismo id se serializan para
+ * actualizar a la vez el mapa y los índices secundarios, y las de ids distintos van en paralelo (los índices
+ * aceptan altas y bajas concurrentes). Las operaciones sobre todo el repositorio (recuperar, cargar la
+ * instantánea o rotar el log) cogen un lock exclusivo que espera a que terminen las escrituras en curso.
+ * Las búsquedas con filtros se planifican: se parte del índice más selectivo disponible y el resto
+ * de filtros se comprueban sobre esos candidatos, de más barato a más caro.
+ * Publica como métricas el número de institutos y el tamaño de cada índice.
+ * Con InstitutosPersistence cada escritura se anota además en el log antes de aplicarse, y save/delete
+ * no vuelven hasta que está en disco; al arrancar se recupera lo guardado en lugar de los datos de partida.
+ * La instantánea recuperada se queda mapeada: findById, findByUuid y count la consultan directamente y
+ * solo se carga entera en el mapa y los índices cuando hace falta (búsquedas, listados o escrituras).
+ */
 @Slf4j
 @Repository
-public class InstitutosRepositoryImpl implements InstitutosRepository {
-    private final Map<Long, Instituto> institutos = new LinkedHashMap<>(
-            Map.of(
-                1L, Instituto.builder()
-                            .id(1L)
-                            .nombre("Gomez Moreno")
-                            .direccion("Calle albaida")
-                            .telefono("777-88-99-00")
-                            .email("Pepitolopez@Email.com")
-                            .numeroEstudiantes(555)
-                            .numeroProfesores(20)
-                            .tipo("publico")
-                            .anioFundacion(LocalDate.of(1983,12,19))
-                            .codigoInstituto("4567-XXX")
-                            .createdAt(LocalDateTime.now())
-                            .updateAt(LocalDateTime.now())
-                            .uuid(UUID.randomUUID())
-                            .build(),
-                2L, Instituto.builder()
-                            .id(2L)
-                            .nombre("IES Francisco de Quevedo")
-                            .direccion("Avenida de los poblados")
-                            .telefono("888-99-00-11")
-                            .email("ManolitaGomez@Email.com")
-                            .numeroEstudiantes(1250)
-                            .numeroProfesores(60)
-                            .tipo("privado")
-                            .anioFundacion(LocalDate.of(1956,6,9))
-                            .codigoInstituto("6789-ZZZ")
-                            .createdAt(LocalDateTime.now())
-                            .updateAt(LocalDateTime.now())
-                            .uuid(UUID.randomUUID())
-                            .build()
-            ));
+// Almacenamientos memory y file (este último con InstitutosPersistence)
+@ConditionalOnExpression("'${institutos.repository.backend:memory}' matches 'memory|file'")
+@Timed("institutos.repository")
+public class InstitutosRepositoryImpl implements InstitutosRepository, MeterBinder {
+    private final ConcurrentNavigableMap<Long, Instituto> institutos = new ConcurrentSkipListMap<>();
+
+    // Secuencia de ids, se adelanta al mayor id de los datos de partida
+    private final AtomicLong secuencia = new AtomicLong();
+
+    // Número de institutos, ConcurrentSkipListMap.size() recorre todo el mapa
+    private final AtomicLong total = new AtomicLong();
+
+    // Índice secundario uuid -> id
+    private final ConcurrentMap<UUID, Long> uuids = new ConcurrentHashMap<>();
+
+    // Índices de trigramas sobre las claves de búsqueda de ciudad y nombre para las búsquedas "contiene"
+    private final TrigramIndex ciudades = new TrigramIndex();
+    private final TrigramIndex nombres = new TrigramIndex();
+
+    // Índices de igualdad sobre tipo y código en minúsculas
+    private final HashIndex<String> tipos = new HashIndex<>();
+    private final HashIndex<String> codigos = new HashIndex<>();
+
+    // Índices ordenados para las búsquedas por rango
+    private final RangeIndex<Integer> estudiantes = new RangeIndex<>();
+    private final RangeIndex<Integer> profesores = new RangeIndex<>();
+    private final RangeIndex<LocalDate> fundaciones = new RangeIndex<>();
+
+    // Totales por ciudad y por tipo para las estadísticas
+    private final AggregateIndex porCiudad = new AggregateIndex(Instituto::getCiudad);
+    private final AggregateIndex porTipo = new AggregateIndex(Instituto::getTipo);
+
+    // Valores con los que se indexó cada instituto, para desindexarlo con ellos y no con los del objeto guardado,
+    // que quien lo leyó puede haber modificado antes de volver a guardarlo. Cada id solo se toca con su franja cogida
+    private final Map<Long, Indexado> indexados = new ConcurrentHashMap<>();
+
+    private record Indexado(UUID uuid, String ciudad, String tipo, String codigo, String nombreBusqueda,
+                            String ciudadBusqueda, Integer estudiantes, Integer profesores, LocalDate fundacion) {
+        static Indexado de(Instituto instituto) {
+            return new Indexado(instituto.getUuid(), instituto.getCiudad(), instituto.getTipo(),
+                    instituto.getCodigoInstituto(), instituto.getNombreBusqueda(), instituto.getCiudadBusqueda(),
+                    instituto.getNumeroEstudiantes(), instituto.getNumeroProfesores(), instituto.getAnioFundacion());
+        }
+
+        // Lo que necesitan los totales para restarlo de su grupo
+        Instituto totales() {
+            return Instituto.builder().ciudad(ciudad).tipo(tipo)
+                    .numeroEstudiantes(estudiantes).numeroProfesores(profesores).build();
+        }
+    }
+
+    // Recorridos en paralelo, desactivados salvo que se configure el bean
+    private EscaneoParalelo escaneoParalelo = EscaneoParalelo.DESACTIVADO;
+
+    // Log de escrituras e instantáneas, null si solo se trabaja en memoria
+    private InstitutosPersistence persistencia;
+
+    // Instantánea mapeada que todavía no se ha cargado, con los ids que el log borró después de hacerla
+    // Mientras exista, el mapa solo tiene lo que vino del log detrás de ella
+    private record Perezosa(MappedSnapshot instantanea, Set<Long> borrados) {
+    }
+
+    private volatile Perezosa perezosa;
+
+    // Con tan pocos candidatos ya no compensa consultar más índices
+    private static final int CANDIDATOS_SUFICIENTES = 32;
+
+    // Locks de escritura, las lecturas no los necesitan
+    // ReentrantLock y no synchronized: un hilo virtual que espera aquí no bloquea el hilo del sistema que lo ejecuta
+    // Cada escritura coge la parte compartida de global y la franja de cada id que toca; recuperar, cargar la
+    // instantánea y rotar el log cogen la parte exclusiva
+    private static final int FRANJAS = 64;
+    private final ReadWriteLock global = new ReentrantReadWriteLock();
+    private final Lock[] franjas = new Lock[FRANJAS];
+
+    public InstitutosRepositoryImpl() {
+        for (int i = 0; i < FRANJAS; i++) {
+            franjas[i] = new ReentrantLock();
+        }
+        DatosDePartida.institutos().forEach(instituto -> institutos.put(instituto.getId(), instituto));
+        institutos.values().forEach(instituto -> {
+            clavesBusqueda(instituto);
+            indexar(instituto);
+        });
+        total.set(institutos.size());
+        secuencia.set(institutos.lastKey());
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("institutos.repository.size", total, AtomicLong::get)
+                .description("Número de institutos guardados")
+                .register(registry);
+        indice(registry, "uuid", uuids, Map::size);
+        indice(registry, "nombre", nombres, TrigramIndex::size);
+        indice(registry, "ciudad", ciudades, TrigramIndex::size);
+        indice(registry, "tipo", tipos, HashIndex::size);
+        indice(registry, "codigo", codigos, HashIndex::size);
+        indice(registry, "numeroEstudiantes", estudiantes, RangeIndex::size);
+        indice(registry, "numeroProfesores", profesores, RangeIndex::size);
+        indice(registry, "anioFundacion", fundaciones, RangeIndex::size);
+        indice(registry, "stats.ciudad", porCiudad, AggregateIndex::size);
+        indice(registry, "stats.tipo", porTipo, AggregateIndex::size);
+    }
+
+    // Entradas de un índice: uuids distintos, trigramas, valores o grupos según el tipo de índice
+    private static <T> void indice(MeterRegistry registry, String nombre, T indice, ToDoubleFunction<T> tamano) {
+        Gauge.builder("institutos.repository.index.size", indice, tamano)
+                .description("Entradas de cada índice secundario")
+                .tag("index", nombre)
+                .register(registry);
+    }
+
+    @Autowired(required = false)
+    public void setEscaneoParalelo(EscaneoParalelo escaneoParalelo) {
+        this.escaneoParalelo = escaneoParalelo;
+    }
+
+    /**
+     * Activa la persistencia: recupera lo guardado (que sustituye a los datos de partida) y a partir de aquí
+     * anota cada escritura en el log
+     */
+    @Autowired(required = false)
+    public void setPersistencia(InstitutosPersistence persistencia) {
+        global.writeLock().lock();
+        try {
+            if (persistencia.hayDatos()) {
+                List.copyOf(institutos.keySet()).forEach(this::borrar);
+                // Primero el estado final de cada id y después se indexa todo de una vez
+                Map<Long, Instituto> recuperados = new HashMap<>();
+                Set<Long> borrados = new HashSet<>();
+                var recuperacion = persistencia.recuperar(instituto -> {
+                    recuperados.put(instituto.getId(), instituto);
+                    borrados.remove(instituto.getId());
+                }, id -> {
+                    recuperados.remove(id);
+                    borrados.add(id);
+                    // Un id borrado tampoco se puede volver a dar
+                    secuencia.accumulateAndGet(id, Math::max);
+                });
+                if (recuperacion.instantanea() == null) {
+                    cargar(recuperados.values());
+                } else {
+                    aplazar(recuperacion.instantanea(), recuperados.values(), borrados);
+                }
+                secuencia.accumulateAndGet(recuperacion.secuencia(), Math::max);
+            }
+            // La instantánea siguiente necesita todos los institutos, así que recorrerlos carga la mapeada
+            persistencia.iniciar(global.writeLock(), () -> {
+                cargarInstantanea();
+                return institutos.values().iterator();
+            }, secuencia::get);
+            this.persistencia = persistencia;
+            if (perezosa != null && persistencia.precarga()) {
+                Thread.ofPlatform().daemon().name("institutos-precarga").start(this::cargarInstantanea);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se han podido recuperar los institutos guardados", e);
+        } finally {
+            global.writeLock().unlock();
+        }
+    }
 
     @Override
     public List<Instituto> findAll() {
-        log.info("Buscando institutos");
+        log.trace("Buscando institutos");
+        cargarInstantanea();
         return institutos.values().stream()
                 .toList();
     }
 
+    @Override
+    public List<Instituto> findAll(InstitutoCriteriaDto criteria) {
+        log.trace("Buscando institutos por: {}", criteria);
+        cargarInstantanea();
+        var plan = planificar(criteria);
+        // Los candidatos de un índice no vienen ordenados, se ordenan por id como findAll
+        var institutosCandidatos = plan.candidatos() == null ? institutos.values().stream()
+                : plan.candidatos().stream().sorted().map(institutos::get).filter(Objects::nonNull);
+        var encontrados = institutosCandidatos.filter(plan.filtro());
+        // Si hay que recorrer muchos, el mapa ordenado se parte por rangos de ids entre los hilos del fork-join
+        long recorridos = plan.candidatos() == null ? total.get() : plan.candidatos().size();
+        return escaneoParalelo.compensa(recorridos) ? escaneoParalelo.toList(encontrados) : encontrados.toList();
+    }
+
     @Override
     public List<Instituto> findAllByCiudad(String ciudad) {
-        log.info("Buscando institutos por ciudad: {}" , ciudad);
-        return institutos.values().stream()
-                .filter(instituto -> instituto.getCiudad().toLowerCase().contains(ciudad.toLowerCase()))
-                .toList();
+        return findAll(InstitutoCriteriaDto.builder().ciudad(ciudad).build());
     }
 
     @Override
     public List<Instituto> findAllByNombre(String nombre) {
-        log.info("Buscando instiutos por nombre: {}" , nombre);
-        return institutos.values().stream()
-                .filter(instituto -> instituto.getNombre().toLowerCase().contains(nombre.toLowerCase()))
-                .toList();
+        return findAll(InstitutoCriteriaDto.builder().nombre(nombre).build());
     }
 
     @Override
     public List<Instituto> findAllByCiudadAndNombre(String ciudad, String nombre) {
-        log.info("Buscando institutos por ciudad: {} y nombre: {} ", ciudad, nombre);
-        return institutos.values().stream()
-                .filter(instituto -> instituto.getCiudad().toLowerCase().contains(ciudad.toLowerCase()))
-                .filter(instituto -> instituto.getNombre().toLowerCase().contains(nombre.toLowerCase()))
+        return findAll(InstitutoCriteriaDto.builder().ciudad(ciudad).nombre(nombre).build());
+    }
+
+    @Override
+    public List<Instituto> findAllAfter(Long after, int limit, boolean descendente) {
+        log.trace("Buscando {} institutos después del id: {}", limit, after);
+        cargarInstantanea();
+        // O(log n) para situarse en el cursor y después solo se recorren los limit siguientes
+        ConcurrentNavigableMap<Long, Instituto> desde;
+        if (descendente) {
+            desde = (after == null ? institutos : institutos.headMap(after, false)).descendingMap();
+        } else {
+            desde = after == null ? institutos : institutos.tailMap(after, false);
+        }
+        return desde.values().stream()
+                .limit(limit)
                 .toList();
     }
 
+    @Override
+    public List<Instituto> findAllOrderedBy(String campo, boolean descendente, long desde, int limite) {
+        log.trace("Buscando {} institutos ordenados por {} desde {}", limite, campo, desde);
+        cargarInstantanea();
+        return switch (campo) {
+            case "numeroEstudiantes" -> ordenados(estudiantes, Instituto::getNumeroEstudiantes, descendente, desde, limite);
+            case "numeroProfesores" -> ordenados(profesores, Instituto::getNumeroProfesores, descendente, desde, limite);
+            case "anioFundacion" -> ordenados(fundaciones, Instituto::getAnioFundacion, descendente, desde, limite);
+            default -> throw new IllegalArgumentException("No se puede ordenar por " + campo);
+        };
+    }
+
+    @Override
+    public long count() {
+        return total.get();
+    }
+
+    @Override
+    public Map<String, InstitutoTotales> totalesPorCiudad() {
+        cargarInstantanea();
+        return porCiudad.totales();
+    }
+
+    @Override
+    public Map<String, InstitutoTotales> totalesPorTipo() {
+        cargarInstantanea();
+        return porTipo.totales();
+    }
+
     @Override
     public Optional<Instituto> findById(Long id) {
-        log.info("Buscando institutos por id: {}" , id);
-        return institutos.get(id) != null ? Optional.of(institutos.get(id)) : Optional.empty();
+        log.trace("Buscando institutos por id: {}" , id);
+        return Optional.ofNullable(buscar(id));
     }
 
     @Override
     public Optional<Instituto> findByUuid(UUID uuid) {
-        log.info("Buscando instituto por uuid: {}" , uuid);
-        return institutos.values().stream()
-                .filter(instituto -> instituto.getUuid().equals(uuid))
-                .findFirst();
+        log.trace("Buscando instituto por uuid: {}" , uuid);
+        if (uuid == null) {
+            return Optional.empty();
+        }
+        Perezosa pendiente = perezosa;
+        Long id = uuids.get(uuid);
+        if (id == null && pendiente != null) {
+            id = pendiente.instantanea().idDe(uuid);
+        }
+        return id == null ? Optional.empty() : Optional.ofNullable(buscar(id, pendiente))
+                // Por si el instituto ha cambiado entre la consulta del índice y la del mapa
+                .filter(instituto -> uuid.equals(instituto.getUuid()));
     }
 
     @Override
     public boolean existsById(Long id) {
-        log.info("Comprobando si existe instituto por id: {}" , id);
-        return institutos.get(id) != null;
+        log.trace("Comprobando si existe instituto por id: {}" , id);
+        return buscar(id) != null;
     }
 
     @Override
     public boolean existsByUuid(UUID uuid) {
-        log.info("Comprobando si existe instituto por uuid: {}" , uuid);
-        return institutos.values().stream()
-                .anyMatch(instituto -> instituto.getUuid().equals(uuid));
+        log.trace("Comprobando si existe instituto por uuid: {}" , uuid);
+        return findByUuid(uuid).isPresent();
     }
 
     @Override
     public Instituto save(Instituto instituto) {
-        log.info("Guardando instituto: {}" , instituto);
-        institutos.put(instituto.getId(), instituto);
+        log.trace("Guardando instituto con id: {}", instituto.getId());
+        long anotado;
+        cargarInstantanea();
+        BitSet cogidas = bloquear(List.of(instituto.getId()));
+        try {
+            anotado = guardar(instituto);
+        } finally {
+            desbloquear(cogidas);
+        }
+        esperar(anotado);
         return instituto;
     }
 
+    @Override
+    public List<Instituto> saveAll(List<Instituto> lote) {
+        log.trace("Guardando {} institutos", lote.size());
+        long anotado = 0;
+        cargarInstantanea();
+        BitSet cogidas = bloquear(lote.stream().map(Instituto::getId).toList());
+        try {
+            for (Instituto instituto : lote) {
+                anotado = Math.max(anotado, guardar(instituto));
+            }
+        } finally {
+            desbloquear(cogidas);
+        }
+        esperar(anotado);
+        return lote;
+    }
+
     @Override
     public void deleteById(Long id) {
-        log.info("Borrando tarjeta por id: {}" , id);
-        institutos.remove(id);
+        log.trace("Borrando instituto por id: {}", id);
+        long anotado;
+        cargarInstantanea();
+        BitSet cogidas = bloquear(List.of(id));
+        try {
+            anotado = borrar(id);
+        } finally {
+            desbloquear(cogidas);
+        }
+        esperar(anotado);
+    }
+
+    @Override
+    public void deleteAllById(Collection<Long> ids) {
+        log.trace("Borrando {} institutos", ids.size());
+        long anotado = 0;
+        cargarInstantanea();
+        BitSet cogidas = bloquear(ids);
+        try {
+            for (Long id : ids) {
+                anotado = Math.max(anotado, borrar(id));
+            }
+        } finally {
+            desbloquear(cogidas);
+        }
+        esperar(anotado);
+    }
+
+    @Override
+    public void saveAllAndDeleteAllById(List<Instituto> guardar, Collection<Long> borrar) {
+        log.trace("Guardando {} y borrando {} institutos", guardar.size(), borrar.size());
+        long anotado = 0;
+        cargarInstantanea();
+        List<Long> ids = new ArrayList<>(guardar.size() + borrar.size());
+        guardar.forEach(instituto -> ids.add(instituto.getId()));
+        ids.addAll(borrar);
+        BitSet cogidas = bloquear(ids);
+        try {
+            // Solo se anotan los borrados que borran algo, como en borrar
+            Set<Long> guardados = new HashSet<>(ids.subList(0, guardar.size()));
+            List<Long> existentes = borrar.stream()
+                    .filter(id -> guardados.contains(id) || institutos.containsKey(id))
+                    .toList();
+            if (persistencia != null && (!guardar.isEmpty() || !existentes.isEmpty())) {
+                anotado = persistencia.lote(guardar, existentes);
+            }
+            guardar.forEach(this::aplicarGuardado);
+            existentes.forEach(this::aplicarBorrado);
+        } finally {
+            desbloquear(cogidas);
+        }
+        esperar(anotado);
     }
 
     @Override
     public void deleteByUuid(UUID uuid) {
-        log.info("Borrando instituto por uuid: {}" , uuid);
-        institutos.values().removeIf(instituto -> instituto.getUuid().equals(uuid));
+        log.trace("Borrando instituto por uuid: {}" , uuid);
+        long anotado = 0;
+        cargarInstantanea();
+        Long id = uuid == null ? null : uuids.get(uuid);
+        if (id == null) {
+            return;
+        }
+        BitSet cogidas = bloquear(List.of(id));
+        try {
+            // Con la franja cogida: el instituto puede haber cambiado de uuid desde la consulta del índice
+            Indexado indexado = indexados.get(id);
+            if (indexado != null && uuid.equals(indexado.uuid())) {
+                anotado = borrar(id);
+            }
+        } finally {
+            desbloquear(cogidas);
+        }
+        esperar(anotado);
     }
 
     @Override
     public Long nextId() {
         log.debug("Obteniendo siguiente id de instituto");
-        return institutos.keySet().stream()
-                .mapToLong(value -> value)
-                .max()
-                .orElse(0) + 1;
+        // O(1) y sin colisiones aunque dos altas lleguen a la vez
+        return secuencia.incrementAndGet();
+    }
+
+    @Override
+    public Long nextIds(int cantidad) {
+        log.debug("Reservando {} ids de instituto", cantidad);
+        return secuencia.getAndAdd(cantidad) + 1;
+    }
+
+    // Escrituras sobre el mapa y los índices, siempre con la franja del id cogida
+    // Devuelven el número del registro en el log (0 si no hay persistencia o no se ha escrito nada)
+    private long guardar(Instituto instituto) {
+        // Primero al log: si falla, el repositorio se queda como estaba
+        long anotado = persistencia == null ? 0 : persistencia.guardado(instituto);
+        aplicarGuardado(instituto);
+        return anotado;
+    }
+
+    private long borrar(Long id) {
+        if (!institutos.containsKey(id)) {
+            return 0;
+        }
+        long anotado = persistencia == null ? 0 : persistencia.borrado(id);
+        aplicarBorrado(id);
+        return anotado;
+    }
+
+    // Aplican una escritura ya anotada en el log
+    private void aplicarGuardado(Instituto instituto) {
+        clavesBusqueda(instituto);
+        if (institutos.put(instituto.getId(), instituto) == null) {
+            total.incrementAndGet();
+        }
+        // anterior puede ser el mismo objeto ya modificado, así que se desindexa con lo que se anotó al indexarlo
+        Indexado anterior = indexados.get(instituto.getId());
+        if (anterior != null) {
+            desindexar(instituto.getId(), anterior);
+        }
+        indexar(instituto);
+        // Si se guarda con un id asignado fuera de la secuencia, la adelantamos para no repetirlo
+        secuencia.accumulateAndGet(instituto.getId(), Math::max);
+    }
+
+    private void aplicarBorrado(Long id) {
+        Instituto borrado = institutos.remove(id);
+        if (borrado != null) {
+            desindexar(id, indexados.get(id));
+            total.decrementAndGet();
+        }
+    }
+
+    // Los que tienen valor salen del índice ordenado; los que no, que no están en él, van detrás (o delante si es
+    // descendente) y solo se buscan recorriendo el mapa si la página llega hasta ellos
+    private List<Instituto> ordenados(RangeIndex<?> indice, Function<Instituto, ?> valor, boolean descendente, long desde, int limite) {
+        long conValor = indice.entradas();
+        long sinValor = Math.max(0, total.get() - conValor);
+        List<Instituto> pagina = new ArrayList<>(limite);
+        if (descendente && desde < sinValor) {
+            buscarSinValor(valor, desde, limite, pagina);
+        }
+        long enIndice = descendente ? Math.max(0, desde - sinValor) : desde;
+        if (pagina.size() < limite && enIndice < conValor) {
+            for (Long id : indice.ordenados(descendente, enIndice, limite - pagina.size())) {
+                // Un id que se acaba de borrar puede seguir un instante en el índice
+                Instituto instituto = institutos.get(id);
+                if (instituto != null) {
+                    pagina.add(instituto);
+                }
+            }
+        }
+        if (!descendente && pagina.size() < limite && sinValor > 0) {
+            buscarSinValor(valor, Math.max(0, desde - conValor), limite - pagina.size(), pagina);
+        }
+        return pagina;
+    }
+
+    private void buscarSinValor(Function<Instituto, ?> valor, long saltar, int limite, List<Instituto> pagina) {
+        institutos.values().stream()
+                .filter(instituto -> valor.apply(instituto) == null)
+                .skip(saltar)
+                .limit(limite)
+                .forEach(pagina::add);
+    }
+
+    // Consulta por id que, mientras la instantánea mapeada no se haya cargado, también mira en ella
+    private Instituto buscar(Long id) {
+        return buscar(id, perezosa);
+    }
+
+    // pendiente se lee antes que el mapa: si ya era null, el mapa está completo
+    private Instituto buscar(Long id, Perezosa pendiente) {
+        Instituto instituto = institutos.get(id);
+        if (instituto == null && pendiente != null && !pendiente.borrados().contains(id)) {
+            instituto = pendiente.instantanea().leer(id);
+        }
+        return instituto;
+    }
+
+    // Deja la instantánea sin cargar: solo se aplica lo del log que va detrás y se calcula el total
+    private void aplazar(MappedSnapshot instantanea, Collection<Instituto> recuperados, Set<Long> borrados) {
+        long enTotal = instantanea.size();
+        for (Instituto instituto : recuperados) {
+            clavesBusqueda(instituto);
+            institutos.put(instituto.getId(), instituto);
+            if (instituto.getUuid() != null) {
+                uuids.put(instituto.getUuid(), instituto.getId());
+            }
+            secuencia.accumulateAndGet(instituto.getId(), Math::max);
+            if (!instantanea.contiene(instituto.getId())) {
+                enTotal++;
+            }
+        }
+        for (Long id : borrados) {
+            if (instantanea.contiene(id)) {
+                enTotal--;
+            }
+        }
+        total.set(enTotal);
+        perezosa = new Perezosa(instantanea, Set.copyOf(borrados));
+    }
+
+    // Carga entera la instantánea mapeada, si queda alguna, en el mapa y los índices
+    private void cargarInstantanea() {
+        if (perezosa == null) {
+            return;
+        }
+        global.writeLock().lock();
+        try {
+            Perezosa pendiente = perezosa;
+            if (pendiente == null) {
+                return;
+            }
+            long inicio = System.nanoTime();
+            // Lo que vino del log ya está en el mapa y gana a lo de la instantánea
+            List<Instituto> lote = new ArrayList<>(pendiente.instantanea().size() + institutos.size());
+            lote.addAll(institutos.values());
+            pendiente.instantanea().forEach(instituto -> {
+                if (!institutos.containsKey(instituto.getId()) && !pendiente.borrados().contains(instituto.getId())) {
+                    lote.add(instituto);
+                }
+            });
+            cargar(lote);
+            perezosa = null;
+            log.info("Cargados {} institutos de la instantánea mapeada en {} ms", lote.size(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio));
+        } finally {
+            global.writeLock().unlock();
+        }
+    }
+
+    private static int franja(Long id) {
+        return Long.hashCode(id) & (FRANJAS - 1);
+    }
+
+    // Coge la parte compartida del lock global y las franjas de los ids, siempre en orden de franja
+    // para que dos lotes que comparten franjas no se esperen el uno al otro
+    private BitSet bloquear(Collection<Long> ids) {
+        BitSet cogidas = new BitSet(FRANJAS);
+        for (Long id : ids) {
+            cogidas.set(franja(id));
+        }
+        global.readLock().lock();
+        for (int i = cogidas.nextSetBit(0); i >= 0; i = cogidas.nextSetBit(i + 1)) {
+            franjas[i].lock();
+        }
+        return cogidas;
+    }
+
+    private void desbloquear(BitSet cogidas) {
+        for (int i = cogidas.nextSetBit(0); i >= 0; i = cogidas.nextSetBit(i + 1)) {
+            franjas[i].unlock();
+        }
+        global.readLock().unlock();
     }
 
+    // Ya sin el lock: mientras se espera al disco otras escrituras se suman al mismo fsync
+    private void esperar(long anotado) {
+        if (anotado > 0) {
+            persistencia.esperar(anotado);
+        }
+    }
 
+    // Carga en bloque sobre los índices vacíos: cada índice se construye de una vez y en paralelo con los demás
+    private void cargar(Collection<Instituto> lote) {
+        lote.parallelStream().forEach(InstitutosRepositoryImpl::clavesBusqueda);
+        for (Instituto instituto : lote) {
+            institutos.put(instituto.getId(), instituto);
+            secuencia.accumulateAndGet(instituto.getId(), Math::max);
+        }
+        total.set(institutos.size());
+        Stream.<Runnable>of(
+                () -> lote.stream().filter(instituto -> instituto.getUuid() != null)
+                        .forEach(instituto -> uuids.put(instituto.getUuid(), instituto.getId())),
+                () -> ciudades.addAll(lote, Instituto::getId, Instituto::getCiudadBusqueda),
+                () -> nombres.addAll(lote, Instituto::getId, Instituto::getNombreBusqueda),
+                () -> tipos.addAll(lote, Instituto::getId, instituto -> minusculas(instituto.getTipo())),
+                () -> codigos.addAll(lote, Instituto::getId, instituto -> minusculas(instituto.getCodigoInstituto())),
+                () -> estudiantes.addAll(lote, Instituto::getId, Instituto::getNumeroEstudiantes),
+                () -> profesores.addAll(lote, Instituto::getId, Instituto::getNumeroProfesores),
+                () -> fundaciones.addAll(lote, Instituto::getId, Instituto::getAnioFundacion),
+                () -> lote.forEach(porCiudad::add),
+                () -> lote.forEach(porTipo::add),
+                () -> lote.forEach(instituto -> indexados.put(instituto.getId(), Indexado.de(instituto)))
+        ).parallel().forEach(Runnable::run);
+    }
 
+    // Plan de una búsqueda: ids de los que partir (null para recorrer todo) y filtro que tienen que cumplir
+    private record Plan(Set<Long> candidatos, Predicate<Instituto> filtro) {
+    }
 
+    // Los textos de la consulta se normalizan una vez; cada instituto se compara con sus claves ya calculadas
+    private Plan planificar(InstitutoCriteriaDto criteria) {
+        String ciudad = ClaveBusqueda.normalizar(sinVacio(criteria.getCiudad()));
+        String nombre = ClaveBusqueda.normalizar(sinVacio(criteria.getNombre()));
+        String tipo = sinVacio(criteria.getTipo());
+        String codigo = sinVacio(criteria.getCodigoInstituto());
+        Integer minEstudiantes = criteria.getMinEstudiantes();
+        Integer maxEstudiantes = criteria.getMaxEstudiantes();
+        Integer minProfesores = criteria.getMinProfesores();
+        Integer maxProfesores = criteria.getMaxProfesores();
+        LocalDate desde = criteria.getFundadoDesde();
+        LocalDate hasta = criteria.getFundadoHasta();
+
+        // Acceso: el conjunto de candidatos más pequeño entre los índices que se pueden usar
+        Set<Long> candidatos = null;
+        if (codigo != null) {
+            candidatos = menor(candidatos, codigos.get(minusculas(codigo)));
+        }
+        if (tipo != null) {
+            candidatos = menor(candidatos, tipos.get(minusculas(tipo)));
+        }
+        // Los rangos se recorren solo mientras salgan menos ids que los candidatos que ya tenemos
+        if (minEstudiantes != null || maxEstudiantes != null) {
+            candidatos = rango(candidatos, estudiantes, minEstudiantes, maxEstudiantes);
+        }
+        if (minProfesores != null || maxProfesores != null) {
+            candidatos = rango(candidatos, profesores, minProfesores, maxProfesores);
+        }
+        if (desde != null || hasta != null) {
+            candidatos = rango(candidatos, fundaciones, desde, hasta);
+        }
+        // Consultas de menos de tres letras: no hay trigramas que usar
+        if ((ciudad != null || nombre != null) && (candidatos == null || candidatos.size() > CANDIDATOS_SUFICIENTES)) {
+            candidatos = menor(candidatos, interseccion(
+                    ciudad == null ? null : ciudades.candidatos(ciudad),
+                    nombre == null ? null : nombres.candidatos(nombre)));
+        }
+
+        // Filtro: todos los criterios, de más barato a más caro, y el primero que falla corta la evaluación
+        // También se comprueban los que han dado los candidatos: el índice puede ir un paso por detrás del mapa
+        List<Predicate<Instituto>> filtros = new ArrayList<>();
+        if (codigo != null) {
+            filtros.add(instituto -> codigo.equalsIgnoreCase(instituto.getCodigoInstituto()));
+        }
+        if (tipo != null) {
+            filtros.add(instituto -> tipo.equalsIgnoreCase(instituto.getTipo()));
+        }
+        if (minEstudiantes != null) {
+            filtros.add(instituto -> instituto.getNumeroEstudiantes() != null && instituto.getNumeroEstudiantes() >= minEstudiantes);
+        }
+        if (maxEstudiantes != null) {
+            filtros.add(instituto -> instituto.getNumeroEstudiantes() != null && instituto.getNumeroEstudiantes() <= maxEstudiantes);
+        }
+        if (minProfesores != null) {
+            filtros.add(instituto -> instituto.getNumeroProfesores() != null && instituto.getNumeroProfesores() >= minProfesores);
+        }
+        if (maxProfesores != null) {
+            filtros.add(instituto -> instituto.getNumeroProfesores() != null && instituto.getNumeroProfesores() <= maxProfesores);
+        }
+        if (desde != null) {
+            filtros.add(instituto -> instituto.getAnioFundacion() != null && !instituto.getAnioFundacion().isBefore(desde));
+        }
+        if (hasta != null) {
+            filtros.add(instituto -> instituto.getAnioFundacion() != null && !instituto.getAnioFundacion().isAfter(hasta));
+        }
+        if (ciudad != null) {
+            filtros.add(instituto -> contiene(instituto.getCiudadBusqueda(), ciudad));
+        }
+        if (nombre != null) {
+            filtros.add(instituto -> contiene(instituto.getNombreBusqueda(), nombre));
+        }
+        return new Plan(candidatos, filtros.stream().reduce(Predicate::and).orElse(instituto -> true));
+    }
+
+    private <K extends Comparable<? super K>> Set<Long> rango(Set<Long> candidatos, RangeIndex<K> indice, K desde, K hasta) {
+        if (candidatos != null && candidatos.size() <= CANDIDATOS_SUFICIENTES) {
+            return candidatos;
+        }
+        int limite = candidatos == null ? Integer.MAX_VALUE : candidatos.size() - 1;
+        return menor(candidatos, indice.candidatos(desde, hasta, limite));
+    }
+
+    private static Set<Long> menor(Set<Long> a, Set<Long> b) {
+        if (a == null || b == null) {
+            return a == null ? b : a;
+        }
+        return a.size() <= b.size() ? a : b;
+    }
+
+    private static String sinVacio(String texto) {
+        return texto == null || texto.isBlank() ? null : texto;
+    }
+
+    private static String minusculas(String texto) {
+        return texto == null ? null : texto.toLowerCase(Locale.ROOT);
+    }
+
+    private static Set<Long> interseccion(Set<Long> a, Set<Long> b) {
+        if (a == null || b == null) {
+            return a == null ? b : a;
+        }
+        Set<Long> menor = a.size() <= b.size() ? a : b;
+        Set<Long> mayor = menor == a ? b : a;
+        Set<Long> resultado = new HashSet<>(menor);
+        resultado.retainAll(mayor);
+        return resultado;
+    }
+
+    private static boolean contiene(String clave, String buscado) {
+        return clave != null && clave.contains(buscado);
+    }
+
+    // Siempre se recalculan: las que traiga el instituto pueden ser de un nombre o una ciudad que ya ha cambiado
+    private static void clavesBusqueda(Instituto instituto) {
+        instituto.setNombreBusqueda(ClaveBusqueda.normalizar(instituto.getNombre()));
+        instituto.setCiudadBusqueda(ClaveBusqueda.normalizar(instituto.getCiudad()));
+    }
+
+    // Mantenimiento de índices, siempre con la franja del id cogida (o en el constructor)
+    private void indexar(Instituto instituto) {
+        if (instituto.getUuid() != null) {
+            uuids.put(instituto.getUuid(), instituto.getId());
+        }
+        ciudades.add(instituto.getId(), instituto.getCiudadBusqueda());
+        nombres.add(instituto.getId(), instituto.getNombreBusqueda());
+        tipos.add(instituto.getId(), minusculas(instituto.getTipo()));
+        codigos.add(instituto.getId(), minusculas(instituto.getCodigoInstituto()));
+        estudiantes.add(instituto.getId(), instituto.getNumeroEstudiantes());
+        profesores.add(instituto.getId(), instituto.getNumeroProfesores());
+        fundaciones.add(instituto.getId(), instituto.getAnioFundacion());
+        porCiudad.add(instituto);
+        porTipo.add(instituto);
+        indexados.put(instituto.getId(), Indexado.de(instituto));
+    }
+
+    private void desindexar(Long id, Indexado indexado) {
+        if (indexado.uuid() != null) {
+            uuids.remove(indexado.uuid(), id);
+        }
+        ciudades.remove(id, indexado.ciudadBusqueda());
+        nombres.remove(id, indexado.nombreBusqueda());
+        tipos.remove(id, minusculas(indexado.tipo()));
+        codigos.remove(id, minusculas(indexado.codigo()));
+        estudiantes.remove(id, indexado.estudiantes());
+        profesores.remove(id, indexado.profesores());
+        fundaciones.remove(id, indexado.fundacion());
+        var totales = indexado.totales();
+        porCiudad.remove(totales);
+        porTipo.remove(totales);
+        indexados.remove(id);
+    }
 }
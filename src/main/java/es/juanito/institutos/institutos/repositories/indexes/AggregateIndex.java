@@ -0,0 +1,52 @@
+package es.juanito.institutos.institutos.repositories.indexes;
+
+import es.juanito.institutos.institutos.models.Instituto;
+import es.juanito.institutos.institutos.models.InstitutoTotales;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Totales por grupo (ciudad, tipo...) que se ajustan en cada alta y baja en vez de recorrer el catálogo.
+ * Leerlos cuesta lo mismo tenga el catálogo mil o un millón de institutos, solo depende del número de grupos.
+ * Igual que el resto de índices: las lecturas no bloquean y merge/computeIfPresent ajustan cada grupo de forma atómica.
+ */
+public class AggregateIndex {
+    // Grupo de los institutos que no informan el campo
+    public static final String SIN_VALOR = "sin especificar";
+
+    private final Map<String, InstitutoTotales> grupos = new ConcurrentHashMap<>();
+    private final Function<Instituto, String> grupo;
+
+    public AggregateIndex(Function<Instituto, String> grupo) {
+        this.grupo = grupo;
+    }
+
+    public void add(Instituto instituto) {
+        grupos.merge(grupoDe(instituto), InstitutoTotales.VACIO.sumar(instituto), InstitutoTotales::sumar);
+    }
+
+    public void remove(Instituto instituto) {
+        // Si el grupo se queda sin institutos desaparece
+        grupos.computeIfPresent(grupoDe(instituto), (clave, totales) -> {
+            var restantes = totales.restar(instituto);
+            return restantes.institutos() == 0 ? null : restantes;
+        });
+    }
+
+    // Copia de los totales de cada grupo
+    public Map<String, InstitutoTotales> totales() {
+        return Map.copyOf(grupos);
+    }
+
+    // Número de grupos, útil para métricas
+    public int size() {
+        return grupos.size();
+    }
+
+    private String grupoDe(Instituto instituto) {
+        String valor = grupo.apply(instituto);
+        return valor == null || valor.isBlank() ? SIN_VALOR : valor;
+    }
+}
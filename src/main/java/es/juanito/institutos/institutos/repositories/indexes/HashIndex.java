@@ -0,0 +1,64 @@
+package es.juanito.institutos.institutos.repositories.indexes;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Índice de igualdad clave -> ids, para campos con pocos valores distintos (tipo) o casi únicos (código).
+ * Igual que TrigramIndex: las lecturas no bloquean y cada alta o baja es atómica para su clave,
+ * así que pueden escribir a la vez varios hilos con ids distintos.
+ */
+public class HashIndex<K> {
+    private final Map<K, Set<Long>> postings = new ConcurrentHashMap<>();
+
+    public void add(Long id, K clave) {
+        if (clave != null) {
+            postings.compute(clave, (c, ids) -> {
+                Set<Long> conjunto = ids == null ? ConcurrentHashMap.newKeySet() : ids;
+                conjunto.add(id);
+                return conjunto;
+            });
+        }
+    }
+
+    // Carga en bloque: se agrupa primero por clave y cada conjunto se crea ya con su tamaño, sin ir redimensionándolo
+    public <T> void addAll(Collection<T> elementos, Function<T, Long> id, Function<T, K> clave) {
+        Map<K, List<Long>> grupos = new HashMap<>();
+        for (T elemento : elementos) {
+            K valor = clave.apply(elemento);
+            if (valor != null) {
+                grupos.computeIfAbsent(valor, v -> new ArrayList<>()).add(id.apply(elemento));
+            }
+        }
+        grupos.forEach((valor, ids) -> postings.computeIfAbsent(valor, v -> ConcurrentHashMap.newKeySet(ids.size())).addAll(ids));
+    }
+
+    public void remove(Long id, K clave) {
+        if (clave == null) {
+            return;
+        }
+        // Dentro del compute: un alta de otro id con la misma clave no puede ir a parar a un conjunto ya quitado
+        postings.computeIfPresent(clave, (c, ids) -> {
+            ids.remove(id);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    // Vista de solo lectura de los ids con esa clave, vacía si no hay ninguno
+    public Set<Long> get(K clave) {
+        Set<Long> ids = clave == null ? null : postings.get(clave);
+        return ids == null ? Set.of() : Collections.unmodifiableSet(ids);
+    }
+
+    // Número de claves distintas, útil para métricas
+    public int size() {
+        return postings.size();
+    }
+}
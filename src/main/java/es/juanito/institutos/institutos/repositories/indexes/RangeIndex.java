@@ -0,0 +1,147 @@
+package es.juanito.institutos.institutos.repositories.indexes;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Índice ordenado valor -> ids para consultas por rango sobre campos numéricos o fechas.
+ * Situarse en el rango cuesta O(log n) y después solo se recorren las k entradas que caen dentro.
+ * Igual que el resto de índices: las lecturas no bloquean y cada alta o baja es atómica para su valor.
+ * El compute de ConcurrentSkipListMap no es atómico, así que los conjuntos se crean y se quitan dentro del compute
+ * de un ConcurrentHashMap por valor y el mapa ordenado solo refleja lo que hay en él.
+ */
+public class RangeIndex<K extends Comparable<? super K>> {
+    private final ConcurrentNavigableMap<K, Set<Long>> postings = new ConcurrentSkipListMap<>();
+    private final Map<K, Set<Long>> porValor = new ConcurrentHashMap<>();
+    // Ids indexados, todos con valor; se cuenta dentro del compute de su valor
+    private final AtomicLong entradas = new AtomicLong();
+
+    public void add(Long id, K valor) {
+        if (valor != null) {
+            porValor.compute(valor, (v, ids) -> {
+                Set<Long> conjunto = ids;
+                if (conjunto == null) {
+                    conjunto = ConcurrentHashMap.newKeySet();
+                    postings.put(valor, conjunto);
+                }
+                if (conjunto.add(id)) {
+                    entradas.incrementAndGet();
+                }
+                return conjunto;
+            });
+        }
+    }
+
+    // Carga en bloque: se agrupa primero por clave y cada conjunto se crea ya con su tamaño, sin ir redimensionándolo
+    public <T> void addAll(Collection<T> elementos, Function<T, Long> id, Function<T, K> clave) {
+        Map<K, List<Long>> grupos = new HashMap<>();
+        for (T elemento : elementos) {
+            K valor = clave.apply(elemento);
+            if (valor != null) {
+                grupos.computeIfAbsent(valor, v -> new ArrayList<>()).add(id.apply(elemento));
+            }
+        }
+        grupos.forEach((valor, ids) -> porValor.compute(valor, (v, actuales) -> {
+            Set<Long> conjunto = actuales;
+            if (conjunto == null) {
+                conjunto = ConcurrentHashMap.newKeySet(ids.size());
+                postings.put(valor, conjunto);
+            }
+            int antes = conjunto.size();
+            conjunto.addAll(ids);
+            entradas.addAndGet(conjunto.size() - antes);
+            return conjunto;
+        }));
+    }
+
+    public void remove(Long id, K valor) {
+        if (valor == null) {
+            return;
+        }
+        porValor.computeIfPresent(valor, (v, ids) -> {
+            if (ids.remove(id)) {
+                entradas.decrementAndGet();
+            }
+            if (!ids.isEmpty()) {
+                return ids;
+            }
+            postings.remove(valor, ids);
+            return null;
+        });
+    }
+
+    /**
+     * Ids con valor entre desde y hasta (ambos incluidos, null para no acotar ese extremo).
+     * Si hay más de limite ids devuelve null: el rango no es lo bastante selectivo y no merece la pena seguir.
+     */
+    public Set<Long> candidatos(K desde, K hasta, int limite) {
+        NavigableMap<K, Set<Long>> rango;
+        if (desde != null && hasta != null) {
+            if (desde.compareTo(hasta) > 0) {
+                return Set.of();
+            }
+            rango = postings.subMap(desde, true, hasta, true);
+        } else if (desde != null) {
+            rango = postings.tailMap(desde, true);
+        } else if (hasta != null) {
+            rango = postings.headMap(hasta, true);
+        } else {
+            rango = postings;
+        }
+        Set<Long> resultado = new HashSet<>();
+        for (Map.Entry<K, Set<Long>> entrada : rango.entrySet()) {
+            resultado.addAll(entrada.getValue());
+            if (resultado.size() > limite) {
+                return null;
+            }
+        }
+        return resultado;
+    }
+
+    /**
+     * Hasta limite ids ordenados por valor (y por id dentro de cada valor) saltándose los saltar primeros.
+     * No copia ni ordena el índice: se recorren los valores anteriores a la página, y solo se ordenan los ids
+     * de los valores que caen en ella.
+     */
+    public List<Long> ordenados(boolean descendente, long saltar, int limite) {
+        List<Long> resultado = new ArrayList<>(Math.min(limite, 1024));
+        long pendientes = saltar;
+        for (Set<Long> ids : (descendente ? postings.descendingMap() : postings).values()) {
+            if (resultado.size() >= limite) {
+                break;
+            }
+            int tamano = ids.size();
+            if (pendientes >= tamano) {
+                pendientes -= tamano;
+                continue;
+            }
+            long[] porId = ids.stream().mapToLong(Long::longValue).sorted().toArray();
+            for (int i = (int) pendientes; i < porId.length && resultado.size() < limite; i++) {
+                resultado.add(porId[i]);
+            }
+            pendientes = 0;
+        }
+        return resultado;
+    }
+
+    // Número de ids indexados, los que tienen valor
+    public long entradas() {
+        return entradas.get();
+    }
+
+    // Número de valores distintos, útil para métricas
+    public int size() {
+        return postings.size();
+    }
+}
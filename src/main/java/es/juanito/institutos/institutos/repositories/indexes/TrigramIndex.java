@@ -0,0 +1,93 @@
+package es.juanito.institutos.institutos.repositories.indexes;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Índice invertido de trigramas para búsquedas "contiene".
+ * Cada trigrama del texto apunta al conjunto de ids que lo contienen; una consulta de tres o más
+ * caracteres se resuelve intersectando las listas de sus trigramas. El resultado son candidatos:
+ * quien consulta debe comprobar el contains real, porque tener todos los trigramas no garantiza
+ * que aparezcan seguidos.
+ * Las lecturas no bloquean y cada alta o baja es atómica por trigrama: pueden escribir a la vez varios hilos
+ * siempre que no sea sobre el mismo id (el repositorio los reparte por id).
+ */
+public class TrigramIndex {
+    public static final int N = 3;
+
+    private final Map<String, Set<Long>> postings = new ConcurrentHashMap<>();
+
+    public void add(Long id, String texto) {
+        for (String trigrama : trigramas(texto)) {
+            postings.compute(trigrama, (t, ids) -> {
+                Set<Long> conjunto = ids == null ? ConcurrentHashMap.newKeySet() : ids;
+                conjunto.add(id);
+                return conjunto;
+            });
+        }
+    }
+
+    // Carga en bloque: con pocos trigramas distintos cada lista es enorme, así que se crea ya con su tamaño
+    public <T> void addAll(Collection<T> elementos, Function<T, Long> id, Function<T, String> texto) {
+        Map<String, List<Long>> grupos = new HashMap<>();
+        for (T elemento : elementos) {
+            Long suyo = id.apply(elemento);
+            for (String trigrama : trigramas(texto.apply(elemento))) {
+                grupos.computeIfAbsent(trigrama, t -> new ArrayList<>()).add(suyo);
+            }
+        }
+        // Cada lista va a su propio conjunto, así que se pueden llenar en paralelo
+        grupos.entrySet().parallelStream().forEach(grupo -> postings
+                .computeIfAbsent(grupo.getKey(), t -> ConcurrentHashMap.newKeySet(grupo.getValue().size()))
+                .addAll(grupo.getValue()));
+    }
+
+    public void remove(Long id, String texto) {
+        for (String trigrama : trigramas(texto)) {
+            // Dentro del compute: un alta de otro id con el trigrama no puede ir a parar a un conjunto ya quitado
+            postings.computeIfPresent(trigrama, (t, ids) -> {
+                ids.remove(id);
+                return ids.isEmpty() ? null : ids;
+            });
+        }
+    }
+
+    // Ids que pueden contener la consulta, o null si la consulta es demasiado corta para usar el índice
+    public Set<Long> candidatos(String consulta) {
+        if (consulta == null || consulta.length() < N) {
+            return null;
+        }
+        List<Set<Long>> listas = new ArrayList<>();
+        for (String trigrama : trigramas(consulta)) {
+            Set<Long> ids = postings.get(trigrama);
+            if (ids == null) {
+                return Set.of();
+            }
+            listas.add(ids);
+        }
+        // Se empieza por la lista más corta para que la intersección cueste lo mínimo
+        listas.sort(Comparator.comparingInt(Set::size));
+        Set<Long> resultado = new HashSet<>(listas.getFirst());
+        for (int i = 1; i < listas.size() && !resultado.isEmpty(); i++) {
+            resultado.retainAll(listas.get(i));
+        }
+        return resultado;
+    }
+
+    // Número de trigramas distintos, útil para métricas
+    public int size() {
+        return postings.size();
+    }
+
+    private static Set<String> trigramas(String texto) {
+        if (texto == null || texto.length() < N) {
+            return Set.of();
+        }
+        Set<String> trigramas = new HashSet<>();
+        for (int i = 0; i + N <= texto.length(); i++) {
+            trigramas.add(texto.substring(i, i + N));
+        }
+        return trigramas;
+    }
+}
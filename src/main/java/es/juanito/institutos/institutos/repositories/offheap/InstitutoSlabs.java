@@ -0,0 +1,336 @@
+package es.juanito.institutos.institutos.repositories.offheap;
+
+import es.juanito.institutos.institutos.models.Instituto;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.function.Predicate;
+
+import static es.juanito.institutos.institutos.repositories.offheap.InstitutoView.*;
+
+/**
+ * Institutos guardados fuera del heap con la API de memoria externa (java.lang.foreign).
+ * Cada instituto es una fila de ancho fijo (InstitutoView.ANCHO bytes) dentro de slabs de FILAS_POR_SLAB filas;
+ * los textos van a un StringArena y los uuid a un UuidIndex. El orden por id es un array nativo de pares
+ * (id, fila) ordenado: los ids crecientes se añaden al final y las bajas dejan la fila a -1 hasta que hay
+ * tantas que compensa compactarlo. Las filas libres se reutilizan y los slabs no se devuelven hasta close().
+ * En el heap solo quedan unos pocos objetos por slab o bloque, así que el GC no tiene que recorrer los institutos.
+ * No sincroniza nada: el repositorio serializa las escrituras y solo lee con su lock de lectura.
+ */
+public class InstitutoSlabs implements AutoCloseable {
+    static final int BITS_SLAB = 16;
+    static final int FILAS_POR_SLAB = 1 << BITS_SLAB;
+
+    // Cada entrada del orden: id (long) y fila (int), alineada a 16 bytes
+    private static final long ENTRADA = 16;
+    private static final long FILA_DE_ENTRADA = 8;
+    private static final int SIN_FILA = -1;
+
+    // Con menos huecos no compensa reescribir
+    private static final int HUECOS_MINIMOS = 1024;
+    private static final long TEXTOS_MINIMOS = 4L << 20;
+
+    private final Arena arena = Arena.ofShared();
+    private MemorySegment[] slabs = new MemorySegment[16];
+    private int filasReservadas;
+    private int filasUsadas;
+    private int[] libres = new int[64];
+    private int numeroLibres;
+
+    private Arena arenaOrden;
+    private MemorySegment orden;
+    private int entradas;
+    private int bajas;
+
+    private StringArena textos = new StringArena();
+    private final UuidIndex uuids = new UuidIndex();
+    private long total;
+
+    public InstitutoSlabs() {
+        reservarOrden(1024);
+    }
+
+    // Vista nueva para recorrer o leer filas; se puede reutilizar con cualquier fila
+    public InstitutoView vista() {
+        return new InstitutoView(this);
+    }
+
+    public long size() {
+        return total;
+    }
+
+    // Fila del instituto con ese id, o -1
+    public int fila(long id) {
+        int posicion = buscar(id);
+        return posicion < 0 ? SIN_FILA : filaEn(posicion);
+    }
+
+    public int fila(UUID uuid) {
+        return uuids.get(uuid);
+    }
+
+    // Alta o sustitución del instituto con su id
+    public void put(Instituto instituto) {
+        long id = instituto.getId();
+        int posicion = buscar(id);
+        int fila = posicion < 0 ? SIN_FILA : filaEn(posicion);
+        if (fila == SIN_FILA) {
+            fila = nuevaFila();
+            total++;
+            if (posicion < 0) {
+                insertarOrden(-posicion - 1, id, fila);
+            } else {
+                orden.set(ValueLayout.JAVA_INT, posicion * ENTRADA + FILA_DE_ENTRADA, fila);
+                bajas--;
+            }
+        } else {
+            liberarTextos(fila);
+            quitarUuid(fila);
+        }
+        escribir(fila, instituto);
+        if (instituto.getUuid() != null) {
+            uuids.put(instituto.getUuid(), fila);
+        }
+        compactarTextos();
+    }
+
+    public boolean remove(long id) {
+        int posicion = buscar(id);
+        int fila = posicion < 0 ? SIN_FILA : filaEn(posicion);
+        if (fila == SIN_FILA) {
+            return false;
+        }
+        liberarTextos(fila);
+        quitarUuid(fila);
+        orden.set(ValueLayout.JAVA_INT, posicion * ENTRADA + FILA_DE_ENTRADA, SIN_FILA);
+        bajas++;
+        total--;
+        if (numeroLibres == libres.length) {
+            libres = Arrays.copyOf(libres, libres.length * 2);
+        }
+        libres[numeroLibres++] = fila;
+        compactarOrden();
+        compactarTextos();
+        return true;
+    }
+
+    /**
+     * Recorre en orden de id, empezando justo después (o antes, si es descendente) de desde, o por el principio
+     * si es null, y mueve la vista a cada fila viva hasta que visitante devuelve false
+     */
+    public void recorrer(Long desde, boolean descendente, InstitutoView vista, Predicate<InstitutoView> visitante) {
+        int posicion;
+        if (desde == null) {
+            posicion = descendente ? entradas - 1 : 0;
+        } else {
+            int encontrada = buscar(desde);
+            int insercion = encontrada < 0 ? -encontrada - 1 : encontrada;
+            posicion = descendente ? insercion - 1 : (encontrada < 0 ? insercion : insercion + 1);
+        }
+        int paso = descendente ? -1 : 1;
+        for (; posicion >= 0 && posicion < entradas; posicion += paso) {
+            int fila = filaEn(posicion);
+            if (fila != SIN_FILA && !visitante.test(vista.mover(fila))) {
+                return;
+            }
+        }
+    }
+
+    // Memoria nativa reservada entre filas, orden, textos y uuids
+    public long reservedBytes() {
+        return (long) filasReservadas * ANCHO + orden.byteSize() + textos.reservedBytes() + uuids.reservedBytes();
+    }
+
+    @Override
+    public void close() {
+        textos.close();
+        uuids.close();
+        arenaOrden.close();
+        arena.close();
+    }
+
+    StringArena textos() {
+        return textos;
+    }
+
+    MemorySegment slab(int fila) {
+        return slabs[fila >>> BITS_SLAB];
+    }
+
+    static long base(int fila) {
+        return (fila & (FILAS_POR_SLAB - 1)) * ANCHO;
+    }
+
+    private void escribir(int fila, Instituto instituto) {
+        MemorySegment slab = slab(fila);
+        long base = base(fila);
+        int presentes = 0;
+        slab.set(ValueLayout.JAVA_LONG, base + ID, instituto.getId());
+        if (instituto.getUuid() != null) {
+            presentes |= CON_UUID;
+            slab.set(ValueLayout.JAVA_LONG, base + UUID_MSB, instituto.getUuid().getMostSignificantBits());
+            slab.set(ValueLayout.JAVA_LONG, base + UUID_LSB, instituto.getUuid().getLeastSignificantBits());
+        }
+        if (instituto.getCreatedAt() != null) {
+            presentes |= CON_CREADO;
+            slab.set(ValueLayout.JAVA_LONG, base + CREADO_SEGUNDOS, instituto.getCreatedAt().toEpochSecond(ZoneOffset.UTC));
+            slab.set(ValueLayout.JAVA_INT, base + CREADO_NANOS, instituto.getCreatedAt().getNano());
+        }
+        if (instituto.getUpdateAt() != null) {
+            presentes |= CON_ACTUALIZADO;
+            slab.set(ValueLayout.JAVA_LONG, base + ACTUALIZADO_SEGUNDOS, instituto.getUpdateAt().toEpochSecond(ZoneOffset.UTC));
+            slab.set(ValueLayout.JAVA_INT, base + ACTUALIZADO_NANOS, instituto.getUpdateAt().getNano());
+        }
+        if (instituto.getAnioFundacion() != null) {
+            presentes |= CON_FUNDACION;
+            slab.set(ValueLayout.JAVA_LONG, base + FUNDACION, instituto.getAnioFundacion().toEpochDay());
+        }
+        if (instituto.getNumeroEstudiantes() != null) {
+            presentes |= CON_ESTUDIANTES;
+            slab.set(ValueLayout.JAVA_INT, base + ESTUDIANTES, instituto.getNumeroEstudiantes());
+        }
+        if (instituto.getNumeroProfesores() != null) {
+            presentes |= CON_PROFESORES;
+            slab.set(ValueLayout.JAVA_INT, base + PROFESORES, instituto.getNumeroProfesores());
+        }
+        if (instituto.getIsDeleted() != null) {
+            presentes |= CON_BORRADO | (instituto.getIsDeleted() ? BORRADO : 0);
+        }
+        slab.set(ValueLayout.JAVA_INT, base + PRESENTES, presentes);
+        String[] valores = {instituto.getNombre(), instituto.getCiudad(), instituto.getDireccion(), instituto.getTelefono(),
+                instituto.getEmail(), instituto.getTipo(), instituto.getCodigoInstituto(),
+                instituto.getNombreBusqueda(), instituto.getCiudadBusqueda()};
+        for (int columna = 0; columna < NUMERO_TEXTOS; columna++) {
+            slab.set(ValueLayout.JAVA_LONG, base + TEXTOS + (long) columna * Long.BYTES, textos.put(valores[columna]));
+        }
+    }
+
+    private int nuevaFila() {
+        if (numeroLibres > 0) {
+            return libres[--numeroLibres];
+        }
+        if (filasUsadas == filasReservadas) {
+            int slab = filasReservadas >>> BITS_SLAB;
+            if (slab == slabs.length) {
+                slabs = Arrays.copyOf(slabs, slabs.length * 2);
+            }
+            slabs[slab] = arena.allocate(FILAS_POR_SLAB * ANCHO, Long.BYTES);
+            filasReservadas += FILAS_POR_SLAB;
+        }
+        return filasUsadas++;
+    }
+
+    private void liberarTextos(int fila) {
+        MemorySegment slab = slab(fila);
+        long base = base(fila);
+        for (int columna = 0; columna < NUMERO_TEXTOS; columna++) {
+            textos.free(slab.get(ValueLayout.JAVA_LONG, base + TEXTOS + (long) columna * Long.BYTES));
+        }
+    }
+
+    private void quitarUuid(int fila) {
+        MemorySegment slab = slab(fila);
+        long base = base(fila);
+        if ((slab.get(ValueLayout.JAVA_INT, base + PRESENTES) & CON_UUID) != 0) {
+            uuids.remove(new UUID(slab.get(ValueLayout.JAVA_LONG, base + UUID_MSB),
+                    slab.get(ValueLayout.JAVA_LONG, base + UUID_LSB)), fila);
+        }
+    }
+
+    // Cuando más de la mitad de los textos son huecos se copian los vivos a una arena nueva
+    private void compactarTextos() {
+        if (textos.reservedBytes() < TEXTOS_MINIMOS || textos.deadBytes() * 2 < textos.reservedBytes()) {
+            return;
+        }
+        StringArena compactados = new StringArena();
+        for (int posicion = 0; posicion < entradas; posicion++) {
+            int fila = filaEn(posicion);
+            if (fila == SIN_FILA) {
+                continue;
+            }
+            MemorySegment slab = slab(fila);
+            long referencias = base(fila) + TEXTOS;
+            for (int columna = 0; columna < NUMERO_TEXTOS; columna++) {
+                long desplazamiento = referencias + (long) columna * Long.BYTES;
+                slab.set(ValueLayout.JAVA_LONG, desplazamiento, compactados.put(textos.get(slab.get(ValueLayout.JAVA_LONG, desplazamiento))));
+            }
+        }
+        textos.close();
+        textos = compactados;
+    }
+
+    // Posición del id en el orden, o -(posición de inserción) - 1 como Arrays.binarySearch
+    private int buscar(long id) {
+        if (entradas > 0 && idEn(entradas - 1) < id) {
+            return -entradas - 1;
+        }
+        int desde = 0;
+        int hasta = entradas - 1;
+        while (desde <= hasta) {
+            int medio = (desde + hasta) >>> 1;
+            long valor = idEn(medio);
+            if (valor < id) {
+                desde = medio + 1;
+            } else if (valor > id) {
+                hasta = medio - 1;
+            } else {
+                return medio;
+            }
+        }
+        return -desde - 1;
+    }
+
+    private long idEn(int posicion) {
+        return orden.get(ValueLayout.JAVA_LONG, posicion * ENTRADA);
+    }
+
+    private int filaEn(int posicion) {
+        return orden.get(ValueLayout.JAVA_INT, posicion * ENTRADA + FILA_DE_ENTRADA);
+    }
+
+    // Los ids crecientes van al final; uno anterior desplaza los que tiene detrás
+    private void insertarOrden(int posicion, long id, int fila) {
+        if ((entradas + 1) * ENTRADA > orden.byteSize()) {
+            reservarOrden(entradas * 2);
+        }
+        if (posicion < entradas) {
+            MemorySegment.copy(orden, posicion * ENTRADA, orden, (posicion + 1) * ENTRADA, (entradas - posicion) * ENTRADA);
+        }
+        orden.set(ValueLayout.JAVA_LONG, posicion * ENTRADA, id);
+        orden.set(ValueLayout.JAVA_INT, posicion * ENTRADA + FILA_DE_ENTRADA, fila);
+        entradas++;
+    }
+
+    // Quita del orden las entradas de institutos borrados cuando son más de la mitad
+    private void compactarOrden() {
+        if (bajas < HUECOS_MINIMOS || bajas * 2 < entradas) {
+            return;
+        }
+        int vivas = 0;
+        for (int posicion = 0; posicion < entradas; posicion++) {
+            if (filaEn(posicion) != SIN_FILA) {
+                if (vivas != posicion) {
+                    MemorySegment.copy(orden, posicion * ENTRADA, orden, vivas * ENTRADA, ENTRADA);
+                }
+                vivas++;
+            }
+        }
+        entradas = vivas;
+        bajas = 0;
+    }
+
+    private void reservarOrden(int capacidad) {
+        Arena nueva = Arena.ofShared();
+        MemorySegment ampliado = nueva.allocate(capacidad * ENTRADA, Long.BYTES);
+        if (orden != null) {
+            MemorySegment.copy(orden, 0, ampliado, 0, entradas * ENTRADA);
+            arenaOrden.close();
+        }
+        arenaOrden = nueva;
+        orden = ampliado;
+    }
+}
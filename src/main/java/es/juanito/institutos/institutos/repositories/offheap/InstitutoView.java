@@ -0,0 +1,150 @@
+package es.juanito.institutos.institutos.repositories.offheap;
+
+import es.juanito.institutos.institutos.models.Instituto;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.UUID;
+
+/**
+ * Vista reutilizable (flyweight) sobre una fila de InstitutoSlabs: se mueve de fila en fila y lee las columnas
+ * directamente de la memoria nativa. Los números, fechas y uuid se leen sin crear objetos y los textos se pueden
+ * comparar sin pasarlos a String, así que filtrar un catálogo entero no genera basura; solo las filas que se
+ * devuelven se convierten en Instituto con toInstituto().
+ * Cada hilo usa su propia vista y solo es válida mientras se tiene el lock de lectura del repositorio.
+ */
+public final class InstitutoView {
+    // Disposición de una fila: columnas de ancho fijo y, al final, las referencias a los textos en StringArena
+    static final long ID = 0;
+    static final long UUID_MSB = 8;
+    static final long UUID_LSB = 16;
+    static final long CREADO_SEGUNDOS = 24;
+    static final long ACTUALIZADO_SEGUNDOS = 32;
+    static final long FUNDACION = 40;
+    static final long CREADO_NANOS = 48;
+    static final long ACTUALIZADO_NANOS = 52;
+    static final long ESTUDIANTES = 56;
+    static final long PROFESORES = 60;
+    static final long PRESENTES = 64;
+    static final long TEXTOS = 72;
+
+    // Textos de cada fila, en este orden a partir de TEXTOS
+    public static final int NOMBRE = 0;
+    public static final int CIUDAD = 1;
+    public static final int DIRECCION = 2;
+    public static final int TELEFONO = 3;
+    public static final int EMAIL = 4;
+    public static final int TIPO = 5;
+    public static final int CODIGO = 6;
+    public static final int NOMBRE_BUSQUEDA = 7;
+    public static final int CIUDAD_BUSQUEDA = 8;
+    public static final int NUMERO_TEXTOS = 9;
+
+    static final long ANCHO = TEXTOS + NUMERO_TEXTOS * Long.BYTES;
+
+    // Bits de PRESENTES: qué columnas de ancho fijo no son null, más el valor de isDeleted
+    static final int CON_ESTUDIANTES = 1;
+    static final int CON_PROFESORES = 1 << 1;
+    static final int CON_FUNDACION = 1 << 2;
+    static final int CON_CREADO = 1 << 3;
+    static final int CON_ACTUALIZADO = 1 << 4;
+    static final int CON_UUID = 1 << 5;
+    static final int CON_BORRADO = 1 << 6;
+    static final int BORRADO = 1 << 7;
+
+    private final InstitutoSlabs slabs;
+    private MemorySegment slab;
+    private long base;
+
+    InstitutoView(InstitutoSlabs slabs) {
+        this.slabs = slabs;
+    }
+
+    public InstitutoView mover(int fila) {
+        slab = slabs.slab(fila);
+        base = InstitutoSlabs.base(fila);
+        return this;
+    }
+
+    public long id() {
+        return slab.get(ValueLayout.JAVA_LONG, base + ID);
+    }
+
+    public boolean tieneEstudiantes() {
+        return presente(CON_ESTUDIANTES);
+    }
+
+    public int numeroEstudiantes() {
+        return slab.get(ValueLayout.JAVA_INT, base + ESTUDIANTES);
+    }
+
+    public boolean tieneProfesores() {
+        return presente(CON_PROFESORES);
+    }
+
+    public int numeroProfesores() {
+        return slab.get(ValueLayout.JAVA_INT, base + PROFESORES);
+    }
+
+    public boolean tieneFundacion() {
+        return presente(CON_FUNDACION);
+    }
+
+    // Días desde 1970-01-01, como LocalDate.toEpochDay()
+    public long fundacionEpochDay() {
+        return slab.get(ValueLayout.JAVA_LONG, base + FUNDACION);
+    }
+
+    public UUID uuid() {
+        return presente(CON_UUID)
+                ? new UUID(slab.get(ValueLayout.JAVA_LONG, base + UUID_MSB), slab.get(ValueLayout.JAVA_LONG, base + UUID_LSB))
+                : null;
+    }
+
+    public String texto(int columna) {
+        return slabs.textos().get(referencia(columna));
+    }
+
+    // "Contiene" sobre los bytes UTF-8 del texto, sin crear el String
+    public boolean contiene(int columna, byte[] buscado) {
+        return slabs.textos().contains(referencia(columna), buscado);
+    }
+
+    public Instituto toInstituto() {
+        return Instituto.builder()
+                .id(id())
+                .nombre(texto(NOMBRE))
+                .ciudad(texto(CIUDAD))
+                .direccion(texto(DIRECCION))
+                .telefono(texto(TELEFONO))
+                .email(texto(EMAIL))
+                .numeroEstudiantes(tieneEstudiantes() ? numeroEstudiantes() : null)
+                .numeroProfesores(tieneProfesores() ? numeroProfesores() : null)
+                .tipo(texto(TIPO))
+                .anioFundacion(tieneFundacion() ? LocalDate.ofEpochDay(fundacionEpochDay()) : null)
+                .codigoInstituto(texto(CODIGO))
+                .createdAt(presente(CON_CREADO) ? fecha(CREADO_SEGUNDOS, CREADO_NANOS) : null)
+                .updateAt(presente(CON_ACTUALIZADO) ? fecha(ACTUALIZADO_SEGUNDOS, ACTUALIZADO_NANOS) : null)
+                .uuid(uuid())
+                .isDeleted(presente(CON_BORRADO) ? presente(BORRADO) : null)
+                .nombreBusqueda(texto(NOMBRE_BUSQUEDA))
+                .ciudadBusqueda(texto(CIUDAD_BUSQUEDA))
+                .build();
+    }
+
+    long referencia(int columna) {
+        return slab.get(ValueLayout.JAVA_LONG, base + TEXTOS + (long) columna * Long.BYTES);
+    }
+
+    private boolean presente(int bit) {
+        return (slab.get(ValueLayout.JAVA_INT, base + PRESENTES) & bit) != 0;
+    }
+
+    private LocalDateTime fecha(long segundos, long nanos) {
+        return LocalDateTime.ofEpochSecond(slab.get(ValueLayout.JAVA_LONG, base + segundos),
+                slab.get(ValueLayout.JAVA_INT, base + nanos), ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,118 @@
+package es.juanito.institutos.institutos.repositories.offheap;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Textos en UTF-8 fuera del heap, en bloques de memoria nativa a los que solo se añade.
+ * Cada texto es su longitud (int) seguida de sus bytes y se identifica con un long: bloque en los 32 bits
+ * altos y posición en los bajos; NULO representa null. Un texto que se sustituye o se borra queda como hueco
+ * hasta que el dueño decide compactar copiando los vivos a un StringArena nuevo y cerrando este.
+ * No sincroniza nada: el dueño serializa las escrituras y no cierra la arena mientras alguien lee.
+ */
+public class StringArena implements AutoCloseable {
+    public static final long NULO = -1;
+
+    private static final int BLOQUE = 1 << 20;
+    private static final ValueLayout.OfInt LONGITUD = ValueLayout.JAVA_INT_UNALIGNED;
+
+    private final Arena arena = Arena.ofShared();
+    private MemorySegment[] bloques = new MemorySegment[8];
+    private int actual = -1;
+    private long ocupado;
+    // Bytes reservados y bytes que ya no pertenecen a ningún texto vivo
+    private long reservados;
+    private long huecos;
+
+    public long put(String texto) {
+        if (texto == null) {
+            return NULO;
+        }
+        byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+        long necesario = Integer.BYTES + bytes.length;
+        if (actual < 0 || ocupado + necesario > bloques[actual].byteSize()) {
+            nuevoBloque(Math.max(BLOQUE, necesario));
+        }
+        MemorySegment bloque = bloques[actual];
+        bloque.set(LONGITUD, ocupado, bytes.length);
+        MemorySegment.copy(bytes, 0, bloque, ValueLayout.JAVA_BYTE, ocupado + Integer.BYTES, bytes.length);
+        long referencia = ((long) actual << 32) | ocupado;
+        ocupado += necesario;
+        return referencia;
+    }
+
+    public String get(long referencia) {
+        if (referencia == NULO) {
+            return null;
+        }
+        MemorySegment bloque = bloque(referencia);
+        long posicion = posicion(referencia);
+        byte[] bytes = new byte[bloque.get(LONGITUD, posicion)];
+        MemorySegment.copy(bloque, ValueLayout.JAVA_BYTE, posicion + Integer.BYTES, bytes, 0, bytes.length);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Busca buscado (UTF-8) dentro del texto sin pasarlo a String; en UTF-8 una subcadena lo es también byte a byte
+    public boolean contains(long referencia, byte[] buscado) {
+        if (referencia == NULO) {
+            return false;
+        }
+        MemorySegment bloque = bloque(referencia);
+        long inicio = posicion(referencia) + Integer.BYTES;
+        long ultimo = inicio + bloque.get(LONGITUD, inicio - Integer.BYTES) - buscado.length;
+        for (long i = inicio; i <= ultimo; i++) {
+            int j = 0;
+            while (j < buscado.length && bloque.get(ValueLayout.JAVA_BYTE, i + j) == buscado[j]) {
+                j++;
+            }
+            if (j == buscado.length) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // El texto deja de usarse; su espacio se recupera al compactar
+    public void free(long referencia) {
+        if (referencia != NULO) {
+            huecos += Integer.BYTES + bloque(referencia).get(LONGITUD, posicion(referencia));
+        }
+    }
+
+    public long reservedBytes() {
+        return reservados;
+    }
+
+    public long deadBytes() {
+        return huecos;
+    }
+
+    @Override
+    public void close() {
+        arena.close();
+    }
+
+    private void nuevoBloque(long tamano) {
+        if (++actual == bloques.length) {
+            bloques = Arrays.copyOf(bloques, bloques.length * 2);
+        }
+        bloques[actual] = arena.allocate(tamano, Long.BYTES);
+        reservados += tamano;
+        // Lo que no cabía al final del bloque anterior ya no se usará
+        if (actual > 0) {
+            huecos += bloques[actual - 1].byteSize() - ocupado;
+        }
+        ocupado = 0;
+    }
+
+    private MemorySegment bloque(long referencia) {
+        return bloques[(int) (referencia >>> 32)];
+    }
+
+    private static long posicion(long referencia) {
+        return referencia & 0xFFFF_FFFFL;
+    }
+}
@@ -0,0 +1,152 @@
+package es.juanito.institutos.institutos.repositories.offheap;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.UUID;
+
+/**
+ * Tabla hash uuid -> fila fuera del heap, con direccionamiento abierto y sondeo lineal.
+ * Cada cubo son 24 bytes (los dos long del uuid y la fila más uno, 0 si está libre), así que un millón
+ * de uuids ocupan unos 48 MB nativos y ningún objeto en el heap. Se duplica al pasar de la mitad de ocupación
+ * y los borrados desplazan hacia atrás los cubos siguientes en vez de dejar marcas.
+ * Igual que StringArena: el dueño serializa las escrituras y no se lee mientras se redimensiona.
+ */
+public class UuidIndex implements AutoCloseable {
+    private static final long CUBO = 24;
+    private static final long MSB = 0;
+    private static final long LSB = 8;
+    private static final long FILA = 16;
+
+    private Arena arena;
+    private MemorySegment cubos;
+    private long capacidad;
+    private long ocupados;
+
+    public UuidIndex() {
+        reservar(1024);
+    }
+
+    // Fila del uuid, o -1 si no está
+    public int get(UUID uuid) {
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        for (long cubo = inicio(msb, lsb); ; cubo = siguiente(cubo)) {
+            int fila = cubos.get(ValueLayout.JAVA_INT, cubo * CUBO + FILA);
+            if (fila == 0) {
+                return -1;
+            }
+            if (cubos.get(ValueLayout.JAVA_LONG, cubo * CUBO + MSB) == msb && cubos.get(ValueLayout.JAVA_LONG, cubo * CUBO + LSB) == lsb) {
+                return fila - 1;
+            }
+        }
+    }
+
+    // Un uuid repetido pasa a apuntar a la fila nueva, como un put en un mapa
+    public void put(UUID uuid, int fila) {
+        if ((ocupados + 1) * 2 > capacidad) {
+            redimensionar();
+        }
+        if (escribir(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), fila)) {
+            ocupados++;
+        }
+    }
+
+    // Solo se quita si todavía apunta a esa fila
+    public void remove(UUID uuid, int fila) {
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        long cubo = inicio(msb, lsb);
+        while (true) {
+            int guardada = cubos.get(ValueLayout.JAVA_INT, cubo * CUBO + FILA);
+            if (guardada == 0) {
+                return;
+            }
+            if (cubos.get(ValueLayout.JAVA_LONG, cubo * CUBO + MSB) == msb && cubos.get(ValueLayout.JAVA_LONG, cubo * CUBO + LSB) == lsb) {
+                if (guardada - 1 == fila) {
+                    borrar(cubo);
+                }
+                return;
+            }
+            cubo = siguiente(cubo);
+        }
+    }
+
+    public long size() {
+        return ocupados;
+    }
+
+    public long reservedBytes() {
+        return cubos.byteSize();
+    }
+
+    @Override
+    public void close() {
+        arena.close();
+    }
+
+    private boolean escribir(long msb, long lsb, int fila) {
+        long cubo = inicio(msb, lsb);
+        while (cubos.get(ValueLayout.JAVA_INT, cubo * CUBO + FILA) != 0) {
+            if (cubos.get(ValueLayout.JAVA_LONG, cubo * CUBO + MSB) == msb && cubos.get(ValueLayout.JAVA_LONG, cubo * CUBO + LSB) == lsb) {
+                cubos.set(ValueLayout.JAVA_INT, cubo * CUBO + FILA, fila + 1);
+                return false;
+            }
+            cubo = siguiente(cubo);
+        }
+        cubos.set(ValueLayout.JAVA_LONG, cubo * CUBO + MSB, msb);
+        cubos.set(ValueLayout.JAVA_LONG, cubo * CUBO + LSB, lsb);
+        cubos.set(ValueLayout.JAVA_INT, cubo * CUBO + FILA, fila + 1);
+        return true;
+    }
+
+    // Borrado sin marcas: los cubos que siguen se adelantan si su posición ideal lo permite
+    private void borrar(long hueco) {
+        long cubo = siguiente(hueco);
+        while (cubos.get(ValueLayout.JAVA_INT, cubo * CUBO + FILA) != 0) {
+            long ideal = inicio(cubos.get(ValueLayout.JAVA_LONG, cubo * CUBO + MSB), cubos.get(ValueLayout.JAVA_LONG, cubo * CUBO + LSB));
+            // El cubo puede ir al hueco si su posición ideal no está entre el hueco (excluido) y él (incluido)
+            boolean entre = hueco <= cubo ? hueco < ideal && ideal <= cubo : hueco < ideal || ideal <= cubo;
+            if (!entre) {
+                MemorySegment.copy(cubos, cubo * CUBO, cubos, hueco * CUBO, CUBO);
+                hueco = cubo;
+            }
+            cubo = siguiente(cubo);
+        }
+        cubos.asSlice(hueco * CUBO, CUBO).fill((byte) 0);
+        ocupados--;
+    }
+
+    private void redimensionar() {
+        Arena anterior = arena;
+        MemorySegment viejos = cubos;
+        long viejaCapacidad = capacidad;
+        reservar(capacidad * 2);
+        for (long cubo = 0; cubo < viejaCapacidad; cubo++) {
+            int fila = viejos.get(ValueLayout.JAVA_INT, cubo * CUBO + FILA);
+            if (fila != 0) {
+                escribir(viejos.get(ValueLayout.JAVA_LONG, cubo * CUBO + MSB), viejos.get(ValueLayout.JAVA_LONG, cubo * CUBO + LSB), fila - 1);
+            }
+        }
+        anterior.close();
+    }
+
+    // Memoria nueva, que Arena ya entrega a ceros: todos los cubos libres
+    private void reservar(long cubos) {
+        arena = Arena.ofShared();
+        this.cubos = arena.allocate(cubos * CUBO, Long.BYTES);
+        capacidad = cubos;
+    }
+
+    private long inicio(long msb, long lsb) {
+        long h = msb ^ lsb;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h & (capacidad - 1);
+    }
+
+    private long siguiente(long cubo) {
+        return (cubo + 1) & (capacidad - 1);
+    }
+}
@@ -0,0 +1,172 @@
+package es.juanito.institutos.institutos.repositories.persistence;
+
+import es.juanito.institutos.institutos.models.Instituto;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.UUID;
+
+/**
+ * Formato binario de un instituto para el log y las instantáneas.
+ * Primero el id y una máscara con los campos presentes; después solo esos campos, en orden fijo.
+ * Las claves de búsqueda no se guardan: el repositorio las vuelve a calcular al cargar.
+ * Cada texto es su longitud en bytes (int) y su UTF-8, sin el límite de 65535 bytes de writeUTF.
+ */
+public final class InstitutoCodec {
+    private static final int NOMBRE = 1;
+    private static final int CIUDAD = 1 << 1;
+    private static final int DIRECCION = 1 << 2;
+    private static final int TELEFONO = 1 << 3;
+    private static final int EMAIL = 1 << 4;
+    private static final int ESTUDIANTES = 1 << 5;
+    private static final int PROFESORES = 1 << 6;
+    private static final int TIPO = 1 << 7;
+    private static final int FUNDACION = 1 << 8;
+    private static final int CODIGO = 1 << 9;
+    private static final int CREADO = 1 << 10;
+    private static final int ACTUALIZADO = 1 << 11;
+    private static final int UUID_ = 1 << 12;
+    private static final int BORRADO = 1 << 13;
+    // isDeleted no es null y vale true
+    private static final int BORRADO_SI = 1 << 14;
+
+    private InstitutoCodec() {
+    }
+
+    public static void escribir(DataOutput salida, Instituto instituto) throws IOException {
+        int mascara = 0;
+        mascara |= instituto.getNombre() != null ? NOMBRE : 0;
+        mascara |= instituto.getCiudad() != null ? CIUDAD : 0;
+        mascara |= instituto.getDireccion() != null ? DIRECCION : 0;
+        mascara |= instituto.getTelefono() != null ? TELEFONO : 0;
+        mascara |= instituto.getEmail() != null ? EMAIL : 0;
+        mascara |= instituto.getNumeroEstudiantes() != null ? ESTUDIANTES : 0;
+        mascara |= instituto.getNumeroProfesores() != null ? PROFESORES : 0;
+        mascara |= instituto.getTipo() != null ? TIPO : 0;
+        mascara |= instituto.getAnioFundacion() != null ? FUNDACION : 0;
+        mascara |= instituto.getCodigoInstituto() != null ? CODIGO : 0;
+        mascara |= instituto.getCreatedAt() != null ? CREADO : 0;
+        mascara |= instituto.getUpdateAt() != null ? ACTUALIZADO : 0;
+        mascara |= instituto.getUuid() != null ? UUID_ : 0;
+        mascara |= instituto.getIsDeleted() != null ? BORRADO : 0;
+        mascara |= Boolean.TRUE.equals(instituto.getIsDeleted()) ? BORRADO_SI : 0;
+
+        salida.writeLong(instituto.getId());
+        salida.writeShort(mascara);
+        if ((mascara & NOMBRE) != 0) {
+            texto(salida, instituto.getNombre());
+        }
+        if ((mascara & CIUDAD) != 0) {
+            texto(salida, instituto.getCiudad());
+        }
+        if ((mascara & DIRECCION) != 0) {
+            texto(salida, instituto.getDireccion());
+        }
+        if ((mascara & TELEFONO) != 0) {
+            texto(salida, instituto.getTelefono());
+        }
+        if ((mascara & EMAIL) != 0) {
+            texto(salida, instituto.getEmail());
+        }
+        if ((mascara & ESTUDIANTES) != 0) {
+            salida.writeInt(instituto.getNumeroEstudiantes());
+        }
+        if ((mascara & PROFESORES) != 0) {
+            salida.writeInt(instituto.getNumeroProfesores());
+        }
+        if ((mascara & TIPO) != 0) {
+            texto(salida, instituto.getTipo());
+        }
+        if ((mascara & FUNDACION) != 0) {
+            salida.writeLong(instituto.getAnioFundacion().toEpochDay());
+        }
+        if ((mascara & CODIGO) != 0) {
+            texto(salida, instituto.getCodigoInstituto());
+        }
+        if ((mascara & CREADO) != 0) {
+            fechaHora(salida, instituto.getCreatedAt());
+        }
+        if ((mascara & ACTUALIZADO) != 0) {
+            fechaHora(salida, instituto.getUpdateAt());
+        }
+        if ((mascara & UUID_) != 0) {
+            salida.writeLong(instituto.getUuid().getMostSignificantBits());
+            salida.writeLong(instituto.getUuid().getLeastSignificantBits());
+        }
+    }
+
+    public static Instituto leer(DataInput entrada) throws IOException {
+        long id = entrada.readLong();
+        int mascara = entrada.readUnsignedShort();
+        var instituto = Instituto.builder().id(id);
+        if ((mascara & NOMBRE) != 0) {
+            instituto.nombre(texto(entrada));
+        }
+        if ((mascara & CIUDAD) != 0) {
+            instituto.ciudad(texto(entrada));
+        }
+        if ((mascara & DIRECCION) != 0) {
+            instituto.direccion(texto(entrada));
+        }
+        if ((mascara & TELEFONO) != 0) {
+            instituto.telefono(texto(entrada));
+        }
+        if ((mascara & EMAIL) != 0) {
+            instituto.email(texto(entrada));
+        }
+        if ((mascara & ESTUDIANTES) != 0) {
+            instituto.numeroEstudiantes(entrada.readInt());
+        }
+        if ((mascara & PROFESORES) != 0) {
+            instituto.numeroProfesores(entrada.readInt());
+        }
+        if ((mascara & TIPO) != 0) {
+            instituto.tipo(texto(entrada));
+        }
+        if ((mascara & FUNDACION) != 0) {
+            instituto.anioFundacion(LocalDate.ofEpochDay(entrada.readLong()));
+        }
+        if ((mascara & CODIGO) != 0) {
+            instituto.codigoInstituto(texto(entrada));
+        }
+        if ((mascara & CREADO) != 0) {
+            instituto.createdAt(fechaHora(entrada));
+        }
+        if ((mascara & ACTUALIZADO) != 0) {
+            instituto.updateAt(fechaHora(entrada));
+        }
+        if ((mascara & UUID_) != 0) {
+            instituto.uuid(new UUID(entrada.readLong(), entrada.readLong()));
+        }
+        if ((mascara & BORRADO) != 0) {
+            instituto.isDeleted((mascara & BORRADO_SI) != 0);
+        }
+        return instituto.build();
+    }
+
+    private static void texto(DataOutput salida, String texto) throws IOException {
+        byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+        salida.writeInt(bytes.length);
+        salida.write(bytes);
+    }
+
+    private static String texto(DataInput entrada) throws IOException {
+        byte[] bytes = new byte[entrada.readInt()];
+        entrada.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void fechaHora(DataOutput salida, LocalDateTime fechaHora) throws IOException {
+        salida.writeLong(fechaHora.toEpochSecond(ZoneOffset.UTC));
+        salida.writeInt(fechaHora.getNano());
+    }
+
+    private static LocalDateTime fechaHora(DataInput entrada) throws IOException {
+        return LocalDateTime.ofEpochSecond(entrada.readLong(), entrada.readInt(), ZoneOffset.UTC);
+    }
+}
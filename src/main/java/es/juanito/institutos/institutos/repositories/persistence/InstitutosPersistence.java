@@ -0,0 +1,235 @@
+package es.juanito.institutos.institutos.repositories.persistence;
+
+import es.juanito.institutos.institutos.models.Instituto;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+
+/**
+ * Persistencia del repositorio en memoria: log de escrituras con group commit más instantáneas.
+ * Solo existe como bean con institutos.repository.backend=file (o institutos.persistence.enabled=true);
+ * sin él el repositorio vive solo en memoria.
+ * Al arrancar se mapea la última instantánea, sin leerla, y se aplican encima los segmentos del log posteriores;
+ * el repositorio construye cada instituto de la instantánea cuando se consulta (o todos en segundo plano con preload).
+ * Cuando el segmento actual pasa del umbral se rota y en segundo plano se escribe una instantánea nueva;
+ * después se borran la instantánea y los segmentos anteriores, que ya no hacen falta.
+ */
+@Slf4j
+@Component
+@ConditionalOnExpression("'${institutos.repository.backend:memory}' == 'file' or '${institutos.persistence.enabled:false}' == 'true'")
+public class InstitutosPersistence implements AutoCloseable {
+    private final Path directorio;
+    private final boolean fsync;
+    private final long umbral;
+    private final boolean precarga;
+
+    private final ExecutorService compactador = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().daemon().name("institutos-snapshot").factory());
+    // Evita encolar otra instantánea mientras se hace una
+    private final AtomicBoolean compactando = new AtomicBoolean();
+
+    // Lo que hay en disco al arrancar
+    private long ultimaGeneracion = 0;
+    private boolean hayInstantanea;
+
+    // Se fijan en iniciar
+    private WriteAheadLog diario;
+    private Lock escritura;
+    private Iterable<Instituto> estado;
+    private LongSupplier secuencia;
+
+    public InstitutosPersistence(@Value("${institutos.persistence.dir:./data}") Path directorio,
+                                 @Value("${institutos.persistence.fsync:true}") boolean fsync,
+                                 @Value("${institutos.persistence.snapshot-threshold-mb:64}") long umbralMb,
+                                 @Value("${institutos.persistence.preload:false}") boolean precarga) throws IOException {
+        this.directorio = Files.createDirectories(directorio);
+        this.fsync = fsync;
+        this.umbral = umbralMb * 1024 * 1024;
+        this.precarga = precarga;
+    }
+
+    // Lo recuperado al arrancar: la secuencia de ids y la instantánea mapeada (null si no hay)
+    public record Recuperacion(long secuencia, MappedSnapshot instantanea) {
+    }
+
+    // Si el repositorio debe cargar entera la instantánea en segundo plano nada más arrancar
+    public boolean precarga() {
+        return precarga;
+    }
+
+    // Si hay algo guardado de una ejecución anterior
+    public boolean hayDatos() throws IOException {
+        try (var ficheros = Files.list(directorio)) {
+            return ficheros.anyMatch(f -> Snapshot.generacion(f) >= 0 || WriteAheadLog.generacion(f) >= 0);
+        }
+    }
+
+    /**
+     * Mapea la última instantánea y reproduce los segmentos del log que van detrás
+     * Los institutos de la instantánea no pasan por guardado: quien recupera los lee de la instantánea devuelta.
+     */
+    public Recuperacion recuperar(Consumer<Instituto> guardado, Consumer<Long> borrado) throws IOException {
+        long inicio = System.nanoTime();
+        var instantaneas = ficheros(Snapshot::generacion);
+        MappedSnapshot mapeada = null;
+        long secuenciaGuardada = 0;
+        long desde = 0;
+        long cargados = 0;
+        if (!instantaneas.isEmpty()) {
+            mapeada = MappedSnapshot.abrir(instantaneas.getLast());
+            secuenciaGuardada = mapeada.secuencia();
+            desde = mapeada.generacion();
+            cargados = mapeada.size();
+            hayInstantanea = true;
+            ultimaGeneracion = desde;
+        }
+        long registros = 0;
+        long primera = desde;
+        List<Path> segmentos = ficheros(WriteAheadLog::generacion).stream()
+                .filter(segmento -> WriteAheadLog.generacion(segmento) >= primera)
+                .toList();
+        for (Path segmento : segmentos) {
+            // Solo el último segmento puede acabar en una escritura a medias
+            registros += WriteAheadLog.reproducir(segmento, segmento == segmentos.getLast(), guardado, borrado);
+            ultimaGeneracion = Math.max(ultimaGeneracion, WriteAheadLog.generacion(segmento));
+        }
+        log.info("Recuperados {} institutos de la instantánea mapeada y {} registros del log en {} ms",
+                cargados, registros,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio));
+        return new Recuperacion(secuenciaGuardada, mapeada);
+    }
+
+    /**
+     * Empieza a registrar escrituras en un segmento nuevo
+     * Se llama con el lock exclusivo del repositorio cogido, después de recuperar (si había datos); ese mismo lock
+     * se coge al rotar el log, y mientras se tiene no hay ninguna escritura a medias.
+     * Si no había instantánea se hace una ahora, para que los datos de partida también queden guardados.
+     * estado se recorre sin el lock y en orden de id; si el repositorio aún no ha cargado toda la instantánea
+     * mapeada, tiene que cargarla al empezar el recorrido.
+     */
+    public void iniciar(Lock escritura, Iterable<Instituto> estado, LongSupplier secuencia) throws IOException {
+        this.escritura = escritura;
+        this.estado = estado;
+        this.secuencia = secuencia;
+        long generacion = ultimaGeneracion + 1;
+        diario = new WriteAheadLog(directorio, generacion, fsync, umbral, wal -> {
+            if (compactando.compareAndSet(false, true)) {
+                compactador.execute(this::hacerInstantanea);
+            }
+        });
+        if (!hayInstantanea) {
+            Snapshot.escribir(directorio, generacion, secuencia.getAsLong(), estado);
+            borrarAnteriores(generacion);
+        }
+    }
+
+    // Registra el instituto guardado y devuelve su número de secuencia en el log
+    public long guardado(Instituto instituto) {
+        return diario.guardado(instituto);
+    }
+
+    public long borrado(Long id) {
+        return diario.borrado(id);
+    }
+
+    // Registra un lote de altas y borrados en un solo registro, que se recupera entero o nada
+    public long lote(List<Instituto> guardados, Collection<Long> borrados) {
+        return diario.lote(guardados, borrados);
+    }
+
+    // Espera a que el registro esté en disco; se llama ya sin los locks de escritura para que los fsync se agrupen
+    public void esperar(long secuencia) {
+        diario.esperar(secuencia);
+    }
+
+    // Rota el log y hace una instantánea ahora mismo, salvo que ya se esté haciendo una
+    public void compactar() {
+        if (compactando.compareAndSet(false, true)) {
+            hacerInstantanea();
+        }
+    }
+
+    @PreDestroy
+    @Override
+    public void close() throws IOException {
+        compactador.shutdown();
+        try {
+            compactador.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (diario != null) {
+            diario.close();
+        }
+    }
+
+    private void hacerInstantanea() {
+        try {
+            long inicio = System.nanoTime();
+            long generacion;
+            long ultimoId;
+            // Con el lock nadie escribe: lo que queda en los segmentos anteriores ya está en el repositorio
+            escritura.lock();
+            try {
+                generacion = diario.rotar();
+                ultimoId = secuencia.getAsLong();
+            } finally {
+                escritura.unlock();
+            }
+            var cabecera = Snapshot.escribir(directorio, generacion, ultimoId, estado);
+            borrarAnteriores(generacion);
+            log.info("Instantánea {} con {} institutos en {} ms", generacion, cabecera.institutos(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio));
+        } catch (IOException | UncheckedIOException e) {
+            log.error("No se ha podido hacer la instantánea, se sigue con el log", e);
+        } finally {
+            compactando.set(false);
+        }
+    }
+
+    // Instantáneas, segmentos y temporales de generaciones anteriores
+    private void borrarAnteriores(long generacion) throws IOException {
+        // El renombrado de la instantánea nueva y el segmento nuevo tienen que estar en disco antes de borrar
+        // los anteriores: si no, tras una caída podría no quedar ninguna instantánea
+        try (var canal = FileChannel.open(directorio, StandardOpenOption.READ)) {
+            canal.force(true);
+        }
+        try (var ficheros = Files.list(directorio)) {
+            for (Path fichero : ficheros.toList()) {
+                long suya = Math.max(Snapshot.generacion(fichero), WriteAheadLog.generacion(fichero));
+                if ((suya >= 0 && suya < generacion) || fichero.getFileName().toString().endsWith(".tmp")) {
+                    Files.deleteIfExists(fichero);
+                }
+            }
+        }
+    }
+
+    private List<Path> ficheros(ToLongFunction<Path> generacion) throws IOException {
+        try (Stream<Path> ficheros = Files.list(directorio)) {
+            return ficheros.filter(f -> generacion.applyAsLong(f) >= 0)
+                    .sorted(Comparator.comparingLong(generacion))
+                    .toList();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package es.juanito.institutos.institutos.repositories.persistence;
+
+import es.juanito.institutos.institutos.models.Instituto;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * Instantánea mapeada en memoria con FileChannel.map.
+ * Abrirla solo lee la cabecera, cueste lo que cueste el catálogo; las tablas de ids y uuids se consultan con
+ * búsqueda binaria sobre el fichero mapeado y cada instituto se construye la primera vez que alguien lo pide.
+ * Es de solo lectura y se puede consultar desde varios hilos a la vez.
+ */
+public final class MappedSnapshot {
+    private final Path fichero;
+    private final long generacion;
+    private final long secuencia;
+    private final int institutos;
+    private final LongBuffer ids;
+    private final LongBuffer posiciones;
+    private final int conUuid;
+    private final LongBuffer uuids;
+    private final ByteBuffer[] regiones;
+
+    // Institutos ya construidos, para no decodificarlos otra vez
+    private final Map<Long, Instituto> materializados = new ConcurrentHashMap<>();
+
+    private MappedSnapshot(Path fichero, FileChannel canal) throws IOException {
+        this.fichero = fichero;
+        var cabecera = ByteBuffer.allocate(Snapshot.CABECERA);
+        while (cabecera.hasRemaining() && canal.read(cabecera, cabecera.position()) >= 0) {
+            // lee hasta completar la cabecera
+        }
+        cabecera.flip();
+        int version = cabecera.remaining() < Snapshot.CABECERA || cabecera.getInt() != Snapshot.MAGIC ? 0 : cabecera.getInt();
+        if (version != Snapshot.VERSION) {
+            throw new IOException(fichero + " no es una instantánea de institutos de la versión " + Snapshot.VERSION);
+        }
+        this.generacion = cabecera.getLong();
+        this.secuencia = cabecera.getLong();
+        this.institutos = Math.toIntExact(cabecera.getLong());
+        long tablaIds = cabecera.getLong();
+        this.conUuid = Math.toIntExact(cabecera.getLong());
+        long tablaUuids = cabecera.getLong();
+        long bytesIds = (long) institutos * Long.BYTES;
+        this.ids = canal.map(FileChannel.MapMode.READ_ONLY, tablaIds, bytesIds).asLongBuffer();
+        this.posiciones = canal.map(FileChannel.MapMode.READ_ONLY, tablaIds + bytesIds, bytesIds).asLongBuffer();
+        this.uuids = canal.map(FileChannel.MapMode.READ_ONLY, tablaUuids, (long) conUuid * Long.BYTES * 3).asLongBuffer();
+        this.regiones = new ByteBuffer[(int) ((tablaIds + Snapshot.REGION - 1) >>> Snapshot.REGION_BITS)];
+        for (int i = 0; i < regiones.length; i++) {
+            long inicio = i * Snapshot.REGION;
+            regiones[i] = canal.map(FileChannel.MapMode.READ_ONLY, inicio, Math.min(Snapshot.REGION, tablaIds - inicio));
+        }
+    }
+
+    // El mapeo sigue siendo válido aunque se cierre el canal
+    public static MappedSnapshot abrir(Path fichero) throws IOException {
+        try (var canal = FileChannel.open(fichero, StandardOpenOption.READ)) {
+            return new MappedSnapshot(fichero, canal);
+        }
+    }
+
+    public long generacion() {
+        return generacion;
+    }
+
+    public long secuencia() {
+        return secuencia;
+    }
+
+    public int size() {
+        return institutos;
+    }
+
+    public boolean contiene(long id) {
+        return buscar(id) >= 0;
+    }
+
+    // El instituto con ese id, construido solo la primera vez, o null si no está
+    public Instituto leer(long id) {
+        int posicion = buscar(id);
+        return posicion < 0 ? null : materializados.computeIfAbsent(id, clave -> decodificar(posiciones.get(posicion)));
+    }
+
+    // Id del instituto con ese uuid, o null si no está
+    public Long idDe(UUID uuid) {
+        long alto = uuid.getMostSignificantBits();
+        long bajo = uuid.getLeastSignificantBits();
+        int desde = 0;
+        int hasta = conUuid - 1;
+        while (desde <= hasta) {
+            int medio = (desde + hasta) >>> 1;
+            int comparacion = Long.compare(uuids.get(medio * 3), alto);
+            if (comparacion == 0) {
+                comparacion = Long.compare(uuids.get(medio * 3 + 1), bajo);
+            }
+            if (comparacion == 0) {
+                return uuids.get(medio * 3 + 2);
+            } else if (comparacion < 0) {
+                desde = medio + 1;
+            } else {
+                hasta = medio - 1;
+            }
+        }
+        return null;
+    }
+
+    // Todos los institutos en orden de id, reutilizando los que ya se habían construido
+    public void forEach(Consumer<Instituto> accion) {
+        for (int i = 0; i < institutos; i++) {
+            Instituto instituto = materializados.get(ids.get(i));
+            accion.accept(instituto != null ? instituto : decodificar(posiciones.get(i)));
+        }
+    }
+
+    private int buscar(long id) {
+        int desde = 0;
+        int hasta = institutos - 1;
+        while (desde <= hasta) {
+            int medio = (desde + hasta) >>> 1;
+            long actual = ids.get(medio);
+            if (actual < id) {
+                desde = medio + 1;
+            } else if (actual > id) {
+                hasta = medio - 1;
+            } else {
+                return medio;
+            }
+        }
+        return -1;
+    }
+
+    private Instituto decodificar(long posicion) {
+        ByteBuffer region = regiones[(int) (posicion >>> Snapshot.REGION_BITS)];
+        int inicio = (int) (posicion & (Snapshot.REGION - 1));
+        int longitud = region.getInt(inicio);
+        int esperado = region.getInt(inicio + Integer.BYTES);
+        byte[] datos = new byte[longitud];
+        region.get(inicio + Snapshot.REGISTRO, datos);
+        var crc = new CRC32C();
+        crc.update(datos);
+        try {
+            if ((int) crc.getValue() != esperado) {
+                throw new IOException("Registro dañado en " + fichero + " (posición " + posicion + ")");
+            }
+            return InstitutoCodec.leer(new DataInputStream(new ByteArrayInputStream(datos)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package es.juanito.institutos.institutos.repositories.persistence;
+
+import es.juanito.institutos.institutos.models.Instituto;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Instantánea completa del repositorio en snapshot-{generación}.snap.
+ * Junto con los segmentos del log desde esa misma generación reconstruye el estado: lo que se escribió
+ * mientras se hacía la instantánea está en esos segmentos, y volver a aplicarlo da el mismo resultado.
+ * Se escribe en un temporal que se renombra al terminar, así que una instantánea a medias nunca se lee.
+ * Formato, pensado para leerse con MappedSnapshot sin cargarlo:
+ * <pre>
+ * cabecera (64 bytes): magic, versión, generación, secuencia, institutos, posición de la tabla de ids,
+ *                      institutos con uuid, posición de la tabla de uuids
+ * registros:           [longitud][crc32c][instituto], en orden de id y sin cruzar nunca un límite de REGION
+ * tabla de ids:        ids ordenados y después la posición de cada registro
+ * tabla de uuids:      (uuid, id) ordenados por uuid
+ * </pre>
+ */
+public final class Snapshot {
+    static final int MAGIC = 0x494E5331; // "INS1"
+    static final int VERSION = 1;
+    static final int CABECERA = 64;
+    // Cabecera de cada registro: longitud y crc
+    static final int REGISTRO = Integer.BYTES * 2;
+    // Los registros se leen de regiones mapeadas de este tamaño (un MappedByteBuffer no pasa de 2 GB)
+    static final int REGION_BITS = 30;
+    static final long REGION = 1L << REGION_BITS;
+
+    private Snapshot() {
+    }
+
+    // Datos de la cabecera: generación del primer segmento a aplicar encima y secuencia de ids
+    public record Cabecera(long generacion, long secuencia, long institutos) {
+    }
+
+    public static Path fichero(Path directorio, long generacion) {
+        return directorio.resolve("snapshot-%020d.snap".formatted(generacion));
+    }
+
+    // Generación de una instantánea por su nombre de fichero, o -1 si no es una instantánea
+    public static long generacion(Path fichero) {
+        String nombre = fichero.getFileName().toString();
+        if (!nombre.startsWith("snapshot-") || !nombre.endsWith(".snap")) {
+            return -1;
+        }
+        return Long.parseLong(nombre, 9, nombre.length() - 5, 10);
+    }
+
+    // Los institutos tienen que venir ordenados por id, como los da el mapa del repositorio
+    public static Cabecera escribir(Path directorio, long generacion, long secuencia, Iterable<Instituto> institutos) throws IOException {
+        Path temporal = directorio.resolve(fichero(directorio, generacion).getFileName() + ".tmp");
+        var ids = new Longs();
+        var posiciones = new Longs();
+        List<long[]> uuids = new ArrayList<>();
+        var registro = new ByteArrayOutputStream(512);
+        var datos = new DataOutputStream(registro);
+        var crc = new CRC32C();
+        try (var canal = FileChannel.open(temporal, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            var salida = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(canal), 1 << 20));
+            salida.write(new byte[CABECERA]);
+            long posicion = CABECERA;
+            for (Instituto instituto : institutos) {
+                if (ids.tamano > 0 && instituto.getId() <= ids.datos[ids.tamano - 1]) {
+                    throw new IllegalArgumentException("Los institutos de una instantánea tienen que ir ordenados por id");
+                }
+                registro.reset();
+                InstitutoCodec.escribir(datos, instituto);
+                byte[] bytes = registro.toByteArray();
+                // Si el registro no cabe en lo que queda de región, se empieza en la siguiente
+                long hueco = REGION - (posicion & (REGION - 1));
+                if (REGISTRO + bytes.length > hueco) {
+                    rellenar(salida, hueco);
+                    posicion += hueco;
+                }
+                crc.reset();
+                crc.update(bytes);
+                salida.writeInt(bytes.length);
+                salida.writeInt((int) crc.getValue());
+                salida.write(bytes);
+                ids.add(instituto.getId());
+                posiciones.add(posicion);
+                if (instituto.getUuid() != null) {
+                    uuids.add(new long[]{instituto.getUuid().getMostSignificantBits(),
+                            instituto.getUuid().getLeastSignificantBits(), instituto.getId()});
+                }
+                posicion += REGISTRO + bytes.length;
+            }
+            long tablaIds = posicion;
+            for (int i = 0; i < ids.tamano; i++) {
+                salida.writeLong(ids.datos[i]);
+            }
+            for (int i = 0; i < posiciones.tamano; i++) {
+                salida.writeLong(posiciones.datos[i]);
+            }
+            long tablaUuids = tablaIds + (long) ids.tamano * Long.BYTES * 2;
+            uuids.sort(Comparator.<long[]>comparingLong(uuid -> uuid[0]).thenComparingLong(uuid -> uuid[1]));
+            for (long[] uuid : uuids) {
+                salida.writeLong(uuid[0]);
+                salida.writeLong(uuid[1]);
+                salida.writeLong(uuid[2]);
+            }
+            salida.flush();
+            // La cabecera se escribe al final, cuando ya se conocen las posiciones de las tablas
+            var cabecera = ByteBuffer.allocate(CABECERA)
+                    .putInt(MAGIC).putInt(VERSION)
+                    .putLong(generacion).putLong(secuencia).putLong(ids.tamano)
+                    .putLong(tablaIds).putLong(uuids.size()).putLong(tablaUuids)
+                    .position(0);
+            canal.write(cabecera, 0);
+            canal.force(true);
+        }
+        Files.move(temporal, fichero(directorio, generacion), StandardCopyOption.ATOMIC_MOVE);
+        return new Cabecera(generacion, secuencia, ids.tamano);
+    }
+
+    private static void rellenar(DataOutputStream salida, long bytes) throws IOException {
+        byte[] ceros = new byte[64 * 1024];
+        for (long quedan = bytes; quedan > 0; quedan -= ceros.length) {
+            salida.write(ceros, 0, (int) Math.min(quedan, ceros.length));
+        }
+    }
+
+    // Lista de long sin cajas
+    private static final class Longs {
+        private long[] datos = new long[1024];
+        private int tamano;
+
+        void add(long valor) {
+            if (tamano == datos.length) {
+                datos = Arrays.copyOf(datos, tamano * 2);
+            }
+            datos[tamano++] = valor;
+        }
+    }
+}
@@ -0,0 +1,473 @@
+package es.juanito.institutos.institutos.repositories.persistence;
+
+import es.juanito.institutos.institutos.models.Instituto;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * Log de escrituras (solo se añade al final) repartido en segmentos wal-{generación}.log.
+ * Cada registro es [longitud][crc32c][operación][datos]. Quien escribe deja el registro en un bloque en memoria
+ * y recibe su número de secuencia; un único hilo vuelca el bloque entero al fichero con un solo fsync y despierta
+ * a todos los que esperaban (group commit). Mientras se vuelca un bloque, los registros nuevos van llenando el otro.
+ * Los registros de un mismo id se añaden en el orden en que se aplican al repositorio porque se hace con la franja
+ * de ese id cogida; los de ids distintos pueden intercalarse, y el estado final de cada id no depende de eso.
+ */
+@Slf4j
+public class WriteAheadLog implements AutoCloseable {
+    static final byte GUARDADO = 1;
+    static final byte BORRADO = 2;
+    // Altas y borrados de un lote en un solo registro: con un solo crc, o se recupera entero o nada
+    static final byte LOTE = 3;
+    // Cabecera de cada registro: longitud y crc
+    private static final int CABECERA = Integer.BYTES * 2;
+    private static final byte[] CABECERA_VACIA = new byte[CABECERA];
+
+    private final Path directorio;
+    private final boolean fsync;
+    private final Consumer<WriteAheadLog> alCrecer;
+    private final long umbral;
+
+    private final Lock lock = new ReentrantLock();
+    private final Condition hayPendientes = lock.newCondition();
+    private final Condition volcado = lock.newCondition();
+
+    // Bloque que se está llenando y bloque que vuelca el hilo de escritura
+    private Bloque pendiente = new Bloque();
+    private Bloque libre = new Bloque();
+    private final DataOutputStream registro;
+
+    private FileChannel canal;
+    private long generacion;
+    private long tamano;
+    private long ultimoAsignado;
+    private long ultimoDuradero;
+    private boolean volcando;
+    private boolean cerrado;
+    // Tras un fallo de E/S no se acepta nada más: lo que está en memoria ya no se puede garantizar
+    private IOException error;
+
+    private final Thread escritor;
+
+    /**
+     * Abre un segmento nuevo con la generación indicada
+     * alCrecer se llama (desde el hilo de escritura) cada vez que el segmento pasa de umbral bytes
+     */
+    public WriteAheadLog(Path directorio, long generacion, boolean fsync, long umbral, Consumer<WriteAheadLog> alCrecer) throws IOException {
+        this.directorio = directorio;
+        this.fsync = fsync;
+        this.umbral = umbral;
+        this.alCrecer = alCrecer;
+        this.generacion = generacion;
+        this.canal = abrir(directorio, generacion);
+        this.registro = new DataOutputStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+                pendiente.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                pendiente.write(b, off, len);
+            }
+        });
+        this.escritor = Thread.ofPlatform().daemon().name("institutos-wal").start(this::escribir);
+    }
+
+    public static Path segmento(Path directorio, long generacion) {
+        return directorio.resolve("wal-%020d.log".formatted(generacion));
+    }
+
+    // Generación del segmento de un nombre de fichero, o -1 si no es un segmento
+    public static long generacion(Path fichero) {
+        String nombre = fichero.getFileName().toString();
+        if (!nombre.startsWith("wal-") || !nombre.endsWith(".log")) {
+            return -1;
+        }
+        return Long.parseLong(nombre, 4, nombre.length() - 4, 10);
+    }
+
+    public long guardado(Instituto instituto) {
+        return anotar(GUARDADO, registro -> InstitutoCodec.escribir(registro, instituto));
+    }
+
+    public long borrado(Long id) {
+        return anotar(BORRADO, registro -> registro.writeLong(id));
+    }
+
+    public long lote(List<Instituto> guardados, Collection<Long> borrados) {
+        return anotar(LOTE, registro -> {
+            registro.writeInt(guardados.size());
+            for (Instituto instituto : guardados) {
+                InstitutoCodec.escribir(registro, instituto);
+            }
+            registro.writeInt(borrados.size());
+            for (Long id : borrados) {
+                registro.writeLong(id);
+            }
+        });
+    }
+
+    // Bloquea hasta que el registro con ese número de secuencia está en disco
+    public void esperar(long secuencia) {
+        lock.lock();
+        try {
+            while (ultimoDuradero < secuencia && error == null) {
+                volcado.awaitUninterruptibly();
+            }
+            comprobarError();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Empieza un segmento nuevo y devuelve su generación
+     * Quien llama tiene que tener el lock exclusivo del repositorio, para que no lleguen registros mientras tanto:
+     * así todo lo que queda en los segmentos anteriores ya está aplicado al repositorio.
+     */
+    public long rotar() throws IOException {
+        lock.lock();
+        try {
+            while ((pendiente.tamano > 0 || volcando) && error == null) {
+                hayPendientes.signal();
+                volcado.awaitUninterruptibly();
+            }
+            comprobarError();
+            canal.close();
+            generacion++;
+            canal = abrir(directorio, generacion);
+            tamano = 0;
+            return generacion;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long generacion() {
+        lock.lock();
+        try {
+            return generacion;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Vuelca lo pendiente y cierra el segmento actual
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            cerrado = true;
+            hayPendientes.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            escritor.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        canal.close();
+    }
+
+    /**
+     * Aplica los registros válidos de un segmento y devuelve cuántos había
+     * Solo el último registro del último segmento puede ser una escritura que no llegó a terminar (incompleto o con
+     * crc incorrecto): se corta el segmento ahí. Un registro dañado con registros detrás, o al final de un segmento
+     * que no es el último, es corrupción y la recuperación falla en lugar de perder lo que va después.
+     */
+    public static long reproducir(Path segmento, boolean ultimo, Consumer<Instituto> guardado, Consumer<Long> borrado) throws IOException {
+        long registros = 0;
+        long valido = 0;
+        var crc = new CRC32C();
+        byte[] datos = new byte[256];
+        try (var canal = FileChannel.open(segmento, StandardOpenOption.READ);
+             var entrada = new DataInputStream(new BufferedInputStream(Channels.newInputStream(canal), 1 << 20))) {
+            long tamano = canal.size();
+            while (true) {
+                int longitud;
+                int esperado;
+                try {
+                    longitud = entrada.readInt();
+                    esperado = entrada.readInt();
+                    // Una longitud que no cabe en lo que queda tampoco se intenta leer
+                    if (longitud <= 0 || longitud > tamano - valido - CABECERA) {
+                        break;
+                    }
+                    if (datos.length < longitud) {
+                        datos = new byte[Math.max(longitud, datos.length * 2)];
+                    }
+                    entrada.readFully(datos, 0, longitud);
+                } catch (EOFException e) {
+                    break;
+                }
+                crc.reset();
+                crc.update(datos, 0, longitud);
+                if ((int) crc.getValue() != esperado) {
+                    break;
+                }
+                var registro = new DataInputStream(new ByteArrayInputStream(datos, 0, longitud));
+                switch (registro.readByte()) {
+                    case GUARDADO -> guardado.accept(InstitutoCodec.leer(registro));
+                    case BORRADO -> borrado.accept(registro.readLong());
+                    case LOTE -> {
+                        for (int i = registro.readInt(); i > 0; i--) {
+                            guardado.accept(InstitutoCodec.leer(registro));
+                        }
+                        for (int i = registro.readInt(); i > 0; i--) {
+                            borrado.accept(registro.readLong());
+                        }
+                    }
+                    default -> throw new IOException("Operación desconocida en " + segmento);
+                }
+                registros++;
+                valido += CABECERA + longitud;
+            }
+            if (valido < tamano && (!ultimo || !esCola(canal, valido))) {
+                long detras = validosDetras(canal, valido);
+                log.error("Registro dañado en {} (posición {}) con {} registros detrás; no se recupera", segmento, valido,
+                        detras < 0 ? "un número desconocido de" : detras);
+                throw new IOException("Registro dañado en " + segmento + " (posición " + valido + "): se perderían "
+                        + (detras < 0 ? "los registros" : detras + " registros") + " posteriores"
+                        + (ultimo ? "" : " y los segmentos siguientes"));
+            }
+        }
+        try (var canal = FileChannel.open(segmento, StandardOpenOption.WRITE)) {
+            if (canal.size() > valido) {
+                log.warn("Descartados {} bytes incompletos al final de {}", canal.size() - valido, segmento);
+                canal.truncate(valido);
+                canal.force(true);
+            }
+        }
+        return registros;
+    }
+
+    // Si lo que empieza en la posición es la escritura que no llegó a terminar: un registro que llega hasta el final
+    // del fichero, una cabecera incompleta o solo ceros (el sistema de ficheros amplió el fichero y no llegaron los datos)
+    private static boolean esCola(FileChannel canal, long posicion) throws IOException {
+        long tamano = canal.size();
+        var cabecera = ByteBuffer.allocate(CABECERA);
+        canal.read(cabecera, posicion);
+        cabecera.flip();
+        if (cabecera.remaining() < CABECERA) {
+            return true;
+        }
+        int longitud = cabecera.getInt();
+        if (longitud > 0 && posicion + CABECERA + longitud >= tamano) {
+            return true;
+        }
+        var resto = ByteBuffer.allocate(64 * 1024);
+        for (long leido = posicion; leido < tamano; leido += resto.position()) {
+            resto.clear();
+            canal.read(resto, leido);
+            for (int i = 0; i < resto.position(); i++) {
+                if (resto.get(i) != 0) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // Registros válidos que siguen a uno dañado, saltándolo con su longitud; -1 si esa longitud no sirve para saltarlo
+    private static long validosDetras(FileChannel canal, long danado) throws IOException {
+        var cabecera = ByteBuffer.allocate(CABECERA);
+        canal.read(cabecera, danado);
+        cabecera.flip();
+        int longitud = cabecera.remaining() == CABECERA ? cabecera.getInt() : -1;
+        if (longitud <= 0 || longitud > canal.size() - danado - CABECERA) {
+            return -1;
+        }
+        return contarValidos(canal, danado + CABECERA + longitud);
+    }
+
+    // Registros válidos seguidos desde una posición
+    private static long contarValidos(FileChannel canal, long posicion) throws IOException {
+        long tamano = canal.size();
+        long validos = 0;
+        var crc = new CRC32C();
+        var cabecera = ByteBuffer.allocate(CABECERA);
+        while (posicion + CABECERA <= tamano) {
+            cabecera.clear();
+            canal.read(cabecera, posicion);
+            cabecera.flip();
+            int longitud = cabecera.getInt();
+            int esperado = cabecera.getInt();
+            if (longitud <= 0 || longitud > tamano - posicion - CABECERA) {
+                break;
+            }
+            var datos = ByteBuffer.allocate(longitud);
+            canal.read(datos, posicion + CABECERA);
+            crc.reset();
+            crc.update(datos.flip());
+            if ((int) crc.getValue() != esperado) {
+                break;
+            }
+            validos++;
+            posicion += CABECERA + longitud;
+        }
+        return validos;
+    }
+
+    // Datos de un registro detrás de su operación
+    @FunctionalInterface
+    private interface Contenido {
+        void escribir(DataOutputStream registro) throws IOException;
+    }
+
+    private long anotar(byte operacion, Contenido contenido) {
+        lock.lock();
+        try {
+            comprobarError();
+            if (cerrado) {
+                throw new IllegalStateException("El log de escrituras está cerrado");
+            }
+            int inicio = pendiente.tamano;
+            try {
+                pendiente.write(CABECERA_VACIA, 0, CABECERA);
+                registro.writeByte(operacion);
+                contenido.escribir(registro);
+            } catch (IOException | RuntimeException e) {
+                // Un registro a medias en el bloque cortaría la recuperación ahí y perdería los siguientes
+                pendiente.tamano = inicio;
+                throw e instanceof IOException fallo ? new UncheckedIOException(fallo) : (RuntimeException) e;
+            }
+            pendiente.cerrarRegistro(inicio);
+            hayPendientes.signal();
+            return ++ultimoAsignado;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Bucle del hilo de escritura: coge todo lo acumulado, lo escribe con un fsync y avisa a los que esperan
+    private void escribir() {
+        while (true) {
+            Bloque bloque;
+            long hasta;
+            FileChannel destino;
+            lock.lock();
+            try {
+                while (pendiente.tamano == 0 && !cerrado) {
+                    hayPendientes.awaitUninterruptibly();
+                }
+                if (pendiente.tamano == 0) {
+                    return;
+                }
+                bloque = pendiente;
+                pendiente = libre;
+                libre = bloque;
+                hasta = ultimoAsignado;
+                destino = canal;
+                volcando = true;
+            } finally {
+                lock.unlock();
+            }
+
+            IOException fallo = null;
+            try {
+                bloque.volcar(destino, fsync);
+            } catch (IOException e) {
+                log.error("No se ha podido escribir en el log de escrituras", e);
+                fallo = e;
+            }
+
+            boolean crecido;
+            lock.lock();
+            try {
+                volcando = false;
+                if (fallo != null) {
+                    error = fallo;
+                } else {
+                    ultimoDuradero = hasta;
+                }
+                tamano += bloque.tamano;
+                bloque.tamano = 0;
+                crecido = tamano >= umbral;
+                volcado.signalAll();
+                if (fallo != null) {
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (crecido) {
+                alCrecer.accept(this);
+            }
+        }
+    }
+
+    private void comprobarError() {
+        if (error != null) {
+            throw new UncheckedIOException("El log de escrituras ha fallado, el repositorio ya no acepta escrituras", error);
+        }
+    }
+
+    private static FileChannel abrir(Path directorio, long generacion) throws IOException {
+        return FileChannel.open(segmento(directorio, generacion),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    // Buffer que crece sin los synchronized de ByteArrayOutputStream
+    private static final class Bloque {
+        private byte[] datos = new byte[64 * 1024];
+        private int tamano;
+        private final CRC32C crc = new CRC32C();
+
+        void write(int b) {
+            asegurar(1);
+            datos[tamano++] = (byte) b;
+        }
+
+        void write(byte[] b, int off, int len) {
+            asegurar(len);
+            System.arraycopy(b, off, datos, tamano, len);
+            tamano += len;
+        }
+
+        // Rellena la cabecera del registro que empieza en inicio con su longitud y su crc
+        void cerrarRegistro(int inicio) {
+            int longitud = tamano - inicio - CABECERA;
+            crc.reset();
+            crc.update(datos, inicio + CABECERA, longitud);
+            ByteBuffer.wrap(datos, inicio, CABECERA).putInt(longitud).putInt((int) crc.getValue());
+        }
+
+        void volcar(FileChannel canal, boolean fsync) throws IOException {
+            var buffer = ByteBuffer.wrap(datos, 0, tamano);
+            while (buffer.hasRemaining()) {
+                canal.write(buffer);
+            }
+            if (fsync) {
+                canal.force(false);
+            }
+        }
+
+        private void asegurar(int bytes) {
+            if (tamano + bytes > datos.length) {
+                datos = Arrays.copyOf(datos, Math.max(tamano + bytes, datos.length * 2));
+            }
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package es.juanito.institutos.institutos.services;
+
+import es.juanito.institutos.institutos.dto.InstitutoResponseDto;
+
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Listado completo de institutos ya mapeado a DTO, ordenado por id.
+ * Es una instantánea inmutable y versionada: leerla es leer una referencia y cada escritura
+ * publica una nueva en la que solo se sustituyen, añaden o quitan las entradas afectadas,
+ * sin volver a mapear el resto.
+ * Las entradas van en trozos de unos cientos: la instantánea nueva comparte con la anterior todos los
+ * trozos salvo los que cambian, así que una escritura copia un trozo y el índice de trozos, no el listado.
+ * Cada escritura vuelve a leer del repositorio los institutos que ha tocado con el lock del listado cogido:
+ * si dos escrituras del mismo id se cruzan, la última en llegar aquí lee lo último que se guardó.
+ */
+class InstitutosListado {
+
+    // Tamaño de los trozos; uno que crece hasta el doble se parte
+    static final int TROZO = 512;
+
+    record Instantanea(long version, List<InstitutoResponseDto> institutos) {
+    }
+
+    private volatile Instantanea actual;
+    private final Lock escritura = new ReentrantLock();
+
+    // Devuelve el listado, construyéndolo la primera vez con el cargador
+    Instantanea get(Supplier<List<InstitutoResponseDto>> cargador) {
+        Instantanea instantanea = actual;
+        if (instantanea != null) {
+            return instantanea;
+        }
+        escritura.lock();
+        try {
+            if (actual == null) {
+                List<InstitutoResponseDto> institutos = new ArrayList<>(cargador.get());
+                institutos.sort((a, b) -> Long.compare(a.getId(), b.getId()));
+                actual = new Instantanea(0L, Trozos.de(institutos));
+            }
+            return actual;
+        } finally {
+            escritura.unlock();
+        }
+    }
+
+    // Altas, modificaciones y borrados de los ids escritos: el lector da su estado en el repositorio (vacío si ya no está)
+    // y todos los cambios se publican en una sola instantánea
+    void actualizar(Collection<Long> ids, Function<Long, Optional<InstitutoResponseDto>> lector) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        escritura.lock();
+        try {
+            if (actual == null) {
+                // Aún no se ha pedido el listado, se cargará completo cuando se pida
+                return;
+            }
+            // null para los que hay que quitar
+            SortedMap<Long, InstitutoResponseDto> cambios = new TreeMap<>();
+            for (Long id : ids) {
+                cambios.put(id, lector.apply(id).orElse(null));
+            }
+            actual = new Instantanea(actual.version() + 1, ((Trozos) actual.institutos()).aplicar(cambios));
+        } finally {
+            escritura.unlock();
+        }
+    }
+
+    // Lista inmutable formada por trozos ordenados por id; cada trozo es un array que no se modifica nunca
+    static final class Trozos extends AbstractList<InstitutoResponseDto> implements RandomAccess {
+        private final InstitutoResponseDto[][] trozos;
+        // Posición en la lista del primer instituto de cada trozo
+        private final int[] inicios;
+        private final int tamano;
+
+        private Trozos(InstitutoResponseDto[][] trozos) {
+            this.trozos = trozos;
+            this.inicios = new int[trozos.length];
+            int posicion = 0;
+            for (int i = 0; i < trozos.length; i++) {
+                inicios[i] = posicion;
+                posicion += trozos[i].length;
+            }
+            this.tamano = posicion;
+        }
+
+        static Trozos de(List<InstitutoResponseDto> ordenados) {
+            List<InstitutoResponseDto[]> trozos = new ArrayList<>(ordenados.size() / TROZO + 1);
+            partir(ordenados.toArray(InstitutoResponseDto[]::new), trozos);
+            return new Trozos(trozos.toArray(InstitutoResponseDto[][]::new));
+        }
+
+        @Override
+        public InstitutoResponseDto get(int indice) {
+            Objects.checkIndex(indice, tamano);
+            int trozo = trozoDePosicion(indice);
+            return trozos[trozo][indice - inicios[trozo]];
+        }
+
+        @Override
+        public int size() {
+            return tamano;
+        }
+
+        // Recorridos trozo a trozo, sin buscar el trozo de cada posición
+        @Override
+        public Iterator<InstitutoResponseDto> iterator() {
+            return new Iterator<>() {
+                private int trozo;
+                private int posicion;
+
+                @Override
+                public boolean hasNext() {
+                    while (trozo < trozos.length && posicion == trozos[trozo].length) {
+                        trozo++;
+                        posicion = 0;
+                    }
+                    return trozo < trozos.length;
+                }
+
+                @Override
+                public InstitutoResponseDto next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return trozos[trozo][posicion++];
+                }
+            };
+        }
+
+        @Override
+        public void forEach(Consumer<? super InstitutoResponseDto> accion) {
+            for (InstitutoResponseDto[] trozo : trozos) {
+                for (InstitutoResponseDto instituto : trozo) {
+                    accion.accept(instituto);
+                }
+            }
+        }
+
+        // Nueva lista con los cambios (null = quitar): los trozos sin cambios se comparten, el resto se copia
+        Trozos aplicar(SortedMap<Long, InstitutoResponseDto> cambios) {
+            List<InstitutoResponseDto[]> nuevos = new ArrayList<>(trozos.length + 1);
+            Iterator<Map.Entry<Long, InstitutoResponseDto>> pendientes = cambios.entrySet().iterator();
+            Map.Entry<Long, InstitutoResponseDto> cambio = pendientes.next();
+            // Sin trozos, todo va a uno vacío
+            InstitutoResponseDto[][] actuales = trozos.length == 0 ? new InstitutoResponseDto[][]{{}} : trozos;
+            for (int i = 0; i < actuales.length; i++) {
+                // Cada trozo recibe los ids menores que el primero del siguiente; el último, todos los que queden
+                long hasta = i + 1 < actuales.length ? actuales[i + 1][0].getId() : Long.MAX_VALUE;
+                List<Map.Entry<Long, InstitutoResponseDto>> suyos = new ArrayList<>();
+                while (cambio != null && (cambio.getKey() < hasta || i + 1 == actuales.length)) {
+                    suyos.add(cambio);
+                    cambio = pendientes.hasNext() ? pendientes.next() : null;
+                }
+                if (suyos.isEmpty()) {
+                    nuevos.add(actuales[i]);
+                } else {
+                    partir(mezclar(actuales[i], suyos), nuevos);
+                }
+            }
+            return new Trozos(nuevos.toArray(InstitutoResponseDto[][]::new));
+        }
+
+        // Índice del trozo que contiene la posición
+        private int trozoDePosicion(int indice) {
+            int bajo = 0;
+            int alto = inicios.length - 1;
+            while (bajo < alto) {
+                int medio = (bajo + alto + 1) >>> 1;
+                if (inicios[medio] <= indice) {
+                    bajo = medio;
+                } else {
+                    alto = medio - 1;
+                }
+            }
+            return bajo;
+        }
+
+        // Mezcla ordenada de un trozo con sus cambios
+        private static InstitutoResponseDto[] mezclar(InstitutoResponseDto[] trozo, List<Map.Entry<Long, InstitutoResponseDto>> cambios) {
+            List<InstitutoResponseDto> mezcla = new ArrayList<>(trozo.length + cambios.size());
+            int i = 0;
+            for (Map.Entry<Long, InstitutoResponseDto> cambio : cambios) {
+                while (i < trozo.length && trozo[i].getId() < cambio.getKey()) {
+                    mezcla.add(trozo[i++]);
+                }
+                if (i < trozo.length && trozo[i].getId().equals(cambio.getKey())) {
+                    i++;
+                }
+                if (cambio.getValue() != null) {
+                    mezcla.add(cambio.getValue());
+                }
+            }
+            while (i < trozo.length) {
+                mezcla.add(trozo[i++]);
+            }
+            return mezcla.toArray(InstitutoResponseDto[]::new);
+        }
+
+        // Añade el trozo partido en trozos de TROZO si ha pasado del doble; los vacíos desaparecen
+        private static void partir(InstitutoResponseDto[] trozo, List<InstitutoResponseDto[]> destino) {
+            if (trozo.length <= 2 * TROZO) {
+                if (trozo.length > 0) {
+                    destino.add(trozo);
+                }
+                return;
+            }
+            for (int desde = 0; desde < trozo.length; desde += TROZO) {
+                destino.add(Arrays.copyOfRange(trozo, desde, Math.min(desde + TROZO, trozo.length)));
+            }
+        }
+    }
+}
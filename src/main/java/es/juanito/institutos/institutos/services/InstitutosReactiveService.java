@@ -0,0 +1,36 @@
+package es.juanito.institutos.institutos.services;
+
+import es.juanito.institutos.institutos.dto.InstitutoCreateDto;
+import es.juanito.institutos.institutos.dto.InstitutoCriteriaDto;
+import es.juanito.institutos.institutos.dto.InstitutoPageRequestDto;
+import es.juanito.institutos.institutos.dto.InstitutoPageResponseDto;
+import es.juanito.institutos.institutos.dto.InstitutoResponseDto;
+import es.juanito.institutos.institutos.dto.InstitutoStatsDto;
+import es.juanito.institutos.institutos.dto.InstitutoUpdateDto;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Las mismas operaciones que InstitutosService pero con Mono y Flux.
+ * Usa el mismo repositorio y la misma caché, así que las dos APIs ven siempre los mismos datos.
+ */
+public interface InstitutosReactiveService {
+    Flux<InstitutoResponseDto> findAll(InstitutoCriteriaDto criteria);
+
+    Mono<InstitutoPageResponseDto> findPage(InstitutoCriteriaDto criteria, InstitutoPageRequestDto pageRequest);
+
+    // Todo el catálogo por lotes, sin tenerlo entero en memoria
+    Flux<InstitutoResponseDto> streamAll();
+
+    Mono<InstitutoStatsDto> stats();
+
+    Mono<InstitutoResponseDto> findById(Long id);
+
+    Mono<InstitutoResponseDto> findByUuid(String uuid);
+
+    Mono<InstitutoResponseDto> save(InstitutoCreateDto institutoCreateDto);
+
+    Mono<InstitutoResponseDto> update(Long id, InstitutoUpdateDto institutoUpdateDto);
+
+    Mono<Void> deleteById(Long id);
+}
@@ -0,0 +1,82 @@
+package es.juanito.institutos.institutos.services;
+
+import es.juanito.institutos.institutos.dto.InstitutoCreateDto;
+import es.juanito.institutos.institutos.dto.InstitutoCriteriaDto;
+import es.juanito.institutos.institutos.dto.InstitutoPageRequestDto;
+import es.juanito.institutos.institutos.dto.InstitutoPageResponseDto;
+import es.juanito.institutos.institutos.dto.InstitutoResponseDto;
+import es.juanito.institutos.institutos.dto.InstitutoStatsDto;
+import es.juanito.institutos.institutos.dto.InstitutoUpdateDto;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Adapta InstitutosService a Mono y Flux: validación, caché, listado y métricas son los del servicio normal.
+ * Todo es perezoso, no se toca el repositorio hasta que alguien se suscribe.
+ * El servicio bloquea: jdbc espera a la base de datos, file al fsync del log y a cargar la instantánea, y las
+ * escrituras esperan a sus locks. Por eso todo se suscribe en boundedElastic y no en el hilo de la petición, que
+ * queda libre mientras tanto (InstitutosReactiveHandler responde con ServerResponse.async).
+ */
+@RequiredArgsConstructor
+@Service
+public class InstitutosReactiveServiceImpl implements InstitutosReactiveService {
+    private final InstitutosService institutosService;
+
+    @Override
+    public Flux<InstitutoResponseDto> findAll(InstitutoCriteriaDto criteria) {
+        return Flux.defer(() -> Flux.fromIterable(institutosService.findAll(criteria)))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public Mono<InstitutoPageResponseDto> findPage(InstitutoCriteriaDto criteria, InstitutoPageRequestDto pageRequest) {
+        return Mono.fromSupplier(() -> institutosService.findPage(criteria, pageRequest))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public Flux<InstitutoResponseDto> streamAll() {
+        // fromStream cierra el Stream al terminar o al cancelar el suscriptor
+        return Flux.fromStream(institutosService::streamAll)
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public Mono<InstitutoStatsDto> stats() {
+        return Mono.fromSupplier(institutosService::stats)
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public Mono<InstitutoResponseDto> findById(Long id) {
+        return Mono.fromSupplier(() -> institutosService.findById(id))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public Mono<InstitutoResponseDto> findByUuid(String uuid) {
+        return Mono.fromSupplier(() -> institutosService.findByUuid(uuid))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public Mono<InstitutoResponseDto> save(InstitutoCreateDto institutoCreateDto) {
+        return Mono.fromSupplier(() -> institutosService.save(institutoCreateDto))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public Mono<InstitutoResponseDto> update(Long id, InstitutoUpdateDto institutoUpdateDto) {
+        return Mono.fromSupplier(() -> institutosService.update(id, institutoUpdateDto))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public Mono<Void> deleteById(Long id) {
+        return Mono.<Void>fromRunnable(() -> institutosService.deleteById(id))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+}
@@ -1,15 +1,39 @@
 package es.juanito.institutos.institutos.services;
 
+import es.juanito.institutos.institutos.dto.InstitutoBulkItemDto;
+import es.juanito.institutos.institutos.dto.InstitutoBulkResultDto;
 import es.juanito.institutos.institutos.dto.InstitutoCreateDto;
+import es.juanito.institutos.institutos.dto.InstitutoCriteriaDto;
+import es.juanito.institutos.institutos.dto.InstitutoPageRequestDto;
+import es.juanito.institutos.institutos.dto.InstitutoPageResponseDto;
 import es.juanito.institutos.institutos.dto.InstitutoResponseDto;
+import es.juanito.institutos.institutos.dto.InstitutoStatsDto;
 import es.juanito.institutos.institutos.dto.InstitutoUpdateDto;
 import es.juanito.institutos.institutos.models.Instituto;
 import org.springframework.stereotype.Service;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Service
 public interface InstitutosService {
-    List<InstitutoResponseDto> findAll(String ciudad, String nombre);
+    List<InstitutoResponseDto> findAll(InstitutoCriteriaDto criteria);
+
+    InstitutoPageResponseDto findPage(InstitutoCriteriaDto criteria, InstitutoPageRequestDto pageRequest);
+
+    // Atajos para buscar solo por ciudad y nombre
+    default List<InstitutoResponseDto> findAll(String ciudad, String nombre) {
+        return findAll(InstitutoCriteriaDto.builder().ciudad(ciudad).nombre(nombre).build());
+    }
+
+    default InstitutoPageResponseDto findPage(String ciudad, String nombre, InstitutoPageRequestDto pageRequest) {
+        return findPage(InstitutoCriteriaDto.builder().ciudad(ciudad).nombre(nombre).build(), pageRequest);
+    }
+
+    // Recorre todo el catálogo de forma perezosa, hay que cerrar el Stream al terminar
+    Stream<InstitutoResponseDto> streamAll();
+
+    // Totales por ciudad y por tipo, sin recorrer el catálogo
+    InstitutoStatsDto stats();
 
     InstitutoResponseDto findById(Long id);
 
@@ -20,4 +44,7 @@ public interface InstitutosService {
     InstitutoResponseDto update(Long id, InstitutoUpdateDto institutoUpdateDto);
 
     void deleteById(Long id);
+
+    // Altas, modificaciones y borrados en lote, con un resultado por operación
+    List<InstitutoBulkResultDto> bulk(List<InstitutoBulkItemDto> operaciones);
 }
@@ -1,60 +1,211 @@
 package es.juanito.institutos.institutos.services;
 
+import es.juanito.institutos.institutos.cache.InstitutosCache;
+import es.juanito.institutos.institutos.dto.InstitutoBulkItemDto;
+import es.juanito.institutos.institutos.dto.InstitutoBulkResultDto;
 import es.juanito.institutos.institutos.dto.InstitutoCreateDto;
+import es.juanito.institutos.institutos.dto.InstitutoCriteriaDto;
+import es.juanito.institutos.institutos.dto.InstitutoPageRequestDto;
+import es.juanito.institutos.institutos.dto.InstitutoPageResponseDto;
 import es.juanito.institutos.institutos.dto.InstitutoResponseDto;
+import es.juanito.institutos.institutos.dto.InstitutoStatsDto;
 import es.juanito.institutos.institutos.dto.InstitutoUpdateDto;
+import es.juanito.institutos.institutos.exceptions.InstitutoBadRequestException;
 import es.juanito.institutos.institutos.exceptions.InstitutoBadUuidException;
 import es.juanito.institutos.institutos.exceptions.InstitutoNotFoundException;
 import es.juanito.institutos.institutos.mappers.InstitutoMapper;
 import es.juanito.institutos.institutos.models.Instituto;
 import es.juanito.institutos.institutos.repositories.InstitutosRepository;
+import io.micrometer.core.annotation.Timed;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.cache.annotation.CacheConfig;
-import org.springframework.cache.annotation.CacheEvict;
-import org.springframework.cache.annotation.CachePut;
-import org.springframework.cache.annotation.Cacheable;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
-import java.util.UUID;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 
-@CacheConfig(cacheNames = {"institutos"})
 @Slf4j
 @RequiredArgsConstructor
 @Service
+// Un timer por método con percentiles e histograma; la etiqueta exception separa los resultados (none, not found, uuid mal formado...)
+@Timed(value = "institutos.service", percentiles = {0.5, 0.95, 0.99}, histogram = true)
 public class InstitutosServiceImpl implements InstitutosService {
     private final InstitutosRepository institutosRepository;
     private final InstitutoMapper institutoMapper;
+    private final InstitutosCache institutosCache;
+    private final Validator validator;
+    // Listado completo ya mapeado para GET sin filtros
+    private final InstitutosListado listado = new InstitutosListado();
+
+    // Institutos que se leen del repositorio en cada paso de streamAll
+    private static final int LOTE_EXPORTACION = 1000;
+
+    // Campos por los que se puede ordenar una página, además del id
+    private static final Map<String, Comparator<InstitutoResponseDto>> ORDENES = Map.of(
+            "nombre", Comparator.comparing(InstitutoResponseDto::getNombre, Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER)),
+            "ciudad", Comparator.comparing(InstitutoResponseDto::getCiudad, Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER)),
+            "numeroEstudiantes", Comparator.comparing(InstitutoResponseDto::getNumeroEstudiantes, Comparator.nullsLast(Comparator.naturalOrder())),
+            "numeroProfesores", Comparator.comparing(InstitutoResponseDto::getNumeroProfesores, Comparator.nullsLast(Comparator.naturalOrder())),
+            "anioFundacion", Comparator.comparing(InstitutoResponseDto::getAnioFundacion, Comparator.nullsLast(Comparator.naturalOrder()))
+    );
+    // Órdenes que el repositorio resuelve con sus índices ordenados, sin ordenar el catálogo
+    private static final Set<String> ORDENES_INDEXADOS = Set.of("numeroEstudiantes", "numeroProfesores", "anioFundacion");
 
 
     @Override
-    public List<InstitutoResponseDto> findAll(String ciudad, String nombre) {
-        // Si todo está vacío o nulo, devolvemos todas los institutos
-        if ((ciudad == null || ciudad.isEmpty()) && (nombre == null || nombre.isEmpty())) {
-            log.info("Buscando todos los institutos");
-            return institutoMapper.toResponseDtoList(institutosRepository.findAll());
-        }
-        // Si la ciudad no está vacía, pero el nombre si, buscamos por ciudad
-        if ((ciudad != null && !ciudad.isEmpty()) && (nombre == null || nombre.isEmpty())) {
-            log.info("Buscando institutos por ciudad: " + ciudad);
-            return institutoMapper.toResponseDtoList(institutosRepository.findAllByCiudad(ciudad));
-        }
-        // Si la ciudad está vacía, pero el nombre no, buscamos por nombre
-        if (ciudad == null || ciudad.isEmpty()) {
-            log.info("Buscando institutos por nombre: " + nombre);
-            return institutoMapper.toResponseDtoList(institutosRepository.findAllByNombre(nombre));
-        }
-        // Si el numero y el titular no están vacíos, buscamos por ambos
-        log.info("Buscando institutos por ciudad: " + ciudad + " y nombre: " + nombre);
-        return institutoMapper.toResponseDtoList(institutosRepository.findAllByCiudadAndNombre(ciudad, nombre));
-    }
-    // Cachea con el id como key
+    public List<InstitutoResponseDto> findAll(InstitutoCriteriaDto criteria) {
+        // Sin filtros, devolvemos el listado completo ya mapeado
+        if (criteria.sinFiltros()) {
+            log.debug("Buscando todos los institutos");
+            return listado.get(() -> institutoMapper.toResponseDtoList(institutosRepository.findAll())).institutos();
+        }
+        // Con filtros, el repositorio elige el índice por el que empezar
+        log.debug("Buscando institutos por: {}", criteria);
+        return institutoMapper.toResponseDtoList(institutosRepository.findAll(criteria));
+    }
+    @Override
+    public InstitutoPageResponseDto findPage(InstitutoCriteriaDto criteria, InstitutoPageRequestDto pageRequest) {
+        int size = pageRequest.getSize() != null ? pageRequest.getSize() : InstitutoPageRequestDto.SIZE_POR_DEFECTO;
+        int page = pageRequest.getPage() != null ? pageRequest.getPage() : 0;
+        Long after = pageRequest.getAfter();
+        if (size < 1 || size > InstitutoPageRequestDto.SIZE_MAXIMO) {
+            throw new InstitutoBadRequestException("El tamaño de página debe estar entre 1 y " + InstitutoPageRequestDto.SIZE_MAXIMO);
+        }
+        if (page < 0) {
+            throw new InstitutoBadRequestException("El número de página no puede ser negativo");
+        }
+        // sort=campo o sort=campo,desc
+        String[] sort = pageRequest.getSort() == null || pageRequest.getSort().isBlank()
+                ? new String[]{"id"} : pageRequest.getSort().split(",");
+        String campo = sort[0].trim();
+        boolean descendente = sort.length > 1 && sort[1].trim().equalsIgnoreCase("desc");
+        boolean porId = campo.equals("id");
+        if (!porId && !ORDENES.containsKey(campo)) {
+            throw new InstitutoBadRequestException("No se puede ordenar por " + campo);
+        }
+        if (after != null && !porId) {
+            throw new InstitutoBadRequestException("El cursor after solo se puede usar ordenando por id");
+        }
+        // Con más de dos parámetros SLF4J crea un array aunque el nivel esté desactivado
+        if (log.isDebugEnabled()) {
+            log.debug("Buscando página {} de {} institutos por {}, sort={}, after={}",
+                    page, size, criteria, pageRequest.getSort(), after);
+        }
+
+        // Cursor sin filtros: lo resuelve el índice ordenado del repositorio en O(log n + size)
+        if (after != null && criteria.sinFiltros()) {
+            var institutos = institutosRepository.findAllAfter(after, size + 1, descendente);
+            return pagina(institutoMapper.toResponseDtoList(institutos), null, size, institutosRepository.count(), true);
+        }
+
+        // Orden numérico sin filtros: la página sale del índice ordenado del repositorio
+        if (ORDENES_INDEXADOS.contains(campo) && criteria.sinFiltros()) {
+            var institutos = institutosRepository.findAllOrderedBy(campo, descendente, (long) page * size, size + 1);
+            return pagina(institutoMapper.toResponseDtoList(institutos), page, size, institutosRepository.count(), false);
+        }
+
+        // Resto de casos sobre el listado, que ya viene ordenado por id
+        List<InstitutoResponseDto> institutos = findAll(criteria);
+        long total = institutos.size();
+        if (descendente && porId) {
+            institutos = institutos.reversed();
+        }
+        int desde;
+        if (after != null) {
+            desde = despuesDe(institutos, after, descendente);
+        } else {
+            desde = (int) Math.min((long) page * size, institutos.size());
+        }
+        int hasta = (int) Math.min((long) desde + size + 1, institutos.size());
+        if (!porId) {
+            var comparador = ORDENES.get(campo);
+            institutos = primeros(institutos, (descendente ? comparador.reversed() : comparador)
+                    .thenComparing(InstitutoResponseDto::getId), hasta);
+        }
+        return pagina(institutos.subList(desde, hasta), after != null ? null : page, size, total, porId);
+    }
+
+    // Posición del primer instituto detrás del cursor en una lista ordenada por id: búsqueda binaria
+    private static int despuesDe(List<InstitutoResponseDto> institutos, long after, boolean descendente) {
+        int bajo = 0;
+        int alto = institutos.size();
+        while (bajo < alto) {
+            int medio = (bajo + alto) >>> 1;
+            long id = institutos.get(medio).getId();
+            if (descendente ? id >= after : id <= after) {
+                bajo = medio + 1;
+            } else {
+                alto = medio;
+            }
+        }
+        return bajo;
+    }
+
+    // Los n primeros según el orden: con un montículo de n elementos si son pocos, sin copiar ni ordenar toda la lista
+    private static <T> List<T> primeros(List<T> lista, Comparator<T> orden, int n) {
+        if (n > lista.size() / 2) {
+            var ordenada = new ArrayList<>(lista);
+            ordenada.sort(orden);
+            return ordenada;
+        }
+        PriorityQueue<T> monticulo = new PriorityQueue<>(n + 1, orden.reversed());
+        for (T elemento : lista) {
+            if (monticulo.size() < n) {
+                monticulo.add(elemento);
+            } else if (orden.compare(elemento, monticulo.peek()) < 0) {
+                monticulo.poll();
+                monticulo.add(elemento);
+            }
+        }
+        var resultado = new ArrayList<>(monticulo);
+        resultado.sort(orden);
+        return resultado;
+    }
+
+    // Construye la página a partir de hasta size + 1 elementos, el sobrante indica que hay página siguiente
+    private InstitutoPageResponseDto pagina(List<InstitutoResponseDto> institutos, Integer page, int size, long total, boolean conCursor) {
+        boolean hayMas = institutos.size() > size;
+        var contenido = hayMas ? institutos.subList(0, size) : institutos;
+        return InstitutoPageResponseDto.builder()
+                .content(contenido)
+                .page(page)
+                .size(size)
+                .totalElements(total)
+                .nextCursor(hayMas && conCursor ? contenido.getLast().getId() : null)
+                .build();
+    }
+
+    @Override
+    public Stream<InstitutoResponseDto> streamAll() {
+        log.debug("Exportando todos los institutos");
+        // Lotes por cursor: en memoria solo hay un lote, da igual el tamaño del catálogo
+        return Stream.iterate(institutosRepository.findAllAfter(null, LOTE_EXPORTACION, false),
+                        lote -> !lote.isEmpty(),
+                        lote -> lote.size() < LOTE_EXPORTACION ? List.of()
+                                : institutosRepository.findAllAfter(lote.getLast().getId(), LOTE_EXPORTACION, false))
+                .flatMap(List::stream)
+                .map(institutoMapper::toinstitutoResponseDto);
+    }
+
+    @Override
+    public InstitutoStatsDto stats() {
+        log.debug("Calculando estadísticas de institutos");
+        return institutoMapper.toStatsDto(institutosRepository.totalesPorCiudad(), institutosRepository.totalesPorTipo());
+    }
+
+    // Primero la caché; si no está, se lee del repositorio y se guarda bajo su id
     @Override
-    @Cacheable(key = "#id")
     public InstitutoResponseDto findById(Long id) {
-        log.info("Buscando instituto por id {}", id);
+        log.debug("Buscando instituto por id {}", id);
+        var cacheado = institutosCache.get(id);
+        if (cacheado != null) {
+            return cacheado;
+        }
         /*
         // Estilo estructurado
         Optional<Instituto> institutoEncontrado = institutosRepository.findById(id);
@@ -66,61 +217,185 @@ public class InstitutosServiceImpl implements InstitutosService {
 
          */
         // estilo funcional
-        return institutoMapper.toinstitutoResponseDto(institutosRepository.findById(id)
-                .orElseThrow(() -> new InstitutoNotFoundException(id)));
+        long version = institutosCache.version();
+        return institutosCache.putIfAbsent(institutoMapper.toinstitutoResponseDto(institutosRepository.findById(id)
+                .orElseThrow(() -> new InstitutoNotFoundException(id))), version);
     }
 
 
 
-    // Cachea con el uuid como key
-
-    @Cacheable(key = "#uuid")
+    // El uuid es un alias del id en la caché: la entrada es la misma que la de findById
     @Override
     public InstitutoResponseDto findByUuid(String uuid) {
-        log.info("Buscando instituto por uuid: {}" , uuid);
+        log.debug("Buscando instituto por uuid: {}" , uuid);
+        UUID myUUID;
         try {
-            var myUUID = UUID.fromString(uuid);
-            return institutoMapper.toinstitutoResponseDto(institutosRepository.findByUuid(myUUID)
-                    .orElseThrow(() -> new InstitutoNotFoundException(myUUID)));
+            myUUID = UUID.fromString(uuid);
         }catch (IllegalArgumentException e){
             throw new InstitutoBadUuidException(uuid);
         }
+        var cacheado = institutosCache.get(myUUID);
+        if (cacheado != null) {
+            return cacheado;
+        }
+        long version = institutosCache.version();
+        return institutosCache.putIfAbsent(institutoMapper.toinstitutoResponseDto(institutosRepository.findByUuid(myUUID)
+                .orElseThrow(() -> new InstitutoNotFoundException(myUUID))), version);
     }
-    // Cachea con el id del resultado de la operación como key
+    // Escribe en la caché el instituto creado, bajo su id y con su uuid como alias
     @Override
-    @CachePut(key = "#result.id")
     public InstitutoResponseDto save(InstitutoCreateDto institutoCreateDto) {
-        log.info("Guardando instituto: {}" , institutoCreateDto);
+        log.debug("Guardando instituto: {}" , institutoCreateDto);
         // obtenemos id de instituto
         Long id = institutosRepository.nextId();
         // Creamos la tarjeta nueva con los datos que nos vienen
         Instituto nuevoInstituto = institutoMapper.toInstituto(id, institutoCreateDto);
 
         // La guardamos en el repositorio
-        return institutoMapper.toinstitutoResponseDto(institutosRepository.save(nuevoInstituto));
+        return guardado(institutoMapper.toinstitutoResponseDto(institutosRepository.save(nuevoInstituto)));
     }
 
-    @CachePut(key = "#result.id")
+    // Escribe en la caché el instituto actualizado, sirve tanto para el id como para el uuid
     @Override
     public InstitutoResponseDto update(Long id, InstitutoUpdateDto institutoUpdateDto) {
-        log.info("Actualizando instituto por id: {}" , id);
+        log.debug("Actualizando instituto por id: {}" , id);
         // Si no existe lanza excepción
         var institutoActual = institutosRepository.findById(id).orElseThrow(() -> new InstitutoNotFoundException(id));
         // Actualizamos el instituto con los datos que nos vienen
         Instituto institutoActualizado = institutoMapper.toInstituto(institutoUpdateDto, institutoActual);
         // La guardamos en el repositorio
-        return institutoMapper.toinstitutoResponseDto(institutosRepository.save(institutoActualizado));
+        return guardado(institutoMapper.toinstitutoResponseDto(institutosRepository.save(institutoActualizado)));
     }
-    // El key es opcional, si no se indica
-    @CacheEvict(key = "#id")
+    // Invalida el id y el uuid del instituto borrado
     @Override
     public void deleteById(Long id) {
         log.debug("Borrando instituto por id: {}" , id);
-        institutosRepository.findById(id).orElseThrow(() -> new InstitutoNotFoundException(id));
+        var instituto = institutosRepository.findById(id).orElseThrow(() -> new InstitutoNotFoundException(id));
         // La borramos del repositorio si existe
         institutosRepository.deleteById(id);
+        institutosCache.evict(id, instituto.getUuid());
+        listado.actualizar(List.of(id), this::leido);
+
+    }
+
+    @Override
+    public List<InstitutoBulkResultDto> bulk(List<InstitutoBulkItemDto> operaciones) {
+        log.debug("Procesando {} operaciones en lote", operaciones.size());
+        var resultados = new ArrayList<InstitutoBulkResultDto>(operaciones.size());
+        // Estado final de cada id tocado por el lote: el instituto a guardar o null si se borra
+        Map<Long, Instituto> pendientes = new LinkedHashMap<>();
+        // uuid de los borrados, para invalidarlos en la caché
+        Map<Long, UUID> borrados = new HashMap<>();
+        // Último DTO de cada id guardado, ya mapeado para la respuesta, para escribirlo en la caché
+        Map<Long, InstitutoResponseDto> mapeados = new HashMap<>();
+        List<Integer> altas = new ArrayList<>();
 
+        for (int i = 0; i < operaciones.size(); i++) {
+            var operacion = operaciones.get(i);
+            if (operacion == null) {
+                resultados.add(error(InstitutoBulkResultDto.builder().index(i), HttpStatus.BAD_REQUEST, "Operación vacía"));
+                continue;
+            }
+            var resultado = InstitutoBulkResultDto.builder().index(i).op(operacion.getOp()).id(operacion.getId());
+            resultados.add(resultado.build());
+            String op = operacion.getOp() == null ? "" : operacion.getOp();
+            if (!op.equals(InstitutoBulkItemDto.CREATE) && operacion.getId() == null) {
+                resultados.set(i, error(resultado, HttpStatus.BAD_REQUEST, "Falta el id"));
+                continue;
+            }
+            switch (op) {
+                case InstitutoBulkItemDto.CREATE -> {
+                    String errores = validar(operacion.getInstituto());
+                    if (errores != null) {
+                        resultados.set(i, error(resultado, HttpStatus.BAD_REQUEST, errores));
+                    } else {
+                        altas.add(i);
+                    }
+                }
+                case InstitutoBulkItemDto.UPDATE -> {
+                    var actual = estadoActual(pendientes, operacion.getId());
+                    String errores = validar(operacion.getInstituto());
+                    if (actual == null) {
+                        resultados.set(i, error(resultado, HttpStatus.NOT_FOUND, new InstitutoNotFoundException(operacion.getId()).getMessage()));
+                    } else if (errores != null) {
+                        resultados.set(i, error(resultado, HttpStatus.BAD_REQUEST, errores));
+                    } else {
+                        var actualizado = institutoMapper.toInstituto(institutoMapper.toInstitutoUpdateDto(operacion.getInstituto()), actual);
+                        var dto = institutoMapper.toinstitutoResponseDto(actualizado);
+                        pendientes.put(actualizado.getId(), actualizado);
+                        mapeados.put(actualizado.getId(), dto);
+                        resultados.set(i, resultado.status(HttpStatus.OK.value()).instituto(dto).build());
+                    }
+                }
+                case InstitutoBulkItemDto.DELETE -> {
+                    var actual = estadoActual(pendientes, operacion.getId());
+                    if (actual == null) {
+                        resultados.set(i, error(resultado, HttpStatus.NOT_FOUND, new InstitutoNotFoundException(operacion.getId()).getMessage()));
+                    } else {
+                        pendientes.put(operacion.getId(), null);
+                        borrados.putIfAbsent(operacion.getId(), actual.getUuid());
+                        resultados.set(i, resultado.status(HttpStatus.NO_CONTENT.value()).build());
+                    }
+                }
+                default -> resultados.set(i, error(resultado, HttpStatus.BAD_REQUEST, "Operación no válida: " + operacion.getOp()));
+            }
+        }
+
+        // Las altas válidas reciben un rango de ids reservado de una sola vez
+        if (!altas.isEmpty()) {
+            long id = institutosRepository.nextIds(altas.size());
+            for (int i : altas) {
+                var nuevo = institutoMapper.toInstituto(id++, operaciones.get(i).getInstituto());
+                var dto = institutoMapper.toinstitutoResponseDto(nuevo);
+                pendientes.put(nuevo.getId(), nuevo);
+                mapeados.put(nuevo.getId(), dto);
+                resultados.set(i, InstitutoBulkResultDto.builder().index(i).op(InstitutoBulkItemDto.CREATE).id(nuevo.getId())
+                        .status(HttpStatus.CREATED.value()).instituto(dto).build());
+            }
+        }
+
+        // Altas, modificaciones y borrados en una sola escritura del repositorio
+        var guardar = pendientes.values().stream().filter(Objects::nonNull).toList();
+        var borrar = pendientes.entrySet().stream().filter(e -> e.getValue() == null).map(Map.Entry::getKey).toList();
+        if (!guardar.isEmpty() || !borrar.isEmpty()) {
+            institutosRepository.saveAllAndDeleteAllById(guardar, borrar);
+        }
+        // Después, una pasada por la caché y una sola instantánea nueva del listado para todo el lote
+        guardar.forEach(instituto -> institutosCache.put(mapeados.get(instituto.getId())));
+        borrar.forEach(id -> institutosCache.evict(id, borrados.get(id)));
+        listado.actualizar(pendientes.keySet(), this::leido);
+        return resultados;
+    }
+
+    // Estado de un instituto teniendo en cuenta lo que ya ha cambiado el propio lote
+    private Instituto estadoActual(Map<Long, Instituto> pendientes, Long id) {
+        return pendientes.containsKey(id) ? pendientes.get(id) : institutosRepository.findById(id).orElse(null);
     }
 
+    // Errores de validación del instituto o null si es válido
+    private String validar(InstitutoCreateDto instituto) {
+        if (instituto == null) {
+            return "Faltan los datos del instituto";
+        }
+        Set<ConstraintViolation<InstitutoCreateDto>> errores = validator.validate(instituto);
+        return errores.isEmpty() ? null : errores.stream()
+                .map(error -> error.getPropertyPath() + ": " + error.getMessage())
+                .sorted()
+                .collect(Collectors.joining(", "));
+    }
+
+    private static InstitutoBulkResultDto error(InstitutoBulkResultDto.InstitutoBulkResultDtoBuilder resultado, HttpStatus status, String mensaje) {
+        return resultado.status(status.value()).error(mensaje).build();
+    }
 
-}
\ No newline at end of file
+    // Propaga un instituto recién escrito a la caché y al listado completo
+    private InstitutoResponseDto guardado(InstitutoResponseDto instituto) {
+        listado.actualizar(List.of(instituto.getId()), this::leido);
+        return institutosCache.put(instituto);
+    }
+
+    // Estado de un instituto en el repositorio, para el listado
+    private Optional<InstitutoResponseDto> leido(Long id) {
+        return institutosRepository.findById(id).map(institutoMapper::toinstitutoResponseDto);
+    }
+}
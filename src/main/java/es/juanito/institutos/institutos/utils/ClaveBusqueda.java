@@ -0,0 +1,25 @@
+package es.juanito.institutos.institutos.utils;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Clave de búsqueda de un texto: sin tildes ni diacríticos y en minúsculas,
+ * para que "Innovación" y "INNOVACION" se encuentren igual.
+ */
+public final class ClaveBusqueda {
+    // Marcas diacríticas que quedan separadas de la letra tras la descomposición NFD
+    private static final Pattern DIACRITICOS = Pattern.compile("\\p{M}+");
+
+    private ClaveBusqueda() {
+    }
+
+    public static String normalizar(String texto) {
+        if (texto == null) {
+            return null;
+        }
+        String descompuesto = Normalizer.normalize(texto, Normalizer.Form.NFD);
+        return DIACRITICOS.matcher(descompuesto).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+}
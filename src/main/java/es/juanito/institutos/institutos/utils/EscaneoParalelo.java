@@ -0,0 +1,49 @@
+package es.juanito.institutos.institutos.utils;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+/**
+ * Recorridos en paralelo (fork-join) para catálogos muy grandes.
+ * Solo existe como bean si institutos.scan.parallel.enabled=true; quien no lo recibe usa DESACTIVADO.
+ * Por debajo del umbral se sigue recorriendo en un hilo: repartir el trabajo cuesta más de lo que ahorra.
+ */
+@Component
+@ConditionalOnProperty(name = "institutos.scan.parallel.enabled", havingValue = "true")
+public class EscaneoParalelo {
+    public static final EscaneoParalelo DESACTIVADO = new EscaneoParalelo(Long.MAX_VALUE, 0);
+
+    private final long umbral;
+    // Pool propio si se indica el número de hilos, si no el ForkJoinPool común
+    private final ForkJoinPool pool;
+
+    public EscaneoParalelo(@Value("${institutos.scan.parallel.threshold:50000}") long umbral,
+                           @Value("${institutos.scan.parallel.threads:0}") int hilos) {
+        this.umbral = umbral;
+        this.pool = hilos > 0 ? new ForkJoinPool(hilos) : null;
+    }
+
+    // Si con tantos elementos compensa recorrer en paralelo
+    public boolean compensa(long elementos) {
+        return elementos >= umbral;
+    }
+
+    // Ejecuta la tubería en paralelo; toList mantiene el orden de encuentro, así que el resultado es el mismo que en un hilo
+    public <T> List<T> toList(Stream<T> stream) {
+        Stream<T> paralelo = stream.parallel();
+        return pool == null ? paralelo.toList() : pool.submit(paralelo::toList).join();
+    }
+
+    @PreDestroy
+    public void cerrar() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,34 @@
+-- Esquema del repositorio JDBC (InstitutosJdbcRepositoryImpl), se ejecuta en cada arranque
+CREATE SEQUENCE IF NOT EXISTS institutos_seq START WITH 1;
+
+CREATE TABLE IF NOT EXISTS institutos (
+    id                 BIGINT PRIMARY KEY,
+    nombre             VARCHAR,
+    nombre_busqueda    VARCHAR,
+    ciudad             VARCHAR,
+    ciudad_busqueda    VARCHAR,
+    direccion          VARCHAR,
+    telefono           VARCHAR,
+    email              VARCHAR,
+    numero_estudiantes INTEGER,
+    numero_profesores  INTEGER,
+    tipo               VARCHAR,
+    anio_fundacion     DATE,
+    codigo_instituto   VARCHAR,
+    created_at         TIMESTAMP(9),
+    update_at          TIMESTAMP(9),
+    uuid               UUID,
+    is_deleted         BOOLEAN
+);
+
+-- Búsquedas por uuid. Ciudad y nombre se buscan con LIKE '%texto%', que no puede usar un índice B-tree:
+-- recorren la tabla, así que no se indexan
+CREATE UNIQUE INDEX IF NOT EXISTS institutos_uuid ON institutos (uuid);
+-- Bases de datos en fichero creadas con los índices anteriores
+DROP INDEX IF EXISTS institutos_ciudad;
+DROP INDEX IF EXISTS institutos_nombre;
+
+-- Rangos y páginas ordenadas por los campos numéricos
+CREATE INDEX IF NOT EXISTS institutos_estudiantes ON institutos (numero_estudiantes, id);
+CREATE INDEX IF NOT EXISTS institutos_profesores ON institutos (numero_profesores, id);
+CREATE INDEX IF NOT EXISTS institutos_fundacion ON institutos (anio_fundacion, id);
@@ -1,15 +1,55 @@
 package es.juanito.institutos;
 
+import es.juanito.institutos.institutos.exceptions.InstitutoNotFoundException;
+import es.juanito.institutos.institutos.services.InstitutosService;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 @SpringBootTest
 class
 InstitutoApplicationTests {
 
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private InstitutosService institutosService;
+
     @Test
     void contextLoads() {
     }
 
-}
+    @Test
+    void cacheManager_isCaffeineWithInstitutosCache() {
+        assertAll("cacheManager_isCaffeineWithInstitutosCache",
+                () -> assertInstanceOf(CaffeineCacheManager.class, cacheManager),
+                () -> assertNotNull(cacheManager.getCache("institutos"))
+        );
+    }
+
+    @Test
+    void metrics_timersPerOutcomeAndRepositoryGauges() {
+        institutosService.findById(1L);
+        assertThrows(InstitutoNotFoundException.class, () -> institutosService.findById(999L));
 
+        assertAll("metrics_timersPerOutcomeAndRepositoryGauges",
+                () -> assertNotNull(meterRegistry.find("institutos.service")
+                        .tags("method", "findById", "exception", "none").timer()),
+                () -> assertEquals(1, meterRegistry.get("institutos.service")
+                        .tags("method", "findById", "exception", "InstitutoNotFoundException").timer().count()),
+                () -> assertNotNull(meterRegistry.find("institutos.repository").tag("method", "findById").timer()),
+                () -> assertTrue(meterRegistry.get("institutos.repository.size").gauge().value() >= 2),
+                () -> assertTrue(meterRegistry.get("institutos.repository.index.size").tag("index", "uuid").gauge().value() >= 2)
+        );
+    }
+
+}
@@ -1,7 +1,13 @@
 package es.juanito.institutos.institutos.controllers;
 
+import es.juanito.institutos.institutos.dto.InstitutoBulkResultDto;
 import es.juanito.institutos.institutos.dto.InstitutoCreateDto;
+import es.juanito.institutos.institutos.dto.InstitutoCriteriaDto;
+import es.juanito.institutos.institutos.dto.InstitutoPageRequestDto;
+import es.juanito.institutos.institutos.dto.InstitutoPageResponseDto;
 import es.juanito.institutos.institutos.dto.InstitutoResponseDto;
+import es.juanito.institutos.institutos.dto.InstitutoStatsDto;
+import es.juanito.institutos.institutos.dto.InstitutoStatsGrupoDto;
 import es.juanito.institutos.institutos.dto.InstitutoUpdateDto;
 import es.juanito.institutos.institutos.exceptions.InstitutoNotFoundException;
 import es.juanito.institutos.institutos.services.InstitutosService;
@@ -16,8 +22,14 @@ import org.springframework.test.web.servlet.assertj.MockMvcTester;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.*;
@@ -27,6 +39,7 @@ import static org.mockito.Mockito.*;
 class InstitutosRestControllerTest {
 
     private final String ENDPOINT = "/api/v1/institutos";
+    private final String REACTIVE_ENDPOINT = "/api/v1/reactive/institutos";
 
     private final InstitutoResponseDto institutoResponse1 = InstitutoResponseDto.builder()
             .id(1L)
@@ -65,7 +78,7 @@ class InstitutosRestControllerTest {
     @Test
     void getAll() {
         var institutos = List.of(institutoResponse1, institutoResponse2);
-        when(institutosService.findAll(null, null)).thenReturn(institutos);
+        when(institutosService.findAll(InstitutoCriteriaDto.builder().build())).thenReturn(institutos);
 
         var result = mockMvcTester.get()
                 .uri(ENDPOINT)
@@ -80,14 +93,14 @@ class InstitutosRestControllerTest {
                     assertThat(json).extractingPath("$[1]").convertTo(InstitutoResponseDto.class).isEqualTo(institutoResponse2);
                 });
 
-        verify(institutosService, times(1)).findAll(null, null);
+        verify(institutosService, times(1)).findAll(InstitutoCriteriaDto.builder().build());
     }
 
     @Test
     void getAllByCiudad() {
         var institutos = List.of(institutoResponse2);
         String query = "?ciudad=" + institutoResponse2.getCiudad();
-        when(institutosService.findAll(anyString(), isNull())).thenReturn(institutos);
+        when(institutosService.findAll(argThat((InstitutoCriteriaDto c) -> c.getCiudad() != null && c.getNombre() == null))).thenReturn(institutos);
 
         var result = mockMvcTester.get()
                 .uri(ENDPOINT + query)
@@ -101,14 +114,14 @@ class InstitutosRestControllerTest {
                     assertThat(json).extractingPath("$[0]").convertTo(InstitutoResponseDto.class).isEqualTo(institutoResponse2);
                 });
 
-        verify(institutosService, times(1)).findAll(anyString(), isNull());
+        verify(institutosService, times(1)).findAll(argThat((InstitutoCriteriaDto c) -> c.getCiudad() != null && c.getNombre() == null));
     }
 
     @Test
     void getAllByNombre() {
         var institutos = List.of(institutoResponse2);
         String query = "?nombre=" + institutoResponse2.getNombre();
-        when(institutosService.findAll(isNull(), anyString())).thenReturn(institutos);
+        when(institutosService.findAll(argThat((InstitutoCriteriaDto c) -> c.getCiudad() == null && c.getNombre() != null))).thenReturn(institutos);
 
         var result = mockMvcTester.get()
                 .uri(ENDPOINT + query)
@@ -122,14 +135,14 @@ class InstitutosRestControllerTest {
                     assertThat(json).extractingPath("$[0]").convertTo(InstitutoResponseDto.class).isEqualTo(institutoResponse2);
                 });
 
-        verify(institutosService, only()).findAll(isNull(), anyString());
+        verify(institutosService, only()).findAll(argThat((InstitutoCriteriaDto c) -> c.getCiudad() == null && c.getNombre() != null));
     }
 
     @Test
     void getAllByCiudadAndNombre() {
         var institutos = List.of(institutoResponse2);
         String query = "?ciudad=" + institutoResponse2.getCiudad() + "&nombre=" + institutoResponse2.getNombre();
-        when(institutosService.findAll(anyString(), anyString())).thenReturn(institutos);
+        when(institutosService.findAll(argThat((InstitutoCriteriaDto c) -> c.getCiudad() != null && c.getNombre() != null))).thenReturn(institutos);
 
         var result = mockMvcTester.get()
                 .uri(ENDPOINT + query)
@@ -143,7 +156,173 @@ class InstitutosRestControllerTest {
                     assertThat(json).extractingPath("$[0]").convertTo(InstitutoResponseDto.class).isEqualTo(institutoResponse2);
                 });
 
-        verify(institutosService, only()).findAll(anyString(), anyString());
+        verify(institutosService, only()).findAll(argThat((InstitutoCriteriaDto c) -> c.getCiudad() != null && c.getNombre() != null));
+    }
+
+    @Test
+    void getAllByTipoAndRanges() {
+        var institutos = List.of(institutoResponse2);
+        var criteria = InstitutoCriteriaDto.builder()
+                .tipo("privado")
+                .minEstudiantes(1000)
+                .fundadoHasta(LocalDate.of(1960, 1, 1))
+                .build();
+        when(institutosService.findAll(criteria)).thenReturn(institutos);
+
+        var result = mockMvcTester.get()
+                .uri(ENDPOINT + "?tipo=privado&minEstudiantes=1000&fundadoHasta=1960-01-01")
+                .contentType(MediaType.APPLICATION_JSON)
+                .exchange();
+
+        assertThat(result)
+                .hasStatusOk()
+                .bodyJson().satisfies(json -> {
+                    assertThat(json).extractingPath("$.length()").isEqualTo(1);
+                    assertThat(json).extractingPath("$[0]").convertTo(InstitutoResponseDto.class).isEqualTo(institutoResponse2);
+                });
+
+        verify(institutosService, only()).findAll(criteria);
+    }
+
+    @Test
+    void getAllPaged() {
+        var pagina = InstitutoPageResponseDto.builder()
+                .content(List.of(institutoResponse1))
+                .page(0)
+                .size(1)
+                .totalElements(2L)
+                .nextCursor(1L)
+                .build();
+        when(institutosService.findPage(eq(InstitutoCriteriaDto.builder().build()), any(InstitutoPageRequestDto.class))).thenReturn(pagina);
+
+        var result = mockMvcTester.get()
+                .uri(ENDPOINT + "?page=0&size=1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .exchange();
+
+        assertThat(result)
+                .hasStatusOk()
+                .hasHeader("X-Total-Count", "2")
+                .hasHeader("X-Page", "0")
+                .hasHeader("X-Next-Cursor", "1")
+                .bodyJson().satisfies(json -> {
+                    assertThat(json).extractingPath("$.length()").isEqualTo(1);
+                    assertThat(json).extractingPath("$[0]").convertTo(InstitutoResponseDto.class).isEqualTo(institutoResponse1);
+                });
+
+        verify(institutosService, only()).findPage(eq(InstitutoCriteriaDto.builder().build()), any(InstitutoPageRequestDto.class));
+    }
+
+    @Test
+    void export_shouldWriteOneJsonLinePerInstituto() {
+        when(institutosService.streamAll()).thenReturn(Stream.of(institutoResponse1, institutoResponse2));
+
+        var result = mockMvcTester.get()
+                .uri(ENDPOINT + "/export")
+                .exchange();
+
+        assertThat(result)
+                .hasStatusOk()
+                .hasContentType(MediaType.APPLICATION_NDJSON)
+                .body().asString()
+                .satisfies(body -> {
+                    var lineas = body.split("\n");
+                    assertThat(lineas).hasSize(2);
+                    assertThat(lineas[0]).startsWith("{\"id\":1,");
+                    assertThat(lineas[1]).startsWith("{\"id\":2,");
+                });
+
+        verify(institutosService, only()).streamAll();
+    }
+
+    @Test
+    void export_shouldCompress_whenClientAcceptsGzip() {
+        when(institutosService.streamAll()).thenReturn(Stream.of(institutoResponse1));
+
+        var result = mockMvcTester.get()
+                .uri(ENDPOINT + "/export")
+                .header("Accept-Encoding", "gzip")
+                .exchange();
+
+        assertThat(result)
+                .hasStatusOk()
+                .hasHeader("Content-Encoding", "gzip")
+                .hasHeader("Vary", "Accept-Encoding")
+                .body().satisfies(body -> {
+                    try (var gzip = new GZIPInputStream(new ByteArrayInputStream(body))) {
+                        assertThat(new String(gzip.readAllBytes(), StandardCharsets.UTF_8))
+                                .startsWith("{\"id\":1,").endsWith("}\n");
+                    } catch (IOException e) {
+                        throw new AssertionError(e);
+                    }
+                });
+    }
+
+    @Test
+    void export_shouldNotCompress_whenGzipIsRejectedOrNotOffered() {
+        when(institutosService.streamAll()).thenAnswer(invocation -> Stream.of(institutoResponse1));
+
+        for (String acceptEncoding : List.of("gzip;q=0", "gzip; q=0.0, *", "identity, *;q=0", "deflate, br", "gzip;q=abc")) {
+            var result = mockMvcTester.get()
+                    .uri(ENDPOINT + "/export")
+                    .header("Accept-Encoding", acceptEncoding)
+                    .exchange();
+
+            assertThat(result)
+                    .as(acceptEncoding)
+                    .hasStatusOk()
+                    .doesNotContainHeader("Content-Encoding")
+                    .hasHeader("Vary", "Accept-Encoding")
+                    .body().asString().startsWith("{\"id\":1,");
+        }
+    }
+
+    @Test
+    void export_shouldCompress_whenGzipHasPositiveQuality() {
+        when(institutosService.streamAll()).thenAnswer(invocation -> Stream.of(institutoResponse1));
+
+        for (String acceptEncoding : List.of("GZIP;Q=0.5", "deflate;q=1.0, gzip;q=0.1", "br, *;q=0.2")) {
+            var result = mockMvcTester.get()
+                    .uri(ENDPOINT + "/export")
+                    .header("Accept-Encoding", acceptEncoding)
+                    .exchange();
+
+            assertThat(result)
+                    .as(acceptEncoding)
+                    .hasStatusOk()
+                    .hasHeader("Content-Encoding", "gzip");
+        }
+    }
+
+    @Test
+    void getStats() {
+        var grupo = InstitutoStatsGrupoDto.builder()
+                .institutos(1)
+                .totalEstudiantes(1250)
+                .totalProfesores(60)
+                .mediaEstudiantes(1250.0)
+                .mediaProfesores(60.0)
+                .estudiantesPorProfesor(1250.0 / 60)
+                .build();
+        when(institutosService.stats()).thenReturn(InstitutoStatsDto.builder()
+                .total(grupo)
+                .porCiudad(Map.of("Madrid", grupo))
+                .porTipo(Map.of("privado", grupo))
+                .build());
+
+        var result = mockMvcTester.get()
+                .uri(ENDPOINT + "/stats")
+                .exchange();
+
+        assertThat(result)
+                .hasStatusOk()
+                .bodyJson().satisfies(json -> {
+                    assertThat(json).extractingPath("$.total.institutos").isEqualTo(1);
+                    assertThat(json).extractingPath("$.porCiudad.Madrid.totalEstudiantes").isEqualTo(1250);
+                    assertThat(json).extractingPath("$.porTipo.privado.mediaProfesores").isEqualTo(60.0);
+                });
+
+        verify(institutosService, only()).stats();
     }
 
     @Test
@@ -244,6 +423,52 @@ class InstitutosRestControllerTest {
 
 
 
+    @Test
+    void bulk_jsonArray() {
+        var resultados = List.of(
+                InstitutoBulkResultDto.builder().index(0).op("create").id(3L).status(201).instituto(institutoResponse1).build(),
+                InstitutoBulkResultDto.builder().index(1).op("delete").id(9L).status(404).error("Instituto con id 9 no encontrado").build());
+        when(institutosService.bulk(anyList())).thenReturn(resultados);
+
+        var result = mockMvcTester.post()
+                .uri(ENDPOINT + "/bulk")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("""
+                        [
+                          {"op": "create", "instituto": {"nombre": "Las Meigas", "direccion": "Calle Barlovento"}},
+                          {"op": "delete", "id": 9}
+                        ]
+                        """)
+                .exchange();
+
+        assertThat(result)
+                .hasStatusOk()
+                .bodyJson().satisfies(json -> {
+                    assertThat(json).extractingPath("$.length()").isEqualTo(2);
+                    assertThat(json).extractingPath("$[0].status").isEqualTo(201);
+                    assertThat(json).extractingPath("$[1].status").isEqualTo(404);
+                });
+
+        verify(institutosService, only()).bulk(argThat(operaciones -> operaciones.size() == 2
+                && operaciones.get(0).getInstituto().getNombre().equals("Las Meigas")
+                && operaciones.get(1).getId() == 9L));
+    }
+
+    @Test
+    void bulk_ndjson() {
+        when(institutosService.bulk(anyList())).thenReturn(List.of());
+
+        var result = mockMvcTester.post()
+                .uri(ENDPOINT + "/bulk")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .content("{\"op\": \"delete\", \"id\": 1}\n{\"op\": \"delete\", \"id\": 2}\n")
+                .exchange();
+
+        assertThat(result).hasStatusOk();
+        verify(institutosService, only()).bulk(argThat(operaciones -> operaciones.size() == 2
+                && operaciones.get(1).getId() == 2L));
+    }
+
     @Test
     void delete() {
         Long id = 1L;
@@ -276,4 +501,108 @@ class InstitutosRestControllerTest {
 
         verify(institutosService, only()).deleteById(anyLong());
     }
+
+    @Test
+    void reactive_getAll_streamsNdjson() {
+        when(institutosService.findAll(InstitutoCriteriaDto.builder().ciudad("Madrid").build()))
+                .thenReturn(List.of(institutoResponse1, institutoResponse2));
+
+        var result = mockMvcTester.get()
+                .uri(REACTIVE_ENDPOINT + "?ciudad=Madrid")
+                .exchange();
+
+        assertThat(result)
+                .hasStatusOk()
+                .hasContentType(MediaType.APPLICATION_NDJSON)
+                .body().asString()
+                .satisfies(body -> {
+                    var lineas = body.split("\n");
+                    assertThat(lineas).hasSize(2);
+                    assertThat(lineas[0]).startsWith("{\"id\":1,");
+                    assertThat(lineas[1]).startsWith("{\"id\":2,");
+                });
+    }
+
+    @Test
+    void reactive_getAllPaged() {
+        when(institutosService.findPage(eq(InstitutoCriteriaDto.builder().build()), any(InstitutoPageRequestDto.class)))
+                .thenReturn(InstitutoPageResponseDto.builder()
+                        .content(List.of(institutoResponse1))
+                        .page(0)
+                        .size(1)
+                        .totalElements(2L)
+                        .build());
+
+        var result = mockMvcTester.get()
+                .uri(REACTIVE_ENDPOINT + "?page=0&size=1")
+                .exchange();
+
+        assertThat(result)
+                .hasStatusOk()
+                .hasHeader("X-Total-Count", "2")
+                .hasHeader("X-Page", "0")
+                .bodyJson().extractingPath("$[0].id").isEqualTo(1);
+    }
+
+    @Test
+    void reactive_getById() {
+        when(institutosService.findById(1L)).thenReturn(institutoResponse1);
+
+        var result = mockMvcTester.get()
+                .uri(REACTIVE_ENDPOINT + "/1")
+                .exchange();
+
+        assertThat(result)
+                .hasStatusOk()
+                .bodyJson()
+                .convertTo(InstitutoResponseDto.class)
+                .isEqualTo(institutoResponse1);
+    }
+
+    @Test
+    void reactive_getById_shouldReturnNotFound_whenInvalidIdProvided() {
+        when(institutosService.findById(3L)).thenThrow(new InstitutoNotFoundException(3L));
+
+        var result = mockMvcTester.get()
+                .uri(REACTIVE_ENDPOINT + "/3")
+                .exchange();
+
+        assertThat(result)
+                .hasStatus(HttpStatus.NOT_FOUND)
+                .bodyJson().extractingPath("$.detail").asString().contains("no encontrado");
+    }
+
+    @Test
+    void reactive_getAll_shouldReturnBadRequest_whenRangeIsNotANumber() {
+        var result = mockMvcTester.get()
+                .uri(REACTIVE_ENDPOINT + "?minEstudiantes=muchos")
+                .exchange();
+
+        assertThat(result).hasStatus(HttpStatus.BAD_REQUEST);
+        verifyNoInteractions(institutosService);
+    }
+
+    @Test
+    void reactive_create_shouldReturnBadRequest_whenInvalid() {
+        var result = mockMvcTester.post()
+                .uri(REACTIVE_ENDPOINT)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"nombre\": \"\", \"direccion\": \"Calle Sol\"}")
+                .exchange();
+
+        assertThat(result)
+                .hasStatus(HttpStatus.BAD_REQUEST)
+                .bodyJson().extractingPath("$.errores.nombre").isNotNull();
+        verifyNoInteractions(institutosService);
+    }
+
+    @Test
+    void reactive_delete() {
+        var result = mockMvcTester.delete()
+                .uri(REACTIVE_ENDPOINT + "/1")
+                .exchange();
+
+        assertThat(result).hasStatus(HttpStatus.NO_CONTENT);
+        verify(institutosService, only()).deleteById(1L);
+    }
 }
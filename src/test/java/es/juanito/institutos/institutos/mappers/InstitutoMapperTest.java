@@ -3,11 +3,14 @@ package es.juanito.institutos.institutos.mappers;
 import es.juanito.institutos.institutos.dto.InstitutoCreateDto;
 import es.juanito.institutos.institutos.dto.InstitutoUpdateDto;
 import es.juanito.institutos.institutos.models.Instituto;
+import es.juanito.institutos.institutos.utils.EscaneoParalelo;
 import org.junit.jupiter.api.Test;
 
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.LongStream;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -52,6 +55,40 @@ class InstitutoMapperTest {
                 );
     }
 
+    @Test
+    void toResponseDtoList_parallel_keepsOrder() {
+        // Arrange
+        List<Instituto> institutos = LongStream.range(0, 10_000)
+                .mapToObj(id -> Instituto.builder().id(id).nombre("Instituto " + id).build())
+                .toList();
+        InstitutoMapper paralelo = new InstitutoMapper();
+        paralelo.setEscaneoParalelo(new EscaneoParalelo(1, 0));
+
+        // Act
+        var res = paralelo.toResponseDtoList(institutos);
+
+        // Assert
+        assertEquals(institutoMapper.toResponseDtoList(institutos), res);
+    }
+
+    @Test
+    void toInstituto_create_precomputesSearchKeys() {
+        // Arrange
+        InstitutoCreateDto institutoCreateDto = InstitutoCreateDto.builder()
+                .nombre("IES Innovación Tecnológica")
+                .ciudad("MÁLAGA")
+                .build();
+
+        // Act
+        var res = institutoMapper.toInstituto(1L, institutoCreateDto);
+
+        // Assert
+        assertAll(
+                () -> assertEquals("ies innovacion tecnologica", res.getNombreBusqueda()),
+                () -> assertEquals("malaga", res.getCiudadBusqueda())
+        );
+    }
+
     @Test
     void testToInstituto_update() {
         // Arrange
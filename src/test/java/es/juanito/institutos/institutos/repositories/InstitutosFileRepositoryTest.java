@@ -0,0 +1,282 @@
+package es.juanito.institutos.institutos.repositories;
+
+import es.juanito.institutos.institutos.models.Instituto;
+import es.juanito.institutos.institutos.repositories.persistence.InstitutosPersistence;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Almacenamiento file: el repositorio en memoria con log de escrituras e instantáneas en un directorio
+class InstitutosFileRepositoryTest extends InstitutosRepositoryContractTest {
+
+    @TempDir
+    private Path directorio;
+
+    private InstitutosPersistence abierta;
+
+    @Override
+    protected InstitutosRepository crearRepositorio() throws Exception {
+        abierta = new InstitutosPersistence(directorio, false, 64, false);
+        var persistente = new InstitutosRepositoryImpl();
+        persistente.setPersistencia(abierta);
+        return persistente;
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        abierta.close();
+    }
+
+    @Test
+    void persistence_recoversWritesAfterRestart(@TempDir Path datos) throws Exception {
+        // Arrange
+        var persistencia = new InstitutosPersistence(datos, true, 64, false);
+        var persistente = new InstitutosRepositoryImpl();
+        persistente.setPersistencia(persistencia);
+        persistente.save(instituto1);
+        persistente.save(copia(instituto2, persistente.nextId()));
+        var actualizado = copia(instituto1, 1L);
+        actualizado.setNumeroEstudiantes(10);
+        actualizado.setIsDeleted(false);
+        persistente.save(actualizado);
+        Long borrado = persistente.nextId();
+        persistente.save(copia(instituto2, borrado));
+        persistente.deleteById(borrado);
+        var antes = persistente.findAll();
+        persistencia.close();
+
+        // Act
+        var recuperado = new InstitutosRepositoryImpl();
+        recuperado.setPersistencia(new InstitutosPersistence(datos, true, 64, false));
+
+        // Assert
+        assertAll("persistence_recoversWritesAfterRestart",
+                () -> assertEquals(antes, recuperado.findAll()),
+                () -> assertEquals(10, recuperado.findById(1L).orElseThrow().getNumeroEstudiantes()),
+                () -> assertEquals(List.of(1L), recuperado.findAllByCiudad("madr").stream().map(Instituto::getId).filter(id -> id == 1L).toList()),
+                () -> assertEquals(instituto1.getId(), recuperado.findByUuid(instituto1.getUuid()).orElseThrow().getId()),
+                // El id borrado no se vuelve a dar
+                () -> assertEquals(borrado + 1, recuperado.nextId())
+        );
+    }
+
+    @Test
+    void persistence_failedAndOversizedWrites_keepLaterWritesAfterRestart(@TempDir Path datos) throws Exception {
+        // Arrange: un texto de más de 65535 bytes, una escritura que falla a mitad del registro y después dos buenas
+        var persistencia = new InstitutosPersistence(datos, true, 64, false);
+        var persistente = new InstitutosRepositoryImpl();
+        persistente.setPersistencia(persistencia);
+        var grande = copia(instituto1, 100L);
+        grande.setDireccion("Calle ñ ".repeat(10_000));
+        persistente.save(grande);
+        var sinId = copia(instituto2, 0L);
+        sinId.setId(null);
+        assertThrows(RuntimeException.class, () -> persistente.save(sinId));
+        persistente.save(copia(instituto2, 101L));
+        persistente.save(copia(instituto2, 102L));
+        var antes = persistente.findAll();
+        persistencia.close();
+
+        // Act
+        var recuperado = new InstitutosRepositoryImpl();
+        recuperado.setPersistencia(new InstitutosPersistence(datos, true, 64, false));
+
+        // Assert
+        assertAll("persistence_failedAndOversizedWrites_keepLaterWritesAfterRestart",
+                () -> assertEquals(antes, recuperado.findAll()),
+                () -> assertEquals(grande.getDireccion(), recuperado.findById(100L).orElseThrow().getDireccion()),
+                () -> assertTrue(recuperado.existsById(101L)),
+                () -> assertTrue(recuperado.existsById(102L))
+        );
+    }
+
+    @Test
+    void persistence_snapshotPlusLogTail(@TempDir Path datos) throws Exception {
+        // Arrange
+        var persistencia = new InstitutosPersistence(datos, false, 64, false);
+        var persistente = new InstitutosRepositoryImpl();
+        persistente.setPersistencia(persistencia);
+        for (long id = 10; id < 1010; id++) {
+            persistente.save(copia(instituto1, id));
+        }
+        persistencia.compactar();
+        // Después de la instantánea: solo quedan en el log
+        persistente.deleteAllById(List.of(10L, 11L));
+        persistente.save(copia(instituto2, 2000L));
+        persistencia.close();
+
+        // Act
+        var recuperado = new InstitutosRepositoryImpl();
+        recuperado.setPersistencia(new InstitutosPersistence(datos, false, 64, false));
+
+        // Assert
+        try (var ficheros = Files.list(datos)) {
+            var nombres = ficheros.map(f -> f.getFileName().toString()).toList();
+            assertAll("persistence_snapshotPlusLogTail",
+                    () -> assertEquals(2 + 998 + 1, recuperado.count()),
+                    () -> assertTrue(recuperado.findById(10L).isEmpty()),
+                    () -> assertTrue(recuperado.existsById(2000L)),
+                    () -> assertEquals(1, nombres.stream().filter(n -> n.endsWith(".snap")).count(), nombres::toString)
+            );
+        }
+    }
+
+    @Test
+    void persistence_recoversBatchOfSavesAndDeletes(@TempDir Path datos) throws Exception {
+        // Arrange
+        var persistencia = new InstitutosPersistence(datos, true, 64, false);
+        var persistente = new InstitutosRepositoryImpl();
+        persistente.setPersistencia(persistencia);
+        persistente.saveAll(List.of(copia(instituto1, 5L), copia(instituto1, 6L)));
+        persistente.saveAllAndDeleteAllById(List.of(copia(instituto2, 7L), copia(instituto2, 5L)), List.of(6L, 1L));
+        var antes = persistente.findAll();
+        persistencia.close();
+
+        // Act
+        var recuperado = new InstitutosRepositoryImpl();
+        recuperado.setPersistencia(new InstitutosPersistence(datos, true, 64, false));
+
+        // Assert
+        assertAll("persistence_recoversBatchOfSavesAndDeletes",
+                () -> assertEquals(antes, recuperado.findAll()),
+                () -> assertEquals(instituto2.getNombre(), recuperado.findById(5L).orElseThrow().getNombre()),
+                () -> assertTrue(recuperado.existsById(7L)),
+                () -> assertFalse(recuperado.existsById(6L)),
+                () -> assertFalse(recuperado.existsById(1L))
+        );
+    }
+
+    @Test
+    void persistence_discardsTornWriteAtEndOfLog(@TempDir Path datos) throws Exception {
+        // Arrange
+        var persistencia = new InstitutosPersistence(datos, true, 64, false);
+        var persistente = new InstitutosRepositoryImpl();
+        persistente.setPersistencia(persistencia);
+        persistente.save(copia(instituto2, 5L));
+        persistencia.close();
+        Path segmento;
+        try (var ficheros = Files.list(datos)) {
+            segmento = ficheros.filter(f -> f.getFileName().toString().endsWith(".log")).max(Path::compareTo).orElseThrow();
+        }
+        // Un registro que se quedó a medias: cabecera con longitud pero sin los datos
+        Files.write(segmento, new byte[]{0, 0, 0, 40, 1, 2, 3, 4, 1}, StandardOpenOption.APPEND);
+
+        // Act
+        var recuperado = new InstitutosRepositoryImpl();
+        recuperado.setPersistencia(new InstitutosPersistence(datos, true, 64, false));
+        recuperado.save(copia(instituto1, 6L));
+
+        // Assert
+        assertAll("persistence_discardsTornWriteAtEndOfLog",
+                () -> assertTrue(recuperado.existsById(5L)),
+                () -> assertTrue(recuperado.existsById(6L)),
+                () -> assertEquals(4, recuperado.count())
+        );
+    }
+
+    @Test
+    void persistence_damagedRecordInMiddleOfLog_failsRecovery(@TempDir Path datos) throws Exception {
+        // Arrange
+        var persistencia = new InstitutosPersistence(datos, true, 64, false);
+        var persistente = new InstitutosRepositoryImpl();
+        persistente.setPersistencia(persistencia);
+        persistente.save(copia(instituto2, 5L));
+        persistente.save(copia(instituto2, 6L));
+        persistente.save(copia(instituto2, 7L));
+        persistencia.close();
+        Path segmento;
+        try (var ficheros = Files.list(datos)) {
+            segmento = ficheros.filter(f -> f.getFileName().toString().endsWith(".log")).max(Path::compareTo).orElseThrow();
+        }
+        // Un byte cambiado en los datos del primer registro, con dos registros buenos detrás
+        byte[] bytes = Files.readAllBytes(segmento);
+        bytes[20] ^= 1;
+        Files.write(segmento, bytes);
+        long tamano = Files.size(segmento);
+
+        // Act
+        var recuperado = new InstitutosRepositoryImpl();
+        var error = assertThrows(UncheckedIOException.class,
+                () -> recuperado.setPersistencia(new InstitutosPersistence(datos, true, 64, false)));
+
+        // Assert
+        assertAll("persistence_damagedRecordInMiddleOfLog_failsRecovery",
+                () -> assertTrue(error.getCause().getMessage().contains("se perderían 2 registros"), error.getCause()::getMessage),
+                // El segmento no se recorta
+                () -> assertEquals(tamano, Files.size(segmento))
+        );
+    }
+
+    @Test
+    void persistence_mappedSnapshotLoadedOnlyWhenNeeded(@TempDir Path datos) throws Exception {
+        // Arrange
+        var persistencia = new InstitutosPersistence(datos, false, 64, false);
+        var persistente = new InstitutosRepositoryImpl();
+        persistente.setPersistencia(persistencia);
+        for (long id = 10; id < 110; id++) {
+            persistente.save(copia(instituto1, id));
+        }
+        persistencia.compactar();
+        // Después de la instantánea: un borrado, una modificación y un alta que solo están en el log
+        persistente.deleteById(10L);
+        var actualizado = copia(instituto2, 11L);
+        persistente.save(actualizado);
+        persistente.save(copia(instituto2, 500L));
+        var uuid = persistente.findById(50L).orElseThrow().getUuid();
+        var antes = persistente.findAll();
+        persistencia.close();
+        var registry = new SimpleMeterRegistry();
+
+        // Act
+        var recuperado = new InstitutosRepositoryImpl();
+        recuperado.bindTo(registry);
+        recuperado.setPersistencia(new InstitutosPersistence(datos, false, 64, false));
+        var nombres = registry.get("institutos.repository.index.size").tag("index", "nombre").gauge();
+
+        // Assert
+        assertAll("persistence_mappedSnapshotLoadedOnlyWhenNeeded",
+                () -> assertEquals(antes.size(), recuperado.count()),
+                () -> assertTrue(recuperado.findById(10L).isEmpty()),
+                () -> assertEquals(instituto2.getNombre(), recuperado.findById(11L).orElseThrow().getNombre()),
+                () -> assertEquals(instituto1.getNombre(), recuperado.findById(12L).orElseThrow().getNombre()),
+                () -> assertTrue(recuperado.existsById(500L)),
+                () -> assertEquals(50L, recuperado.findByUuid(uuid).orElseThrow().getId()),
+                () -> assertEquals(actualizado.getUuid(), recuperado.findById(11L).orElseThrow().getUuid()),
+                // Hasta aquí no se ha construido ningún índice de búsqueda
+                () -> assertEquals(0, nombres.value()),
+                () -> assertEquals(antes, recuperado.findAll()),
+                () -> assertEquals(List.of(500L), recuperado.findAllAfter(110L, 10, false).stream().map(Instituto::getId).toList()),
+                () -> assertEquals(100, recuperado.findAllByCiudad("madr").size()),
+                () -> assertTrue(nombres.value() > 0)
+        );
+    }
+
+    // Mismos datos con otro id y otro uuid
+    private static Instituto copia(Instituto instituto, Long id) {
+        return Instituto.builder()
+                .id(id)
+                .nombre(instituto.getNombre())
+                .direccion(instituto.getDireccion())
+                .ciudad(instituto.getCiudad())
+                .telefono(instituto.getTelefono())
+                .email(instituto.getEmail())
+                .numeroEstudiantes(instituto.getNumeroEstudiantes())
+                .numeroProfesores(instituto.getNumeroProfesores())
+                .tipo(instituto.getTipo())
+                .anioFundacion(instituto.getAnioFundacion())
+                .createdAt(instituto.getCreatedAt())
+                .updateAt(instituto.getUpdateAt())
+                .uuid(id.equals(instituto.getId()) ? instituto.getUuid() : UUID.randomUUID())
+                .build();
+    }
+}
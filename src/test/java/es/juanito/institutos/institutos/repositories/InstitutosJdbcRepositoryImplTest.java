@@ -0,0 +1,151 @@
+package es.juanito.institutos.institutos.repositories;
+
+import com.zaxxer.hikari.HikariDataSource;
+import es.juanito.institutos.institutos.dto.InstitutoCriteriaDto;
+import es.juanito.institutos.institutos.models.Instituto;
+import es.juanito.institutos.institutos.models.InstitutoTotales;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InstitutosJdbcRepositoryImplTest extends InstitutosRepositoryContractTest {
+
+    private HikariDataSource dataSource;
+
+    @Override
+    protected InstitutosRepository crearRepositorio() {
+        // Una base de datos en memoria nueva para cada test, con pool como en la aplicación
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:" + UUID.randomUUID() + ";QUERY_CACHE_SIZE=64");
+        var jdbc = new InstitutosJdbcRepositoryImpl(new JdbcTemplate(dataSource), new DataSourceTransactionManager(dataSource), 100);
+        jdbc.iniciar();
+        return jdbc;
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataSource.close();
+    }
+
+    // Cada findAll lee todas las filas por JDBC: con menos altas el test sigue mezclando escrituras y lecturas sin tardar minutos
+    @Override
+    protected int altasPorEscritor() {
+        return 100;
+    }
+
+    @Test
+    void findById_readsBackAllColumns() {
+        // Act
+        var leido = repositorio.findById(1L).orElseThrow();
+
+        // Assert
+        assertAll("findById_readsBackAllColumns",
+                () -> assertEquals(instituto1, leido),
+                () -> assertEquals("ramon maria del valle inclan", leido.getNombreBusqueda()),
+                () -> assertTrue(repositorio.findById(99L).isEmpty())
+        );
+    }
+
+    @Test
+    void iniciar_existingDatabase_keepsRowsAndAdvancesSequence() {
+        // Arrange: un id por delante de la secuencia que nunca se ha reservado
+        repositorio.save(Instituto.builder().id(50L).nombre("IES Cincuenta").uuid(UUID.randomUUID()).build());
+
+        // Act: otro arranque sobre la misma base de datos
+        var reiniciado = new InstitutosJdbcRepositoryImpl(new JdbcTemplate(dataSource), new DataSourceTransactionManager(dataSource), 100);
+        reiniciado.iniciar();
+
+        // Assert
+        assertAll("iniciar_existingDatabase_keepsRowsAndAdvancesSequence",
+                () -> assertEquals(3, reiniciado.count()),
+                // El contador y los totales se leen de las filas que ya había
+                () -> assertEquals(repositorio.totalesPorCiudad(), reiniciado.totalesPorCiudad()),
+                () -> assertEquals(repositorio.totalesPorTipo(), reiniciado.totalesPorTipo()),
+                () -> assertEquals(51L, reiniciado.nextId())
+        );
+    }
+
+    @Test
+    void saveAll_andDeleteAllById_inBatches() {
+        // Arrange: más filas que el tamaño de lote
+        Long primero = repositorio.nextIds(250);
+        List<Instituto> lote = new ArrayList<>();
+        for (long id = primero; id < primero + 250; id++) {
+            lote.add(Instituto.builder().id(id).nombre("IES " + id).ciudad("Toledo").uuid(UUID.randomUUID()).build());
+        }
+
+        // Act
+        repositorio.saveAll(lote);
+        long despuesDeGuardar = repositorio.count();
+        repositorio.deleteAllById(lote.stream().map(Instituto::getId).filter(id -> id % 2 == 0).toList());
+
+        // Assert
+        assertAll("saveAll_andDeleteAllById_inBatches",
+                () -> assertEquals(252, despuesDeGuardar),
+                () -> assertEquals(2 + 125, repositorio.count()),
+                () -> assertEquals(125, repositorio.findAllByCiudad("toledo").size())
+        );
+    }
+
+    @Test
+    void findAllByCriteria_translatedToSql() {
+        // Arrange: los comodines de LIKE se buscan como texto
+        repositorio.save(Instituto.builder().id(3L).nombre("IES 100%_Sevilla").ciudad("Sevilla").tipo("PUBLICO")
+                .numeroEstudiantes(400).anioFundacion(LocalDate.of(1990, 1, 1)).uuid(UUID.randomUUID()).build());
+
+        // Act
+        var porRango = repositorio.findAll(InstitutoCriteriaDto.builder().minEstudiantes(400).maxEstudiantes(888).build());
+        var porTipoYCiudad = repositorio.findAll(InstitutoCriteriaDto.builder().tipo("publico").ciudad("SEVI").build());
+        var porFecha = repositorio.findAll(InstitutoCriteriaDto.builder().fundadoDesde(LocalDate.of(1990, 1, 1)).build());
+        var comodines = repositorio.findAllByNombre("100%_");
+        var sinComodines = repositorio.findAllByNombre("%");
+
+        // Assert
+        assertAll("findAllByCriteria_translatedToSql",
+                () -> assertEquals(List.of(2L, 3L), porRango.stream().map(Instituto::getId).toList()),
+                () -> assertEquals(List.of(3L), porTipoYCiudad.stream().map(Instituto::getId).toList()),
+                () -> assertEquals(List.of(2L, 3L), porFecha.stream().map(Instituto::getId).toList()),
+                () -> assertEquals(List.of(3L), comodines.stream().map(Instituto::getId).toList()),
+                () -> assertEquals(List.of(3L), sinComodines.stream().map(Instituto::getId).toList())
+        );
+    }
+
+    @Test
+    void totales_groupedInSql() {
+        // Arrange
+        repositorio.save(Instituto.builder().id(3L).nombre("Sin ciudad").tipo("privado").uuid(UUID.randomUUID()).build());
+
+        // Act
+        var porCiudad = repositorio.totalesPorCiudad();
+        var porTipo = repositorio.totalesPorTipo();
+
+        // Assert
+        assertAll("totales_groupedInSql",
+                () -> assertEquals(new InstitutoTotales(2, 2, 2458 + 888, 2, 120 + 46), porCiudad.get("Madrid")),
+                () -> assertEquals(new InstitutoTotales(1, 0, 0, 0, 0), porCiudad.get("sin especificar")),
+                () -> assertEquals(new InstitutoTotales(2, 1, 888, 1, 46), porTipo.get("privado"))
+        );
+    }
+
+    @Test
+    void findAllAfter_keysetBothDirections() {
+        // Arrange
+        repositorio.save(Instituto.builder().id(3L).nombre("Instituto Tres").uuid(UUID.randomUUID()).build());
+
+        // Act & Assert
+        assertAll("findAllAfter_keysetBothDirections",
+                () -> assertEquals(List.of(1L, 2L), repositorio.findAllAfter(null, 2, false).stream().map(Instituto::getId).toList()),
+                () -> assertEquals(List.of(3L), repositorio.findAllAfter(2L, 5, false).stream().map(Instituto::getId).toList()),
+                () -> assertEquals(List.of(3L, 2L), repositorio.findAllAfter(null, 2, true).stream().map(Instituto::getId).toList()),
+                () -> assertEquals(List.of(1L), repositorio.findAllAfter(2L, 5, true).stream().map(Instituto::getId).toList())
+        );
+    }
+}
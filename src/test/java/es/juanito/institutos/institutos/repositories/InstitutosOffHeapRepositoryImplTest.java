@@ -0,0 +1,113 @@
+package es.juanito.institutos.institutos.repositories;
+
+import es.juanito.institutos.institutos.dto.InstitutoCriteriaDto;
+import es.juanito.institutos.institutos.models.Instituto;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InstitutosOffHeapRepositoryImplTest extends InstitutosRepositoryContractTest {
+
+    @Override
+    protected InstitutosRepository crearRepositorio() {
+        return new InstitutosOffHeapRepositoryImpl();
+    }
+
+    @AfterEach
+    void tearDown() {
+        ((InstitutosOffHeapRepositoryImpl) repositorio).close();
+    }
+
+    // Cada findAll crea en el heap todos los institutos a partir de las filas nativas, como JDBC a partir de las filas de la tabla
+    @Override
+    protected int altasPorEscritor() {
+        return 100;
+    }
+
+    @Test
+    void findById_readsBackAllColumns() {
+        // Arrange: nulos, textos vacíos y fechas con nanosegundos
+        var completo = Instituto.builder().id(3L).nombre("Ñandú ÁÉÍ").ciudad("").direccion(null).telefono("1").email("e@e.es")
+                .numeroEstudiantes(0).numeroProfesores(null).tipo("publico").anioFundacion(LocalDate.of(1, 1, 1))
+                .codigoInstituto("0001-XYZ").createdAt(LocalDateTime.of(2024, 2, 29, 23, 59, 59, 123_456_789))
+                .updateAt(null).uuid(null).isDeleted(false).build();
+
+        // Act
+        repositorio.save(completo);
+        var leido = repositorio.findById(3L).orElseThrow();
+
+        // Assert
+        assertAll("findById_readsBackAllColumns",
+                () -> assertEquals(completo, leido),
+                () -> assertEquals("nandu aei", leido.getNombreBusqueda()),
+                () -> assertEquals(instituto1, repositorio.findById(1L).orElseThrow()),
+                () -> assertNull(leido.getUuid())
+        );
+    }
+
+    @Test
+    void save_outOfOrderIdsAndReusedRows_keepIdOrder() {
+        // Arrange: ids hacia atrás, con huecos y borrados que dejan filas libres para reutilizar
+        for (long id = 100; id >= 3; id -= 2) {
+            repositorio.save(Instituto.builder().id(id).nombre("Instituto " + id).uuid(UUID.randomUUID()).build());
+        }
+        repositorio.deleteAllById(LongStream.rangeClosed(3, 50).boxed().toList());
+        for (long id = 4; id <= 50; id += 2) {
+            repositorio.save(Instituto.builder().id(id).nombre("Instituto " + id).uuid(UUID.randomUUID()).build());
+        }
+
+        // Act
+        List<Long> ids = repositorio.findAll().stream().map(Instituto::getId).toList();
+
+        // Assert
+        List<Long> esperados = new ArrayList<>(List.of(1L, 2L));
+        LongStream.rangeClosed(4, 50).filter(id -> id % 2 == 0).forEach(esperados::add);
+        LongStream.rangeClosed(51, 100).filter(id -> id % 2 == 0).forEach(esperados::add);
+        assertAll("save_outOfOrderIdsAndReusedRows_keepIdOrder",
+                () -> assertEquals(esperados, ids),
+                () -> assertEquals(esperados.size(), repositorio.count()),
+                () -> assertEquals(List.of(52L, 54L), repositorio.findAllAfter(50L, 2, false).stream().map(Instituto::getId).toList()),
+                () -> assertEquals(List.of(50L, 48L), repositorio.findAllAfter(51L, 2, true).stream().map(Instituto::getId).toList())
+        );
+    }
+
+    @Test
+    void save_manyRewritesAndDeletes_compactsStringsAndOrder() {
+        // Arrange: suficientes reescrituras para compactar los textos y bajas para compactar el orden
+        String relleno = "x".repeat(200);
+        List<UUID> uuids = new ArrayList<>();
+        for (long id = 3; id < 3003; id++) {
+            UUID uuid = UUID.randomUUID();
+            uuids.add(uuid);
+            repositorio.save(Instituto.builder().id(id).nombre("Instituto " + id).direccion(relleno).uuid(uuid).build());
+        }
+        for (int vuelta = 0; vuelta < 10; vuelta++) {
+            for (long id = 3; id < 3003; id++) {
+                repositorio.save(Instituto.builder().id(id).nombre("Instituto " + id + " v" + vuelta).direccion(relleno)
+                        .uuid(uuids.get((int) id - 3)).build());
+            }
+        }
+        repositorio.deleteAllById(LongStream.range(3, 2503).boxed().toList());
+
+        // Act
+        var restantes = repositorio.findAll(InstitutoCriteriaDto.builder().nombre("v9").build());
+        var porUuid = repositorio.findByUuid(uuids.getLast()).orElseThrow();
+
+        // Assert
+        assertAll("save_manyRewritesAndDeletes_compactsStringsAndOrder",
+                () -> assertEquals(2 + 500, repositorio.count()),
+                () -> assertEquals(500, restantes.size()),
+                () -> assertEquals(2503L, restantes.getFirst().getId()),
+                () -> assertEquals("Instituto 3002 v9", porUuid.getNombre()),
+                () -> assertTrue(repositorio.findByUuid(uuids.getFirst()).isEmpty())
+        );
+    }
+}
@@ -0,0 +1,834 @@
+package es.juanito.institutos.institutos.repositories;
+
+import es.juanito.institutos.institutos.dto.InstitutoCriteriaDto;
+import es.juanito.institutos.institutos.models.Instituto;
+import es.juanito.institutos.institutos.models.InstitutoTotales;
+import es.juanito.institutos.institutos.utils.ClaveBusqueda;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Lo que tiene que cumplir cualquier InstitutosRepository: cada almacenamiento hereda estos tests con su crearRepositorio
+abstract class InstitutosRepositoryContractTest {
+
+    protected final Instituto instituto1 = Instituto.builder()
+            .id(1L)
+            .nombre("Ramón María del Valle Inclan")
+            .direccion("Calle Medidas")
+            .ciudad("Madrid")
+            .telefono("999-88-77-00")
+            .email("MiguelGarcia@Email.com")
+            .numeroEstudiantes(2458)
+            .numeroProfesores(120)
+            .tipo("concertado")
+            .anioFundacion(LocalDate.of(1854,1,1))
+            .createdAt(LocalDateTime.now())
+            .updateAt(LocalDateTime.now())
+            .uuid(UUID.fromString("51af0a67-ff4b-42f3-8bc3-9db6531d4985"))
+            .build();
+
+    protected final Instituto instituto2 = Instituto.builder()
+            .id(2L)
+            .nombre("Jesús y María")
+            .direccion("García Noblejas")
+            .ciudad("Madrid")
+            .telefono("000-11-22-33")
+            .email("MariusGutierrez@Email.com")
+            .numeroEstudiantes(888)
+            .numeroProfesores(46)
+            .tipo("privado")
+            .anioFundacion(LocalDate.of(2000,12,31))
+            .createdAt(LocalDateTime.now())
+            .updateAt(LocalDateTime.now())
+            .uuid(UUID.fromString("8e7780f9-0771-4ff8-abdc-6e93f771f3c7"))
+            .build();
+
+    protected InstitutosRepository repositorio;
+
+    // Un repositorio nuevo, con los datos de partida, para cada test
+    protected abstract InstitutosRepository crearRepositorio() throws Exception;
+
+    // Altas de cada escritor en save_concurrentWriters_noLostWrites (cada 50 se lee además todo el catálogo)
+    // y reescrituras de cada uno en save_concurrentWritersSharingIndexKeys_indexesFollowLastWrite
+    protected int altasPorEscritor() {
+        return 500;
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        repositorio = crearRepositorio();
+        repositorio.save(instituto1);
+        repositorio.save(instituto2);
+    }
+
+    @Test
+    void findAll() {
+        // Act
+        List<Instituto> institutos = repositorio.findAll();
+
+        // assert
+        assertAll("findAll",
+                () -> assertNotNull(institutos),
+                () -> assertEquals(2, institutos.size())
+                );
+    }
+
+    @Test
+    void findAllByCiudad() {
+        // Act
+        String ciudad = "Madrid";
+        List<Instituto> institutos = repositorio.findAllByCiudad(ciudad);
+
+        // Assert
+        assertAll("findAllByCiudad",
+                () -> assertNotNull(institutos),
+                () -> assertEquals(2, institutos.size()),
+                () -> assertEquals(ciudad, institutos.getFirst().getCiudad())
+        );
+    }
+
+    @Test
+    void findAllByNombre() {
+        // Act
+        String nombre = "Ramón María del Valle Inclan";
+        List<Instituto> institutos = repositorio.findAllByNombre(nombre);
+
+        // Assert
+        assertAll("findAllByNombre",
+                () -> assertNotNull(institutos),
+                () -> assertEquals(1,institutos.size()),
+                () -> assertEquals(nombre, institutos.getFirst().getNombre())
+        );
+    }
+
+    @Test
+    void findAllByCiudadAndNombre() {
+        // Act
+        String ciudad = "Madrid";
+        String nombre = "Jesús y María";
+        List<Instituto> institutos = repositorio.findAllByCiudadAndNombre(ciudad, nombre);
+        // Assert
+        assertAll(
+                () -> assertNotNull(institutos),
+                () -> assertEquals(1, institutos.size()),
+                () -> assertEquals(ciudad, institutos.getFirst().getCiudad())
+        );
+    }
+
+    @Test
+    void findAllByNombre_substringAndCase() {
+        // Act
+        List<Instituto> porTrozo = repositorio.findAllByNombre("VALLE inc");
+        List<Instituto> corto = repositorio.findAllByNombre("ma");
+        List<Instituto> ninguno = repositorio.findAllByNombre("Quevedo");
+
+        // Assert
+        assertAll("findAllByNombre_substringAndCase",
+                () -> assertEquals(List.of(1L), porTrozo.stream().map(Instituto::getId).toList()),
+                () -> assertEquals(List.of(1L, 2L), corto.stream().map(Instituto::getId).toList()),
+                () -> assertTrue(ninguno.isEmpty())
+        );
+    }
+
+    @Test
+    void findAllByNombre_afterUpdate_usesNewName() {
+        // Arrange
+        repositorio.save(Instituto.builder().id(1L).nombre("Instituto Simancas").ciudad("Toledo").uuid(instituto1.getUuid()).build());
+
+        // Act
+        List<Instituto> anterior = repositorio.findAllByNombre("Valle");
+        List<Instituto> nuevo = repositorio.findAllByCiudadAndNombre("tole", "simancas");
+
+        // Assert
+        assertAll("findAllByNombre_afterUpdate_usesNewName",
+                () -> assertTrue(anterior.isEmpty()),
+                () -> assertEquals(List.of(1L), nuevo.stream().map(Instituto::getId).toList())
+        );
+    }
+
+    @Test
+    void save_sameInstanceModified_unindexesPreviousValues() {
+        // Arrange: se modifica el mismo objeto que se leyó y se vuelve a guardar
+        var leido = repositorio.findById(1L).orElseThrow();
+        leido.setNombre("Instituto Simancas");
+        leido.setCiudad("Toledo");
+        leido.setTipo("privado");
+        leido.setNumeroEstudiantes(10);
+
+        // Act
+        repositorio.save(leido);
+
+        // Assert
+        assertAll("save_sameInstanceModified_unindexesPreviousValues",
+                () -> assertTrue(repositorio.findAllByNombre("Valle").isEmpty()),
+                () -> assertEquals(List.of(1L), repositorio.findAllByCiudadAndNombre("tole", "simancas").stream().map(Instituto::getId).toList()),
+                () -> assertEquals(List.of(1L), repositorio.findAll(InstitutoCriteriaDto.builder().tipo("privado").maxEstudiantes(10).build())
+                        .stream().map(Instituto::getId).toList()),
+                () -> assertEquals(new InstitutoTotales(1, 1, 10, 1, 120), repositorio.totalesPorCiudad().get("Toledo")),
+                () -> assertEquals(repositorio.count(), repositorio.totalesPorCiudad().values().stream().mapToLong(InstitutoTotales::institutos).sum())
+        );
+    }
+
+    @Test
+    void save_staleSearchKeys_areRecomputed() {
+        // Arrange: claves de búsqueda de un nombre y una ciudad anteriores
+        var instituto = Instituto.builder().id(3L).nombre("IES Simancas").ciudad("Toledo").uuid(UUID.randomUUID())
+                .nombreBusqueda("ies valle").ciudadBusqueda("madrid").build();
+
+        // Act
+        repositorio.save(instituto);
+
+        // Assert
+        assertAll("save_staleSearchKeys_areRecomputed",
+                () -> assertEquals(List.of(3L), repositorio.findAllByCiudadAndNombre("toledo", "simancas").stream().map(Instituto::getId).toList()),
+                () -> assertFalse(repositorio.findAllByCiudad("madrid").stream().anyMatch(encontrado -> encontrado.getId() == 3L))
+        );
+    }
+
+    @Test
+    void findAllByCiudadAndNombre_matchesFullScan() {
+        // Arrange
+        // Con datos aleatorios el índice debe dar exactamente lo mismo que recorrer todo con contains sobre el texto normalizado
+        Random random = new Random(42);
+        String[] palabras = {"Instituto", "Colegio", "San", "José", "Madrid", "Sevilla", "Valle", "Norte", "Sur", "María"};
+        for (long id = 3; id < 500; id++) {
+            repositorio.save(Instituto.builder()
+                    .id(id)
+                    .nombre(palabras[random.nextInt(palabras.length)] + " " + palabras[random.nextInt(palabras.length)])
+                    .ciudad(random.nextInt(10) == 0 ? null : palabras[random.nextInt(palabras.length)])
+                    .uuid(UUID.randomUUID())
+                    .build());
+        }
+        String[] consultas = {"san", "ILL", "o M", "ad", "Norte", "xyz", "maría", "e"};
+
+        // Act & Assert
+        for (String ciudad : consultas) {
+            for (String nombre : consultas) {
+                List<Long> esperado = repositorio.findAll().stream()
+                        .filter(i -> i.getCiudad() != null && ClaveBusqueda.normalizar(i.getCiudad()).contains(ClaveBusqueda.normalizar(ciudad)))
+                        .filter(i -> ClaveBusqueda.normalizar(i.getNombre()).contains(ClaveBusqueda.normalizar(nombre)))
+                        .map(Instituto::getId)
+                        .toList();
+                assertEquals(esperado, repositorio.findAllByCiudadAndNombre(ciudad, nombre).stream().map(Instituto::getId).toList(),
+                        "ciudad=" + ciudad + ", nombre=" + nombre);
+            }
+        }
+    }
+
+    @Test
+    void findAllByCriteria_combinesIndexesAndFilters() {
+        // Arrange
+        repositorio.save(Instituto.builder().id(3L).nombre("IES Norte").ciudad("Madrid").tipo("Publico")
+                .numeroEstudiantes(800).anioFundacion(LocalDate.of(1990, 1, 1)).codigoInstituto("1111-AAA").uuid(UUID.randomUUID()).build());
+        repositorio.save(Instituto.builder().id(4L).nombre("IES Sur").ciudad("Madrid").tipo("publico")
+                .numeroEstudiantes(300).anioFundacion(LocalDate.of(2005, 1, 1)).codigoInstituto("2222-BBB").uuid(UUID.randomUUID()).build());
+
+        // Act
+        var porTipo = repositorio.findAll(InstitutoCriteriaDto.builder().tipo("PUBLICO").build());
+        var porCodigo = repositorio.findAll(InstitutoCriteriaDto.builder().codigoInstituto("2222-bbb").build());
+        var combinado = repositorio.findAll(InstitutoCriteriaDto.builder()
+                .ciudad("madrid").tipo("publico").minEstudiantes(500).fundadoDesde(LocalDate.of(1980, 1, 1)).build());
+        var sinResultados = repositorio.findAll(InstitutoCriteriaDto.builder().tipo("publico").maxEstudiantes(100).build());
+
+        // Assert
+        assertAll("findAllByCriteria_combinesIndexesAndFilters",
+                () -> assertEquals(List.of(3L, 4L), porTipo.stream().map(Instituto::getId).toList()),
+                () -> assertEquals(List.of(4L), porCodigo.stream().map(Instituto::getId).toList()),
+                () -> assertEquals(List.of(3L), combinado.stream().map(Instituto::getId).toList()),
+                () -> assertTrue(sinResultados.isEmpty())
+        );
+    }
+
+    @Test
+    void findAllByCriteria_rangesAreInclusiveAndFollowUpdates() {
+        // Arrange
+        repositorio.save(Instituto.builder().id(3L).nombre("IES Tres").numeroEstudiantes(500).numeroProfesores(30)
+                .anioFundacion(LocalDate.of(1989, 12, 31)).uuid(UUID.randomUUID()).build());
+        repositorio.save(Instituto.builder().id(4L).nombre("IES Cuatro").numeroEstudiantes(2000).numeroProfesores(90)
+                .anioFundacion(LocalDate.of(1990, 1, 1)).uuid(UUID.randomUUID()).build());
+        var criteria = InstitutoCriteriaDto.builder().minEstudiantes(500).maxEstudiantes(2000).fundadoHasta(LocalDate.of(2000, 12, 31)).build();
+
+        // Act
+        var antes = repositorio.findAll(criteria);
+        repositorio.save(Instituto.builder().id(3L).nombre("IES Tres").numeroEstudiantes(2500).numeroProfesores(30)
+                .anioFundacion(LocalDate.of(1989, 12, 31)).uuid(UUID.randomUUID()).build());
+        repositorio.deleteById(2L);
+        var despues = repositorio.findAll(criteria);
+        var porProfesores = repositorio.findAll(InstitutoCriteriaDto.builder().minProfesores(40).maxProfesores(120).build());
+        var rangoVacio = repositorio.findAll(InstitutoCriteriaDto.builder().minEstudiantes(2000).maxEstudiantes(500).build());
+
+        // Assert
+        assertAll("findAllByCriteria_rangesAreInclusiveAndFollowUpdates",
+                () -> assertEquals(List.of(2L, 3L, 4L), antes.stream().map(Instituto::getId).toList()),
+                () -> assertEquals(List.of(4L), despues.stream().map(Instituto::getId).toList()),
+                () -> assertEquals(List.of(1L, 4L), porProfesores.stream().map(Instituto::getId).toList()),
+                () -> assertTrue(rangoVacio.isEmpty())
+        );
+    }
+
+    @Test
+    void findAllByCriteria_matchesFullScan() {
+        // Arrange
+        // Sea cual sea el índice elegido, el resultado tiene que ser el de filtrar todo el mapa
+        Random random = new Random(7);
+        String[] tipos = {"publico", "privado", "concertado"};
+        for (long id = 3; id < 500; id++) {
+            repositorio.save(Instituto.builder()
+                    .id(id)
+                    .nombre("Instituto " + (id % 37))
+                    .ciudad(random.nextBoolean() ? "Sevilla" : "Cádiz")
+                    .tipo(tipos[random.nextInt(tipos.length)])
+                    .numeroEstudiantes(random.nextInt(2000))
+                    .numeroProfesores(random.nextInt(10) == 0 ? null : random.nextInt(150))
+                    .anioFundacion(LocalDate.of(1900 + random.nextInt(120), 1, 1))
+                    .codigoInstituto(String.format("%04d-AAA", id % 100))
+                    .uuid(UUID.randomUUID())
+                    .build());
+        }
+
+        // Act & Assert
+        for (int i = 0; i < 500; i++) {
+            var criteria = InstitutoCriteriaDto.builder()
+                    .ciudad(random.nextBoolean() ? null : "cadiz")
+                    .nombre(random.nextBoolean() ? null : "uto 1")
+                    .tipo(random.nextBoolean() ? null : tipos[random.nextInt(tipos.length)])
+                    .codigoInstituto(random.nextInt(4) > 0 ? null : String.format("%04d-AAA", random.nextInt(100)))
+                    .minEstudiantes(random.nextBoolean() ? null : random.nextInt(2000))
+                    .maxEstudiantes(random.nextBoolean() ? null : random.nextInt(2000))
+                    .minProfesores(random.nextInt(3) > 0 ? null : random.nextInt(150))
+                    .maxProfesores(random.nextInt(3) > 0 ? null : random.nextInt(150))
+                    .fundadoDesde(random.nextInt(3) > 0 ? null : LocalDate.of(1900 + random.nextInt(120), 1, 1))
+                    .fundadoHasta(random.nextBoolean() ? null : LocalDate.of(1900 + random.nextInt(120), 1, 1))
+                    .build();
+            List<Long> esperado = repositorio.findAll().stream()
+                    .filter(ins -> criteria.getCiudad() == null || (ins.getCiudad() != null && ClaveBusqueda.normalizar(ins.getCiudad()).contains(criteria.getCiudad())))
+                    .filter(ins -> criteria.getNombre() == null || ClaveBusqueda.normalizar(ins.getNombre()).contains(criteria.getNombre()))
+                    .filter(ins -> criteria.getTipo() == null || criteria.getTipo().equalsIgnoreCase(ins.getTipo()))
+                    .filter(ins -> criteria.getCodigoInstituto() == null || criteria.getCodigoInstituto().equalsIgnoreCase(ins.getCodigoInstituto()))
+                    .filter(ins -> criteria.getMinEstudiantes() == null || (ins.getNumeroEstudiantes() != null && ins.getNumeroEstudiantes() >= criteria.getMinEstudiantes()))
+                    .filter(ins -> criteria.getMaxEstudiantes() == null || (ins.getNumeroEstudiantes() != null && ins.getNumeroEstudiantes() <= criteria.getMaxEstudiantes()))
+                    .filter(ins -> criteria.getMinProfesores() == null || (ins.getNumeroProfesores() != null && ins.getNumeroProfesores() >= criteria.getMinProfesores()))
+                    .filter(ins -> criteria.getMaxProfesores() == null || (ins.getNumeroProfesores() != null && ins.getNumeroProfesores() <= criteria.getMaxProfesores()))
+                    .filter(ins -> criteria.getFundadoDesde() == null || (ins.getAnioFundacion() != null && !ins.getAnioFundacion().isBefore(criteria.getFundadoDesde())))
+                    .filter(ins -> criteria.getFundadoHasta() == null || (ins.getAnioFundacion() != null && !ins.getAnioFundacion().isAfter(criteria.getFundadoHasta())))
+                    .map(Instituto::getId)
+                    .toList();
+            assertEquals(esperado, repositorio.findAll(criteria).stream().map(Instituto::getId).toList(), criteria.toString());
+        }
+    }
+
+    @Test
+    void totales_adjustedOnSaveUpdateAndDelete() {
+        // Arrange
+        repositorio.save(Instituto.builder().id(3L).nombre("IES Tres").ciudad("Toledo").tipo("publico")
+                .numeroEstudiantes(400).uuid(UUID.randomUUID()).build());
+
+        // Act
+        var inicial = repositorio.totalesPorCiudad();
+        // Se muda a Madrid, cambia de tipo y pasa a informar profesores
+        repositorio.save(Instituto.builder().id(3L).nombre("IES Tres").ciudad("Madrid").tipo("privado")
+                .numeroEstudiantes(600).numeroProfesores(30).uuid(UUID.randomUUID()).build());
+        repositorio.deleteById(1L);
+        var porCiudad = repositorio.totalesPorCiudad();
+        var porTipo = repositorio.totalesPorTipo();
+
+        // Assert
+        assertAll("totales_adjustedOnSaveUpdateAndDelete",
+                () -> assertEquals(new InstitutoTotales(1, 1, 400, 0, 0), inicial.get("Toledo")),
+                () -> assertEquals(new InstitutoTotales(2, 2, 888 + 600, 2, 46 + 30), porCiudad.get("Madrid")),
+                () -> assertFalse(porCiudad.containsKey("Toledo")),
+                () -> assertEquals(new InstitutoTotales(2, 2, 888 + 600, 2, 46 + 30), porTipo.get("privado")),
+                () -> assertFalse(porTipo.containsKey("concertado")),
+                () -> assertEquals(repositorio.count(), porTipo.values().stream().mapToLong(InstitutoTotales::institutos).sum())
+        );
+    }
+
+    @Test
+    void findAllAfter_ascending_returnsNextIds() {
+        // Arrange
+        repositorio.save(Instituto.builder().id(3L).nombre("Instituto Tres").uuid(UUID.randomUUID()).build());
+        repositorio.save(Instituto.builder().id(4L).nombre("Instituto Cuatro").uuid(UUID.randomUUID()).build());
+
+        // Act
+        List<Instituto> primeros = repositorio.findAllAfter(null, 2, false);
+        List<Instituto> siguientes = repositorio.findAllAfter(2L, 5, false);
+
+        // Assert
+        assertAll("findAllAfter_ascending_returnsNextIds",
+                () -> assertEquals(List.of(1L, 2L), primeros.stream().map(Instituto::getId).toList()),
+                () -> assertEquals(List.of(3L, 4L), siguientes.stream().map(Instituto::getId).toList())
+        );
+    }
+
+    @Test
+    void findAllAfter_descending_returnsPreviousIds() {
+        // Act
+        List<Instituto> institutos = repositorio.findAllAfter(2L, 5, true);
+
+        // Assert
+        assertEquals(List.of(1L), institutos.stream().map(Instituto::getId).toList());
+    }
+
+    @Test
+    void findAllOrderedBy_ordersByValueThenIdWithNullsLast() {
+        // Arrange
+        repositorio.save(Instituto.builder().id(3L).nombre("IES Tres").numeroEstudiantes(888).uuid(UUID.randomUUID()).build());
+        repositorio.save(Instituto.builder().id(4L).nombre("IES Cuatro").uuid(UUID.randomUUID()).build());
+        repositorio.save(Instituto.builder().id(5L).nombre("IES Cinco").numeroEstudiantes(100).uuid(UUID.randomUUID()).build());
+
+        // Act
+        var ascendente = ids(repositorio.findAllOrderedBy("numeroEstudiantes", false, 0, 10));
+        var segundaPagina = ids(repositorio.findAllOrderedBy("numeroEstudiantes", false, 3, 2));
+        var descendente = ids(repositorio.findAllOrderedBy("numeroEstudiantes", true, 0, 2));
+        var descendenteResto = ids(repositorio.findAllOrderedBy("numeroEstudiantes", true, 2, 10));
+        var porFundacion = ids(repositorio.findAllOrderedBy("anioFundacion", true, 0, 10));
+        repositorio.save(Instituto.builder().id(5L).nombre("IES Cinco").numeroEstudiantes(3000).uuid(UUID.randomUUID()).build());
+        repositorio.deleteById(3L);
+        var actualizado = ids(repositorio.findAllOrderedBy("numeroEstudiantes", false, 0, 10));
+
+        // Assert
+        assertAll("findAllOrderedBy_ordersByValueThenIdWithNullsLast",
+                () -> assertEquals(List.of(5L, 2L, 3L, 1L, 4L), ascendente),
+                () -> assertEquals(List.of(1L, 4L), segundaPagina),
+                () -> assertEquals(List.of(4L, 1L), descendente),
+                () -> assertEquals(List.of(2L, 3L, 5L), descendenteResto),
+                () -> assertEquals(List.of(3L, 4L, 5L, 2L, 1L), porFundacion),
+                () -> assertEquals(List.of(2L, 1L, 5L, 4L), actualizado),
+                () -> assertEquals(List.of(), repositorio.findAllOrderedBy("numeroProfesores", false, 10, 5))
+        );
+    }
+
+    @Test
+    void count_followsSavesAndDeletes() {
+        // Act
+        repositorio.save(Instituto.builder().id(3L).nombre("Instituto Tres").uuid(UUID.randomUUID()).build());
+        repositorio.save(Instituto.builder().id(3L).nombre("Instituto Tres bis").uuid(UUID.randomUUID()).build());
+        repositorio.deleteById(1L);
+        repositorio.deleteById(99L);
+
+        // Assert
+        assertEquals(2L, repositorio.count());
+    }
+
+    @Test
+    void findById_existingId_returnsOptionalWithInstituto() {
+        // Act
+        Long id = 1L;
+        Optional<Instituto> optionalInstituto = repositorio.findById(id);
+
+        // Assert
+        assertAll("findById_existingId_returnsOptionalWithInstituto",
+                () -> assertNotNull(optionalInstituto),
+                () -> assertTrue(optionalInstituto.isPresent()),
+                () -> assertEquals(id, optionalInstituto.get().getId())
+        );
+    }
+
+    @Test
+    void findById_nonExistingId_returnsEmptyOptional() {
+        // Act
+        Long id = 4L;
+        Optional<Instituto> optionalInstituto = repositorio.findById(id);
+
+        //Assert
+        assertAll("findById_nonExistingId_returnsEmptyOptional",
+                () -> assertNotNull(optionalInstituto),
+                () -> assertTrue(optionalInstituto.isEmpty())
+        );
+
+    }
+
+    @Test
+    void findByUuid_existingId_returnsOptionalWithInstituto() {
+        // Act
+        UUID uuid = UUID.fromString("51af0a67-ff4b-42f3-8bc3-9db6531d4985");
+        Optional<Instituto> optionalInstituto = repositorio.findByUuid(uuid);
+
+        // Assert
+        assertAll("findByUuid_existingId_returnsOptionalWithInstituto",
+                () -> assertNotNull(optionalInstituto),
+                () -> assertTrue(optionalInstituto.isPresent()),
+                () -> assertEquals(uuid, optionalInstituto.get().getUuid())
+        );
+    }
+
+    @Test
+    void findByUuid_nonExistingId_returnsEmptyOptional() {
+        // Act
+        UUID uuid = UUID.randomUUID(); // un UUID que no está en el repositorio
+        Optional<Instituto> optionalInstituto = repositorio.findByUuid(uuid);
+
+
+        // Assert
+        assertAll("findByUuid_nonExistingId_returnsEmptyOptional",
+                () -> assertNotNull(optionalInstituto),
+                () -> assertTrue(optionalInstituto.isEmpty())
+        );
+    }
+
+    @Test
+    void findByUuid_afterUuidChange_onlyFindsNewUuid() {
+        // Arrange
+        UUID anterior = instituto1.getUuid();
+        UUID nuevo = UUID.fromString("0c4e4f4a-2b9f-4c8e-9a5e-3f1d2e6b7a90");
+        repositorio.save(Instituto.builder().id(1L).nombre(instituto1.getNombre()).uuid(nuevo).build());
+
+        // Act
+        Optional<Instituto> porAnterior = repositorio.findByUuid(anterior);
+        Optional<Instituto> porNuevo = repositorio.findByUuid(nuevo);
+
+        // Assert
+        assertAll("findByUuid_afterUuidChange_onlyFindsNewUuid",
+                () -> assertTrue(porAnterior.isEmpty()),
+                () -> assertTrue(porNuevo.isPresent()),
+                () -> assertEquals(1L, porNuevo.get().getId())
+        );
+    }
+
+    @Test
+    void existsById_existingId_returnsTrue() {
+        // Act
+        Long id = 1L;
+        boolean exists = repositorio.existsById(id);
+
+        // Assert
+        assertTrue(exists);
+    }
+
+    @Test
+    void existsById_nonExistingId_returnsFalse() {
+        // Act
+        Long id = 4L;
+        boolean exists = repositorio.existsById(id);
+
+        // Assert
+        assertFalse(exists);
+    }
+
+
+    @Test
+    void existsByUuid_existingId_returnsTrue() {
+        // Act
+        UUID uuid = UUID.fromString("51af0a67-ff4b-42f3-8bc3-9db6531d4985");
+        boolean exists = repositorio.existsByUuid(uuid);
+
+        // Assert
+        assertAll("existsByUuid_existingId_returnsTrue",
+                () -> assertTrue(exists, "El instituto existe")
+        );
+    }
+
+
+    @Test
+
+    void existsByUuid_nonExistingId_returnsFalse() {
+        // Act
+        UUID uuid = UUID.fromString("11111111-2222-3333-4444-555555555555");
+        boolean exists = repositorio.existsByUuid(uuid);
+
+        // Assert
+        assertFalse(exists);
+    }
+
+    @Test
+    void save_notExisting() {
+        // Arrange
+        Instituto instituto = Instituto.builder()
+                .id(3L)
+                .nombre("Instituto Simancas")
+                .ciudad("Toledo")
+                .direccion("Camino de Yepes")
+                .telefono("999-88-77-66")
+                .email("Simancas@Email.com")
+                .numeroEstudiantes(987)
+                .numeroProfesores(45)
+                .tipo("Concertado")
+                .anioFundacion(LocalDate.of(2025, 10, 31))
+                .build();
+
+        // Act
+        Instituto savedInstituto = repositorio.save(instituto);
+        var all = repositorio.findAll();
+
+        // Assert
+        assertAll("save",
+                () -> assertNotNull(savedInstituto),
+                () -> assertEquals(instituto, savedInstituto),
+                () -> assertEquals(3, all.size())
+        );
+    }
+
+    @Test
+    void save_butExisting() {
+        // Arrange
+        Instituto instituto = Instituto.builder().id(1L).build();
+
+        // Act
+        Instituto savedInstituto = repositorio.save(instituto);
+        var all = repositorio.findAll();
+
+        //Assert
+        assertAll("save",
+                () -> assertNotNull(savedInstituto),
+                () -> assertEquals(instituto, savedInstituto),
+                () -> assertEquals(2, all.size())
+        );
+    }
+
+    @Test
+    void deleteById_existingId() {
+        // Act
+        Long id = 1L;
+        repositorio.deleteById(id);
+        var all = repositorio.findAll();
+
+        // Assert
+        assertAll("deleteById_existingId",
+                () -> assertEquals(1, all.size()),
+                () -> assertFalse(repositorio.existsById(id)),
+                () -> assertFalse(repositorio.existsByUuid(instituto1.getUuid()))
+        );
+
+    }
+
+    @Test
+    void deleteByUuid_existingId() {
+        // Act
+        UUID uuid = UUID.fromString("51af0a67-ff4b-42f3-8bc3-9db6531d4985");
+        repositorio.deleteByUuid(uuid);
+        var all = repositorio.findAll();
+
+        // Assert
+        assertAll("deleteByUuid_existingId",
+                () -> assertEquals(1, all.size()),
+                () -> assertFalse(repositorio.existsByUuid(uuid))
+        );
+    }
+
+    @Test
+    void saveAll_andDeleteAllById() {
+        // Arrange
+        Long primero = repositorio.nextIds(3);
+        List<Instituto> lote = List.of(
+                Instituto.builder().id(primero).nombre("Instituto A").uuid(UUID.randomUUID()).build(),
+                Instituto.builder().id(primero + 1).nombre("Instituto B").uuid(UUID.randomUUID()).build(),
+                Instituto.builder().id(primero + 2).nombre("Instituto C").uuid(UUID.randomUUID()).build()
+        );
+
+        // Act
+        repositorio.saveAll(lote);
+        repositorio.deleteAllById(List.of(1L, primero));
+
+        // Assert
+        assertAll("saveAll_andDeleteAllById",
+                () -> assertEquals(3L, primero),
+                () -> assertEquals(6L, repositorio.nextId()),
+                () -> assertEquals(3L, repositorio.count()),
+                () -> assertFalse(repositorio.existsById(primero)),
+                () -> assertTrue(repositorio.existsByUuid(lote.get(2).getUuid())),
+                () -> assertFalse(repositorio.existsByUuid(instituto1.getUuid()))
+        );
+    }
+
+    @Test
+    void saveAllAndDeleteAllById_appliesSavesThenDeletes() {
+        // Arrange
+        var actualizado = Instituto.builder().id(2L).nombre("Instituto Dos").ciudad("Cuenca").uuid(instituto2.getUuid()).build();
+        var nuevo = Instituto.builder().id(3L).nombre("Instituto Tres").ciudad("Cuenca").uuid(UUID.randomUUID()).build();
+        // Se guarda y se borra en el mismo lote: gana el borrado
+        var efimero = Instituto.builder().id(4L).nombre("Instituto Cuatro").uuid(UUID.randomUUID()).build();
+
+        // Act
+        repositorio.saveAllAndDeleteAllById(List.of(actualizado, nuevo, efimero), List.of(1L, 4L, 99L));
+
+        // Assert
+        assertAll("saveAllAndDeleteAllById_appliesSavesThenDeletes",
+                () -> assertEquals(2L, repositorio.count()),
+                () -> assertFalse(repositorio.existsById(1L)),
+                () -> assertFalse(repositorio.existsById(4L)),
+                () -> assertFalse(repositorio.existsByUuid(efimero.getUuid())),
+                () -> assertEquals(List.of(2L, 3L), repositorio.findAllByCiudad("cuenca").stream().map(Instituto::getId).toList()),
+                () -> assertEquals(2L, repositorio.totalesPorCiudad().get("Cuenca").institutos()),
+                () -> assertTrue(repositorio.nextId() > 4L)
+        );
+    }
+
+    @Test
+    void findAllByNombreAndCiudad_ignoresAccentsAndCase() {
+        // Arrange
+        repositorio.save(Instituto.builder().id(3L).nombre("IES Innovación Tecnológica").ciudad("Málaga").uuid(UUID.randomUUID()).build());
+
+        // Act
+        var porNombre = repositorio.findAllByNombre("INNOVACION");
+        var porCiudad = repositorio.findAllByCiudad("malága");
+        var corta = repositorio.findAllByCiudad("ÁG");
+
+        // Assert
+        assertAll("findAllByNombreAndCiudad_ignoresAccentsAndCase",
+                () -> assertEquals(List.of(3L), porNombre.stream().map(Instituto::getId).toList()),
+                () -> assertEquals(List.of(3L), porCiudad.stream().map(Instituto::getId).toList()),
+                () -> assertEquals(List.of(3L), corta.stream().map(Instituto::getId).toList())
+        );
+    }
+
+    @Test
+    void nextId() {
+        // Act
+        Long nextId = repositorio.nextId();
+        var all = repositorio.findAll();
+
+        // Assert
+        assertAll("nextId",
+                ()-> assertEquals(3L,nextId),
+                () -> assertEquals(2, all.size())
+        );
+    }
+
+    @Test
+    void save_concurrentWriters_noLostWrites() throws Exception {
+        // Arrange
+        int escritores = 64;
+        int porEscritor = altasPorEscritor();
+        ExecutorService executor = Executors.newFixedThreadPool(escritores);
+        CountDownLatch salida = new CountDownLatch(1);
+        List<Future<?>> tareas = new ArrayList<>();
+
+        // Act
+        // Cada escritor guarda sus propios ids y a la vez recorre el repositorio como haría un GET
+        for (int escritor = 0; escritor < escritores; escritor++) {
+            long base = 1000L + (long) escritor * porEscritor;
+            tareas.add(executor.submit(() -> {
+                salida.await();
+                for (long id = base; id < base + porEscritor; id++) {
+                    repositorio.save(Instituto.builder().id(id).nombre("Instituto " + id).uuid(UUID.randomUUID()).build());
+                    if (id % 50 == 0) {
+                        repositorio.findAll();
+                    }
+                }
+                return null;
+            }));
+        }
+        salida.countDown();
+        for (Future<?> tarea : tareas) {
+            tarea.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        var all = repositorio.findAll();
+
+        // Assert
+        assertAll("save_concurrentWriters_noLostWrites",
+                () -> assertEquals(2 + escritores * porEscritor, all.size()),
+                () -> assertTrue(repositorio.existsById(1000L)),
+                () -> assertTrue(repositorio.existsById(1000L + (long) escritores * porEscritor - 1))
+        );
+    }
+
+    @Test
+    void save_concurrentWritersSharingIndexKeys_indexesFollowLastWrite() throws Exception {
+        // Arrange: cada pareja de escritores se pasa sus ids entre dos claves de tipo, estudiantes y nombre,
+        // así que las entradas de los índices se vacían y se vuelven a llenar mientras la otra escribe
+        int escritores = 32;
+        int vueltas = altasPorEscritor();
+        ExecutorService executor = Executors.newFixedThreadPool(escritores);
+        CountDownLatch salida = new CountDownLatch(1);
+        List<Future<?>> tareas = new ArrayList<>();
+
+        // Act
+        for (int escritor = 0; escritor < escritores; escritor++) {
+            long id = 1000L + escritor;
+            int pareja = escritor / 2;
+            tareas.add(executor.submit(() -> {
+                salida.await();
+                for (int vuelta = 0; vuelta < vueltas; vuelta++) {
+                    int clave = pareja * 2 + vuelta % 2;
+                    repositorio.save(Instituto.builder().id(id).nombre("Grupo " + clave + " fin").tipo("tipo" + clave)
+                            .numeroEstudiantes(10_000 + clave).uuid(UUID.randomUUID()).build());
+                }
+                return null;
+            }));
+        }
+        salida.countDown();
+        for (Future<?> tarea : tareas) {
+            tarea.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        // Assert: las dos de cada pareja acaban en la misma clave y la otra se queda vacía
+        List<Executable> comprobaciones = new ArrayList<>();
+        for (int pareja = 0; pareja < escritores / 2; pareja++) {
+            int clave = pareja * 2 + (vueltas - 1) % 2;
+            int vacia = pareja * 2 + vueltas % 2;
+            List<Long> esperados = List.of(1000L + pareja * 2, 1000L + pareja * 2 + 1);
+            comprobaciones.add(() -> assertEquals(esperados, ids(repositorio.findAll(
+                    InstitutoCriteriaDto.builder().tipo("tipo" + clave).build()))));
+            comprobaciones.add(() -> assertEquals(esperados, ids(repositorio.findAll(
+                    InstitutoCriteriaDto.builder().minEstudiantes(10_000 + clave).maxEstudiantes(10_000 + clave).build()))));
+            comprobaciones.add(() -> assertEquals(esperados, ids(repositorio.findAllByNombre("grupo " + clave + " fin"))));
+            comprobaciones.add(() -> assertEquals(List.of(), ids(repositorio.findAll(
+                    InstitutoCriteriaDto.builder().tipo("tipo" + vacia).build()))));
+            comprobaciones.add(() -> assertEquals(new InstitutoTotales(2, 2, 2L * (10_000 + clave), 0, 0),
+                    repositorio.totalesPorTipo().get("tipo" + clave)));
+        }
+        comprobaciones.add(() -> assertEquals(2 + escritores, repositorio.count()));
+        assertAll("save_concurrentWritersSharingIndexKeys_indexesFollowLastWrite", comprobaciones);
+    }
+
+    private static List<Long> ids(List<Instituto> institutos) {
+        return institutos.stream().map(Instituto::getId).toList();
+    }
+
+    @Test
+    void nextId_afterSaveWithHigherId_continuesFromIt() {
+        // Arrange
+        repositorio.save(Instituto.builder().id(10L).nombre("Instituto Diez").uuid(UUID.randomUUID()).build());
+
+        // Act
+        Long nextId = repositorio.nextId();
+        Long siguiente = repositorio.nextId();
+
+        // Assert
+        assertAll("nextId_afterSaveWithHigherId_continuesFromIt",
+                () -> assertEquals(11L, nextId),
+                () -> assertEquals(12L, siguiente)
+        );
+    }
+
+    @Test
+    void nextId_concurrentCallers_neverRepeatIds() throws Exception {
+        // Arrange
+        int hilos = 64;
+        int porHilo = 1000;
+        ExecutorService executor = Executors.newFixedThreadPool(hilos);
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        List<Future<?>> tareas = new ArrayList<>();
+
+        // Act
+        for (int hilo = 0; hilo < hilos; hilo++) {
+            tareas.add(executor.submit(() -> {
+                for (int i = 0; i < porHilo; i++) {
+                    ids.add(repositorio.nextId());
+                }
+                return null;
+            }));
+        }
+        for (Future<?> tarea : tareas) {
+            tarea.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        // Assert
+        assertEquals(hilos * porHilo, ids.size());
+    }
+}
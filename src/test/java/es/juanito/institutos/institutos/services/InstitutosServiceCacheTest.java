@@ -0,0 +1,347 @@
+package es.juanito.institutos.institutos.services;
+
+import es.juanito.institutos.institutos.cache.InstitutosCache;
+import es.juanito.institutos.institutos.dto.InstitutoBulkItemDto;
+import es.juanito.institutos.institutos.dto.InstitutoCreateDto;
+import es.juanito.institutos.institutos.dto.InstitutoCriteriaDto;
+import es.juanito.institutos.institutos.dto.InstitutoResponseDto;
+import es.juanito.institutos.institutos.dto.InstitutoUpdateDto;
+import es.juanito.institutos.institutos.exceptions.InstitutoNotFoundException;
+import es.juanito.institutos.institutos.mappers.InstitutoMapper;
+import es.juanito.institutos.institutos.repositories.InstitutosRepositoryImpl;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+// Lecturas después de escrituras con la caché activa: por id y por uuid deben ver siempre el último estado
+class InstitutosServiceCacheTest {
+
+    private InstitutosRepositoryImpl institutosRepository;
+    private InstitutosServiceImpl institutosService;
+    private InstitutoResponseDto guardado;
+
+    @BeforeEach
+    void setUp() {
+        institutosRepository = spy(new InstitutosRepositoryImpl());
+        institutosService = new InstitutosServiceImpl(institutosRepository, new InstitutoMapper(),
+                new InstitutosCache(new ConcurrentMapCacheManager(InstitutosCache.INSTITUTOS, InstitutosCache.UUIDS)),
+                Validation.buildDefaultValidatorFactory().getValidator());
+        guardado = institutosService.save(InstitutoCreateDto.builder()
+                .nombre("Las Meigas")
+                .ciudad("Galicia")
+                .direccion("Calle Barlovento")
+                .numeroEstudiantes(245)
+                .anioFundacion(LocalDate.of(2000, 5, 12))
+                .build());
+        clearInvocations(institutosRepository);
+    }
+
+    @Test
+    void save_thenFindById_servedFromCache() {
+        // Arrange
+        Long id = guardado.getId();
+
+        // Act
+        var res = institutosService.findById(id);
+
+        // Assert
+        assertEquals(guardado, res);
+
+        // Verify
+        verify(institutosRepository, never()).findById(anyLong());
+    }
+
+    @Test
+    void save_thenFindByUuid_servedFromSameEntry() {
+        // Arrange
+        String uuid = guardado.getUuid().toString();
+
+        // Act
+        var res = institutosService.findByUuid(uuid);
+
+        // Assert
+        assertSame(institutosService.findById(guardado.getId()), res);
+
+        // Verify
+        verify(institutosRepository, never()).findByUuid(any());
+    }
+
+    @Test
+    void findByUuidMiss_thenFindById_servedFromCache() {
+        // Arrange
+        var otro = institutosService.findByUuid(institutosRepository.findById(1L).orElseThrow().getUuid().toString());
+        clearInvocations(institutosRepository);
+
+        // Act
+        var res = institutosService.findById(1L);
+
+        // Assert
+        assertSame(otro, res);
+
+        // Verify
+        verify(institutosRepository, never()).findById(anyLong());
+    }
+
+    @Test
+    void update_thenFindById_returnsUpdated() {
+        // Arrange
+        institutosService.findById(guardado.getId());
+        institutosService.update(guardado.getId(), InstitutoUpdateDto.builder().numeroEstudiantes(999).build());
+
+        // Act
+        var res = institutosService.findById(guardado.getId());
+
+        // Assert
+        assertEquals(999, res.getNumeroEstudiantes());
+    }
+
+    @Test
+    void update_thenFindByUuid_returnsUpdated() {
+        // Arrange
+        institutosService.findByUuid(guardado.getUuid().toString());
+        institutosService.update(guardado.getId(), InstitutoUpdateDto.builder().nombre("Las Meigas II").build());
+
+        // Act
+        var res = institutosService.findByUuid(guardado.getUuid().toString());
+
+        // Assert
+        assertEquals("Las Meigas II", res.getNombre());
+
+        // Verify
+        verify(institutosRepository, never()).findByUuid(any());
+    }
+
+    @Test
+    void delete_thenFindById_throwsNotFound() {
+        // Arrange
+        institutosService.findById(guardado.getId());
+
+        // Act
+        institutosService.deleteById(guardado.getId());
+
+        // Assert
+        assertThrows(InstitutoNotFoundException.class, () -> institutosService.findById(guardado.getId()));
+    }
+
+    @Test
+    void delete_thenFindByUuid_throwsNotFound() {
+        // Arrange
+        institutosService.findByUuid(guardado.getUuid().toString());
+
+        // Act
+        institutosService.deleteById(guardado.getId());
+
+        // Assert
+        assertThrows(InstitutoNotFoundException.class, () -> institutosService.findByUuid(guardado.getUuid().toString()));
+    }
+
+    @Test
+    void findByIdMiss_deletedWhileReading_notLeftInCache() {
+        // Arrange: el borrado termina entre la lectura del repositorio y la escritura en la caché
+        var borrar = new AtomicBoolean(true);
+        doAnswer(invocacion -> {
+            var leido = invocacion.callRealMethod();
+            if (borrar.getAndSet(false)) {
+                institutosService.deleteById(1L);
+            }
+            return leido;
+        }).when(institutosRepository).findById(1L);
+
+        // Act
+        institutosService.findById(1L);
+
+        // Assert
+        assertThrows(InstitutoNotFoundException.class, () -> institutosService.findById(1L));
+    }
+
+    @Test
+    void findByUuidMiss_deletedWhileReading_notLeftInCache() {
+        // Arrange
+        var uuid = institutosRepository.findById(1L).orElseThrow().getUuid();
+        var borrar = new AtomicBoolean(true);
+        doAnswer(invocacion -> {
+            var leido = invocacion.callRealMethod();
+            if (borrar.getAndSet(false)) {
+                institutosService.deleteById(1L);
+            }
+            return leido;
+        }).when(institutosRepository).findByUuid(uuid);
+
+        // Act
+        institutosService.findByUuid(uuid.toString());
+
+        // Assert
+        assertAll(
+                () -> assertThrows(InstitutoNotFoundException.class, () -> institutosService.findByUuid(uuid.toString())),
+                () -> assertThrows(InstitutoNotFoundException.class, () -> institutosService.findById(1L))
+        );
+    }
+
+    @Test
+    void delete_thenSaveAnother_findByUuidStillNotFound() {
+        // Arrange: los ids no se reutilizan, así que el nuevo instituto nunca responde por el uuid del borrado
+        institutosService.findByUuid(guardado.getUuid().toString());
+
+        // Act
+        institutosService.deleteById(guardado.getId());
+        institutosService.save(InstitutoCreateDto.builder().nombre("Otro Instituto").direccion("Calle Sol").build());
+
+        // Assert
+        assertThrows(InstitutoNotFoundException.class, () -> institutosService.findByUuid(guardado.getUuid().toString()));
+    }
+
+    @Test
+    void findAll_builtOnceThenMaintainedIncrementally() {
+        // Arrange
+        var inicial = institutosService.findAll(null, null);
+        var nuevo = institutosService.save(InstitutoCreateDto.builder().nombre("Otro Instituto").direccion("Calle Sol").build());
+        institutosService.update(guardado.getId(), InstitutoUpdateDto.builder().nombre("Las Meigas II").build());
+        institutosService.deleteById(1L);
+
+        // Act
+        var res = institutosService.findAll(null, null);
+
+        // Assert
+        assertAll(
+                () -> assertEquals(List.of(1L, 2L, guardado.getId()), ids(inicial)),
+                () -> assertEquals(List.of(2L, guardado.getId(), nuevo.getId()), ids(res)),
+                () -> assertEquals("Las Meigas II", res.get(1).getNombre())
+        );
+
+        // Verify
+        verify(institutosRepository, times(1)).findAll();
+    }
+
+    @Test
+    void findAll_crossedUpdatesOfSameId_followsRepository() {
+        // Arrange: la segunda actualización se guarda y se publica entera entre el save y la publicación de la primera
+        institutosService.findAll(null, null);
+        var cruzar = new AtomicBoolean(true);
+        doAnswer(invocacion -> {
+            var guardadoAhora = invocacion.callRealMethod();
+            if (cruzar.getAndSet(false)) {
+                institutosService.update(guardado.getId(), InstitutoUpdateDto.builder().nombre("Segunda").build());
+            }
+            return guardadoAhora;
+        }).when(institutosRepository).save(any());
+
+        // Act
+        institutosService.update(guardado.getId(), InstitutoUpdateDto.builder().nombre("Primera").build());
+        var res = institutosService.findAll(null, null);
+
+        // Assert
+        assertAll(
+                () -> assertEquals("Segunda", institutosRepository.findById(guardado.getId()).orElseThrow().getNombre()),
+                () -> assertEquals(List.of("Segunda"), res.stream()
+                        .filter(instituto -> instituto.getId().equals(guardado.getId()))
+                        .map(InstitutoResponseDto::getNombre)
+                        .toList())
+        );
+    }
+
+    @Test
+    void findAll_manyWrites_matchesRepository() {
+        // Arrange: suficientes altas para partir trozos del listado, y bajas y cambios repartidos por todos ellos
+        institutosService.findAll(null, null);
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 3 * InstitutosListado.TROZO; i++) {
+            ids.add(institutosService.save(InstitutoCreateDto.builder().nombre("Instituto " + i).direccion("Calle " + i).build()).getId());
+        }
+        for (int i = 0; i < ids.size(); i += 3) {
+            institutosService.deleteById(ids.get(i));
+        }
+        for (int i = 1; i < ids.size(); i += 3) {
+            institutosService.update(ids.get(i), InstitutoUpdateDto.builder().nombre("Cambiado " + i).build());
+        }
+        institutosService.deleteById(1L);
+
+        // Act
+        var res = institutosService.findAll(null, null);
+
+        // Assert
+        var esperado = new InstitutoMapper().toResponseDtoList(institutosRepository.findAll());
+        assertAll(
+                () -> assertEquals(esperado, res),
+                () -> assertEquals(esperado.subList(10, 20), res.subList(10, 20)),
+                () -> assertEquals(esperado.getLast(), res.reversed().getFirst())
+        );
+    }
+
+    @Test
+    void bulk_afterFindAll_listadoAndCacheFollowBatch() {
+        // Arrange: listado construido y el guardado en la caché
+        institutosService.findAll(null, null);
+        var cambios = InstitutoCreateDto.builder().nombre("Las Meigas II").direccion("Calle Barlovento").build();
+        var nuevo = InstitutoCreateDto.builder().nombre("Nuevo").direccion("Calle Sol").build();
+
+        // Act
+        var resultados = institutosService.bulk(List.of(
+                InstitutoBulkItemDto.builder().op("update").id(guardado.getId()).instituto(cambios).build(),
+                InstitutoBulkItemDto.builder().op("delete").id(1L).build(),
+                InstitutoBulkItemDto.builder().op("create").instituto(nuevo).build(),
+                InstitutoBulkItemDto.builder().op("create").instituto(nuevo).build()));
+
+        // Assert
+        var esperado = new InstitutoMapper().toResponseDtoList(institutosRepository.findAll());
+        var listado = institutosService.findAll(null, null);
+        assertAll(
+                () -> assertEquals(esperado, listado),
+                () -> assertEquals(List.of(2L, guardado.getId(), resultados.get(2).getId(), resultados.get(3).getId()), ids(listado)),
+                () -> assertEquals("Las Meigas II", institutosService.findById(guardado.getId()).getNombre()),
+                () -> assertThrows(InstitutoNotFoundException.class, () -> institutosService.findById(1L))
+        );
+        clearInvocations(institutosRepository);
+        assertEquals(resultados.get(3).getInstituto(), institutosService.findById(resultados.get(3).getId()));
+
+        // Verify
+        verify(institutosRepository, never()).findById(anyLong());
+    }
+
+    @Test
+    void findAll_withoutWrites_returnsSameSnapshot() {
+        // Arrange
+        var primero = institutosService.findAll(null, "");
+
+        // Act
+        var segundo = institutosService.findAll(null, null);
+
+        // Assert
+        assertAll(
+                () -> assertSame(primero, segundo),
+                () -> assertThrows(UnsupportedOperationException.class, () -> segundo.add(guardado))
+        );
+    }
+
+    @Test
+    void reactive_sharesRepositoryAndCache() {
+        // Arrange
+        var reactivo = new InstitutosReactiveServiceImpl(institutosService);
+        var sincrono = institutosService.findById(guardado.getId());
+
+        // Act
+        var res = reactivo.findById(guardado.getId()).block();
+        verify(institutosRepository, never()).findById(anyLong());
+        reactivo.update(guardado.getId(), InstitutoUpdateDto.builder().numeroEstudiantes(999).build()).block();
+
+        // Assert
+        var filtrados = reactivo.findAll(InstitutoCriteriaDto.builder().ciudad("galicia").build()).collectList().block();
+        assertAll(
+                () -> assertSame(sincrono, res),
+                () -> assertEquals(999, institutosService.findById(guardado.getId()).getNumeroEstudiantes()),
+                () -> assertEquals(List.of(guardado.getId()), ids(filtrados))
+        );
+    }
+
+    private static List<Long> ids(List<InstitutoResponseDto> institutos) {
+        return institutos.stream().map(InstitutoResponseDto::getId).toList();
+    }
+}
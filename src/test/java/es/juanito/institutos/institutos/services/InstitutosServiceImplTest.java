@@ -1,18 +1,29 @@
 package es.juanito.institutos.institutos.services;
 
+import es.juanito.institutos.institutos.cache.InstitutosCache;
+import es.juanito.institutos.institutos.dto.InstitutoBulkItemDto;
+import es.juanito.institutos.institutos.dto.InstitutoBulkResultDto;
 import es.juanito.institutos.institutos.dto.InstitutoCreateDto;
+import es.juanito.institutos.institutos.dto.InstitutoCriteriaDto;
+import es.juanito.institutos.institutos.dto.InstitutoPageRequestDto;
+import es.juanito.institutos.institutos.dto.InstitutoPageResponseDto;
 import es.juanito.institutos.institutos.dto.InstitutoResponseDto;
 import es.juanito.institutos.institutos.dto.InstitutoUpdateDto;
+import es.juanito.institutos.institutos.exceptions.InstitutoBadRequestException;
 import es.juanito.institutos.institutos.exceptions.InstitutoBadUuidException;
 import es.juanito.institutos.institutos.exceptions.InstitutoNotFoundException;
 import es.juanito.institutos.institutos.mappers.InstitutoMapper;
 import es.juanito.institutos.institutos.models.Instituto;
+import es.juanito.institutos.institutos.models.InstitutoTotales;
 import es.juanito.institutos.institutos.repositories.InstitutosRepository;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.*;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.cache.support.NoOpCacheManager;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -65,6 +76,12 @@ class InstitutosServiceImplTest {
     // usamos el mapper real aunque en modo espía que nos permite simular algunas partes del mismo
     @Spy
     private InstitutoMapper institutoMapper;
+    // caché real pero sin almacenamiento, así cada test llega siempre al repositorio
+    @Spy
+    private InstitutosCache institutosCache = new InstitutosCache(new NoOpCacheManager());
+    // validador real de Bean Validation para las operaciones en lote
+    @Spy
+    private Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
     // Es la clase que se testea y a la que se inyectan los mocks y espías automáticamente
     @InjectMocks
     private InstitutosServiceImpl institutosService;
@@ -100,7 +117,8 @@ class InstitutosServiceImplTest {
         String ciudad = "Madrid";
         List<Instituto> expectedInstituto = List.of(instituto1);
         List<InstitutoResponseDto> expectedInstitutoResponse = institutoMapper.toResponseDtoList(expectedInstituto);
-        when(institutosRepository.findAllByCiudad(ciudad)).thenReturn(expectedInstituto);
+        var criteria = InstitutoCriteriaDto.builder().ciudad(ciudad).build();
+        when(institutosRepository.findAll(criteria)).thenReturn(expectedInstituto);
 
         //Act
         List<InstitutoResponseDto> actualInstitutoResponse = institutosService.findAll(ciudad, null);
@@ -110,7 +128,7 @@ class InstitutosServiceImplTest {
 
         // Verify
         // Verifica que solo se ejecuta este método
-        verify(institutosRepository, only()).findAllByCiudad(ciudad);
+        verify(institutosRepository, only()).findAll(criteria);
     }
     @Test
     void findAll_ShouldReturnInstitutosByNombre_WhenParametersProvided() {
@@ -118,7 +136,8 @@ class InstitutosServiceImplTest {
         String nombre = "Ramón María del Valle Inclan";
         List<Instituto> expectedInstituto = List.of(instituto1);
         List<InstitutoResponseDto> expectedInstitutoResponse = institutoMapper.toResponseDtoList(expectedInstituto);
-        when(institutosRepository.findAllByNombre(nombre)).thenReturn(expectedInstituto);
+        var criteria = InstitutoCriteriaDto.builder().nombre(nombre).build();
+        when(institutosRepository.findAll(criteria)).thenReturn(expectedInstituto);
 
         // Act
         List<InstitutoResponseDto> actualInstitutoResponse = institutosService.findAll(null, nombre);
@@ -127,7 +146,7 @@ class InstitutosServiceImplTest {
         assertIterableEquals(expectedInstitutoResponse,actualInstitutoResponse);
 
         // Verify
-        verify(institutosRepository, only()).findAllByNombre(nombre);
+        verify(institutosRepository, only()).findAll(criteria);
     }
 
     @Test
@@ -137,7 +156,8 @@ class InstitutosServiceImplTest {
         String nombre = "Ramón María del Valle Inclan";
         List<Instituto> expectedInstituto = List.of(instituto1);
         List<InstitutoResponseDto> expectedInstitutoResponse = institutoMapper.toResponseDtoList(expectedInstituto);
-        when(institutosRepository.findAllByCiudadAndNombre(ciudad,nombre)).thenReturn(expectedInstituto);
+        var criteria = InstitutoCriteriaDto.builder().ciudad(ciudad).nombre(nombre).build();
+        when(institutosRepository.findAll(criteria)).thenReturn(expectedInstituto);
 
         // Act
         List<InstitutoResponseDto> actualInstitutoResponse = institutosService.findAll(ciudad, nombre);
@@ -146,7 +166,181 @@ class InstitutosServiceImplTest {
         assertIterableEquals(expectedInstitutoResponse,actualInstitutoResponse);
 
         // Verify
-        verify(institutosRepository, only()).findAllByCiudadAndNombre(ciudad, nombre);
+        verify(institutosRepository, only()).findAll(criteria);
+    }
+
+    @Test
+    void findAll_ShouldPassAllFiltersToRepository_WhenCriteriaProvided() {
+        // Arrange
+        var criteria = InstitutoCriteriaDto.builder().tipo("concertado").minEstudiantes(2000).build();
+        when(institutosRepository.findAll(criteria)).thenReturn(List.of(instituto1));
+
+        // Act
+        List<InstitutoResponseDto> actualInstitutoResponse = institutosService.findAll(criteria);
+
+        // Assert
+        assertIterableEquals(institutoMapper.toResponseDtoList(List.of(instituto1)), actualInstitutoResponse);
+
+        // Verify
+        verify(institutosRepository, only()).findAll(criteria);
+    }
+
+    @Test
+    void stats_ShouldBuildTotalsFromRepositoryAggregates() {
+        // Arrange
+        var madrid = InstitutoTotales.VACIO.sumar(instituto1).sumar(instituto2);
+        when(institutosRepository.totalesPorCiudad()).thenReturn(Map.of("Madrid", madrid));
+        when(institutosRepository.totalesPorTipo()).thenReturn(Map.of(
+                "concertado", InstitutoTotales.VACIO.sumar(instituto1),
+                "privado", InstitutoTotales.VACIO.sumar(instituto2)));
+
+        // Act
+        var stats = institutosService.stats();
+
+        // Assert
+        long estudiantes = instituto1.getNumeroEstudiantes() + instituto2.getNumeroEstudiantes();
+        long profesores = instituto1.getNumeroProfesores() + instituto2.getNumeroProfesores();
+        assertAll(
+                () -> assertEquals(2L, stats.getTotal().getInstitutos()),
+                () -> assertEquals(estudiantes, stats.getTotal().getTotalEstudiantes()),
+                () -> assertEquals(estudiantes / 2.0, stats.getPorCiudad().get("Madrid").getMediaEstudiantes()),
+                () -> assertEquals((double) estudiantes / profesores, stats.getTotal().getEstudiantesPorProfesor()),
+                () -> assertEquals(List.of("concertado", "privado"), List.copyOf(stats.getPorTipo().keySet()))
+        );
+        verify(institutosRepository, never()).findAll();
+    }
+
+    @Test
+    void findPage_ShouldReturnRequestedPage_WhenPageAndSizeProvided() {
+        // Arrange
+        when(institutosRepository.findAll()).thenReturn(List.of(instituto1, instituto2));
+        InstitutoPageRequestDto pageRequest = InstitutoPageRequestDto.builder().page(1).size(1).build();
+
+        // Act
+        InstitutoPageResponseDto pagina = institutosService.findPage(null, null, pageRequest);
+
+        // Assert
+        assertAll(
+                () -> assertEquals(List.of(institutoMapper.toinstitutoResponseDto(instituto2)), pagina.getContent()),
+                () -> assertEquals(2L, pagina.getTotalElements()),
+                () -> assertEquals(1, pagina.getPage()),
+                () -> assertNull(pagina.getNextCursor())
+        );
+    }
+
+    @Test
+    void findPage_ShouldSortByNombreDescending_WhenSortProvided() {
+        // Arrange
+        when(institutosRepository.findAll()).thenReturn(List.of(instituto1, instituto2));
+        InstitutoPageRequestDto pageRequest = InstitutoPageRequestDto.builder().size(1).sort("nombre,desc").build();
+
+        // Act
+        InstitutoPageResponseDto pagina = institutosService.findPage(null, null, pageRequest);
+
+        // Assert
+        assertAll(
+                () -> assertEquals(instituto1.getId(), pagina.getContent().getFirst().getId()),
+                () -> assertNull(pagina.getNextCursor())
+        );
+    }
+
+    @Test
+    void findPage_ShouldUseRepositoryOrderedIndex_WhenSortingByNumericField() {
+        // Arrange
+        when(institutosRepository.findAllOrderedBy("numeroEstudiantes", true, 2L, 3)).thenReturn(List.of(instituto2));
+        when(institutosRepository.count()).thenReturn(3L);
+        InstitutoPageRequestDto pageRequest = InstitutoPageRequestDto.builder().page(1).size(2).sort("numeroEstudiantes,desc").build();
+
+        // Act
+        InstitutoPageResponseDto pagina = institutosService.findPage(null, null, pageRequest);
+
+        // Assert
+        assertAll(
+                () -> assertEquals(List.of(institutoMapper.toinstitutoResponseDto(instituto2)), pagina.getContent()),
+                () -> assertEquals(3L, pagina.getTotalElements()),
+                () -> assertEquals(1, pagina.getPage()),
+                () -> assertNull(pagina.getNextCursor())
+        );
+        verify(institutosRepository, never()).findAll();
+    }
+
+    @Test
+    void findPage_ShouldFindFilteredCursorPosition_WhenDescending() {
+        // Arrange
+        var criteria = InstitutoCriteriaDto.builder().tipo("publico").build();
+        when(institutosRepository.findAll(criteria)).thenReturn(List.of(instituto1, instituto2));
+        InstitutoPageRequestDto pageRequest = InstitutoPageRequestDto.builder().size(5).sort("id,desc").after(2L).build();
+
+        // Act
+        InstitutoPageResponseDto pagina = institutosService.findPage(criteria, pageRequest);
+
+        // Assert
+        assertAll(
+                () -> assertEquals(List.of(institutoMapper.toinstitutoResponseDto(instituto1)), pagina.getContent()),
+                () -> assertEquals(2L, pagina.getTotalElements()),
+                () -> assertNull(pagina.getNextCursor())
+        );
+    }
+
+    @Test
+    void findPage_ShouldUseRepositoryKeyset_WhenCursorProvided() {
+        // Arrange
+        when(institutosRepository.findAllAfter(1L, 2, false)).thenReturn(List.of(instituto2));
+        when(institutosRepository.count()).thenReturn(2L);
+        InstitutoPageRequestDto pageRequest = InstitutoPageRequestDto.builder().size(1).after(1L).build();
+
+        // Act
+        InstitutoPageResponseDto pagina = institutosService.findPage(null, null, pageRequest);
+
+        // Assert
+        assertAll(
+                () -> assertEquals(List.of(institutoMapper.toinstitutoResponseDto(instituto2)), pagina.getContent()),
+                () -> assertEquals(2L, pagina.getTotalElements()),
+                () -> assertNull(pagina.getNextCursor())
+        );
+        verify(institutosRepository, never()).findAll();
+    }
+
+    @Test
+    void findPage_ShouldReturnNextCursor_WhenMoreResultsExist() {
+        // Arrange
+        when(institutosRepository.findAll()).thenReturn(List.of(instituto1, instituto2));
+
+        // Act
+        InstitutoPageResponseDto pagina = institutosService.findPage(null, null, InstitutoPageRequestDto.builder().size(1).build());
+
+        // Assert
+        assertEquals(instituto1.getId(), pagina.getNextCursor());
+    }
+
+    @Test
+    void findPage_ShouldThrowBadRequest_WhenInvalidParametersProvided() {
+        assertAll(
+                () -> assertThrows(InstitutoBadRequestException.class,
+                        () -> institutosService.findPage(null, null, InstitutoPageRequestDto.builder().sort("telefono").build())),
+                () -> assertThrows(InstitutoBadRequestException.class,
+                        () -> institutosService.findPage(null, null, InstitutoPageRequestDto.builder().size(0).build())),
+                () -> assertThrows(InstitutoBadRequestException.class,
+                        () -> institutosService.findPage(null, null, InstitutoPageRequestDto.builder().sort("nombre").after(1L).build()))
+        );
+        verifyNoInteractions(institutosRepository);
+    }
+
+    @Test
+    void streamAll_ShouldWalkRepositoryInBatches() {
+        // Arrange
+        when(institutosRepository.findAllAfter(null, 1000, false)).thenReturn(List.of(instituto1, instituto2));
+
+        // Act
+        List<InstitutoResponseDto> actualInstitutoResponse;
+        try (var institutos = institutosService.streamAll()) {
+            actualInstitutoResponse = institutos.toList();
+        }
+
+        // Assert
+        assertIterableEquals(institutoMapper.toResponseDtoList(List.of(instituto1, instituto2)), actualInstitutoResponse);
+        // El lote vino incompleto, así que no hace falta pedir otro
+        verify(institutosRepository, only()).findAllAfter(null, 1000, false);
     }
 
     @Test
@@ -344,4 +538,83 @@ class InstitutosServiceImplTest {
         // Verify
         verify(institutosRepository, never()).deleteById(id);
     }
-}
\ No newline at end of file
+
+    @Test
+    void bulk_ShouldApplyValidOperationsAndReportEachOne() {
+        // Arrange
+        InstitutoCreateDto nuevo = InstitutoCreateDto.builder().nombre("Las Meigas").direccion("Calle Barlovento").build();
+        InstitutoCreateDto invalido = InstitutoCreateDto.builder().nombre("").direccion("Calle Sol").build();
+        when(institutosRepository.findById(1L)).thenReturn(Optional.of(instituto1));
+        when(institutosRepository.findById(2L)).thenReturn(Optional.of(instituto2));
+        when(institutosRepository.findById(9L)).thenReturn(Optional.empty());
+        when(institutosRepository.nextIds(2)).thenReturn(10L);
+        List<InstitutoBulkItemDto> operaciones = List.of(
+                InstitutoBulkItemDto.builder().op("create").instituto(nuevo).build(),
+                InstitutoBulkItemDto.builder().op("create").instituto(invalido).build(),
+                InstitutoBulkItemDto.builder().op("update").id(1L).instituto(nuevo).build(),
+                InstitutoBulkItemDto.builder().op("delete").id(2L).build(),
+                InstitutoBulkItemDto.builder().op("delete").id(9L).build(),
+                InstitutoBulkItemDto.builder().op("create").instituto(nuevo).build(),
+                InstitutoBulkItemDto.builder().op("upsert").id(1L).build()
+        );
+
+        // Act
+        List<InstitutoBulkResultDto> resultados = institutosService.bulk(operaciones);
+
+        // Assert
+        assertThat(resultados).extracting(InstitutoBulkResultDto::getStatus)
+                .containsExactly(201, 400, 200, 204, 404, 201, 400);
+        assertThat(resultados).extracting(InstitutoBulkResultDto::getId)
+                .containsExactly(10L, null, 1L, 2L, 9L, 11L, 1L);
+        assertThat(resultados.get(1).getError()).contains("nombre");
+
+        // Verify
+        // Una sola reserva de ids y una sola escritura para altas, modificaciones y borrados
+        verify(institutosRepository).nextIds(2);
+        verify(institutosRepository, never()).nextId();
+        verify(institutosRepository).saveAllAndDeleteAllById(argThat(institutos -> institutos.size() == 3), eq(List.of(2L)));
+        verify(institutosRepository, never()).saveAll(any());
+        verify(institutosRepository, never()).deleteAllById(any());
+        verify(institutosRepository, never()).save(any());
+    }
+
+    @Test
+    void bulk_NullOperation_ShouldReportBadRequestForThatItem() {
+        // Arrange
+        when(institutosRepository.findById(1L)).thenReturn(Optional.of(instituto1));
+        List<InstitutoBulkItemDto> operaciones = new ArrayList<>();
+        operaciones.add(null);
+        operaciones.add(InstitutoBulkItemDto.builder().op("delete").id(1L).build());
+
+        // Act
+        List<InstitutoBulkResultDto> resultados = institutosService.bulk(operaciones);
+
+        // Assert
+        assertAll("bulk_NullOperation_ShouldReportBadRequestForThatItem",
+                () -> assertEquals(List.of(400, 204), resultados.stream().map(InstitutoBulkResultDto::getStatus).toList()),
+                () -> assertEquals(0, resultados.getFirst().getIndex()),
+                () -> assertNull(resultados.getFirst().getOp())
+        );
+
+        // Verify
+        verify(institutosRepository).saveAllAndDeleteAllById(List.of(), List.of(1L));
+    }
+
+    @Test
+    void bulk_ShouldSeeEarlierOperationsOfTheSameBatch() {
+        // Arrange
+        when(institutosRepository.findById(1L)).thenReturn(Optional.of(instituto1));
+        InstitutoCreateDto cambios = InstitutoCreateDto.builder().nombre("Valle Inclan").direccion("Calle Medidas").build();
+        List<InstitutoBulkItemDto> operaciones = List.of(
+                InstitutoBulkItemDto.builder().op("delete").id(1L).build(),
+                InstitutoBulkItemDto.builder().op("update").id(1L).instituto(cambios).build()
+        );
+
+        // Act
+        List<InstitutoBulkResultDto> resultados = institutosService.bulk(operaciones);
+
+        // Assert
+        assertThat(resultados).extracting(InstitutoBulkResultDto::getStatus).containsExactly(204, 404);
+        verify(institutosRepository).saveAllAndDeleteAllById(List.of(), List.of(1L));
+    }
+}